@@ -0,0 +1,93 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+import protocol.WireFormat;
+import server.Server;
+
+// Clients joining and leaving a busy server. In the "churn" group three threads join and leave while
+// one broadcasts to everyone, so the score shows how much joins, leaves and fan-out slow each other down
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChurnBenchmark {
+
+    @Param({"1000", "10000"})
+    int members;
+
+    private Server server;
+    private final AtomicInteger nextId = new AtomicInteger(1_000_000);
+
+    // Each thread joins and leaves with its own handler
+    @State(Scope.Thread)
+    public static class Member {
+        SinkClientHandler handler;
+
+        @Setup
+        public void setUp(ChurnBenchmark benchmark) {
+            handler = new SinkClientHandler(benchmark.nextId.getAndIncrement(), benchmark.server, WireFormat.LINE);
+        }
+    }
+
+    // A handler that has already joined when the measured call starts
+    @State(Scope.Thread)
+    public static class JoinedMember {
+        SinkClientHandler handler;
+        ChurnBenchmark benchmark;
+
+        @Setup
+        public void setUp(ChurnBenchmark benchmark) {
+            this.benchmark = benchmark;
+            handler = new SinkClientHandler(benchmark.nextId.getAndIncrement(), benchmark.server, WireFormat.LINE);
+        }
+
+        @Setup(Level.Invocation)
+        public void join() {
+            benchmark.server.addClient(handler);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        server = SinkClientHandler.serverWith(members, WireFormat.LINE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void joinAndLeave(Member member) {
+        server.addClient(member.handler);
+        server.removeClient(member.handler.getClientId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void leave(JoinedMember member) {
+        server.removeClient(member.handler.getClientId());
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public void churnJoinAndLeave(Member member) {
+        server.addClient(member.handler);
+        server.removeClient(member.handler.getClientId());
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void churnBroadcast() {
+        server.broadcastMessage("Client 1: still here", 1);
+    }
+}
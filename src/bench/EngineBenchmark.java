@@ -0,0 +1,83 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import client.Client;
+import protocol.WireFormat;
+import server.EngineMode;
+import server.Server;
+
+// End-to-end broadcast over loopback sockets, so the connection engines can be compared on equal terms:
+// one client sends, and the operation ends when every receiver has read the message
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+    private static final String BROADCAST_PREFIX = "Client 1: ";
+
+    @Param({"THREAD_PER_CLIENT", "NIO"})
+    EngineMode engineMode;
+
+    @Param({"LINE", "BINARY"})
+    WireFormat format;
+
+    @Param({"1", "10", "100"})
+    int receivers;
+
+    private Server server;
+    private Client sender;
+    private Client[] clients;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        server = new Server(engineMode);
+        new Thread(() -> server.start(0), "bench-server").start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+
+        sender = connect();
+        clients = new Client[receivers];
+        for (int i = 0; i < receivers; i++) {
+            clients[i] = connect();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Client client : clients) {
+            client.disconnect();
+        }
+        sender.disconnect();
+        server.stop();
+    }
+
+    @Benchmark
+    public void broadcastRoundTrip() {
+        sender.sendMessage("the quick brown fox jumps over the lazy dog");
+        for (Client client : clients) {
+            String message;
+            while ((message = client.readMessage()) != null && !message.startsWith(BROADCAST_PREFIX)) {
+                // Skip notices such as other clients joining
+            }
+        }
+    }
+
+    private Client connect() {
+        Client client = new Client();
+        client.setPreferredWireFormat(format);
+        if (!client.connect("localhost", server.getLocalPort())) {
+            throw new IllegalStateException("Could not connect to the benchmark server");
+        }
+        String message;
+        while ((message = client.readMessage()) != null && !message.startsWith("Welcome!")) {
+            // Wait for the greeting
+        }
+        return client;
+    }
+}
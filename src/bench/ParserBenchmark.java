@@ -0,0 +1,36 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import server.CommandHandler;
+import server.CommandParser;
+import server.CommandRegistry;
+import server.ParsedCommand;
+
+// Parsing one client line and finding its handler, as every connection does for every line it reads
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"hello everyone, how is it going?", "@42 see you at noon", "!members", "#news server restarts at 6", "!join news"})
+    String line;
+
+    private final CommandRegistry registry = CommandRegistry.withDefaults();
+    private final ParsedCommand parsed = new ParsedCommand();
+
+    @Benchmark
+    public ParsedCommand parse() {
+        return CommandParser.parse(line, parsed);
+    }
+
+    @Benchmark
+    public CommandHandler parseAndLookUp() {
+        return registry.lookup(CommandParser.parse(line, parsed));
+    }
+}
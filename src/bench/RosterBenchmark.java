@@ -0,0 +1,52 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import server.OutboundMessage;
+import server.Roster;
+import server.RosterFormat;
+
+// Member list rendering: the first request after a membership change builds the text, later ones
+// reuse the cached snapshot
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RosterBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int members;
+
+    private final Roster roster = new Roster();
+
+    @Setup
+    public void setUp() {
+        for (int id = 1; id <= members; id++) {
+            roster.add(id, "192.168.1." + (id % 100 + 1), 40_000 + id % 20_000);
+        }
+        roster.setCoordinator(1);
+    }
+
+    @Benchmark
+    public OutboundMessage renderAfterChange() {
+        roster.remove(members);
+        roster.add(members, "192.168.1.1", 40_000);
+        return roster.snapshot().message(RosterFormat.MEMBERS);
+    }
+
+    @Benchmark
+    public OutboundMessage cachedSnapshot() {
+        return roster.snapshot().message(RosterFormat.MEMBERS);
+    }
+
+    @Benchmark
+    public OutboundMessage presenceSnapshot() {
+        roster.remove(members);
+        roster.add(members, "192.168.1.1", 40_000);
+        return roster.snapshot().message(RosterFormat.PRESENCE_SNAPSHOT);
+    }
+}
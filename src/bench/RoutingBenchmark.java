@@ -0,0 +1,50 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import protocol.DeliveryStatus;
+import protocol.WireFormat;
+import server.Server;
+
+// Cost of routing one message to sink recipients: a broadcast fans out to every registered client,
+// a private message looks up a single one
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int recipients;
+
+    @Param({"LINE", "BINARY"})
+    WireFormat format;
+
+    private Server server;
+    private int nextTarget = 0;
+
+    @Setup
+    public void setUp() {
+        server = SinkClientHandler.serverWith(recipients, format);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public void broadcast() {
+        server.broadcastMessage("Client 1: the quick brown fox jumps over the lazy dog", 1);
+    }
+
+    @Benchmark
+    public DeliveryStatus privateMessage() {
+        nextTarget = nextTarget % recipients + 1;
+        return server.sendPrivateMessage(nextTarget, "Private from 1: the quick brown fox");
+    }
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import java.nio.ByteBuffer;
+
+import protocol.WireFormat;
+import server.ClientHandler;
+import server.OutboundMessage;
+import server.Server;
+
+// Benchmark recipient: a real ClientHandler, so sends go through the usual outbound queue, but queued
+// frames are copied into a small in-memory sink instead of a socket. Benchmarks built on it measure
+// routing, queueing and encoding without any I/O. Only one thread may send to a handler at a time.
+class SinkClientHandler extends ClientHandler {
+    private static final int SINK_SIZE = 4096;
+
+    private final WireFormat format;
+    private final ByteBuffer sink = ByteBuffer.allocate(SINK_SIZE);
+    private long bytesWritten;
+
+    SinkClientHandler(int clientId, Server server, WireFormat format) {
+        super(clientId, server);
+        this.format = format;
+    }
+
+    // A server with the given number of registered sink recipients, IDs 1 to recipients
+    static Server serverWith(int recipients, WireFormat format) {
+        Server server = new Server();
+        for (int id = 1; id <= recipients; id++) {
+            server.addClient(new SinkClientHandler(id, server, format));
+        }
+        return server;
+    }
+
+    @Override
+    public int getClientPort() {
+        return 40_000 + getClientId() % 20_000;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    // Drains the queue right away, as a writer that is never behind would
+    @Override
+    protected void onMessageQueued() {
+        OutboundMessage message;
+        while ((message = outbound.poll()) != null) {
+            ByteBuffer frame = message.frame(format);
+            bytesWritten += frame.remaining();
+            while (frame.hasRemaining()) {
+                if (!sink.hasRemaining()) {
+                    sink.clear();
+                }
+                int length = Math.min(frame.remaining(), sink.remaining());
+                sink.put(sink.position(), frame, frame.position(), length);
+                sink.position(sink.position() + length);
+                frame.position(frame.position() + length);
+            }
+        }
+    }
+
+    @Override
+    protected void closeConnection() {
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+}
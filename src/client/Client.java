@@ -1,63 +1,540 @@
 package client;
 
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.util.Scanner;
+import protocol.Compression;
+import protocol.DeliveryStatus;
+import protocol.Frame;
+import protocol.FrameCompressor;
+import protocol.FrameType;
+import protocol.Handshake;
+import protocol.MessageDecoder;
+import protocol.SessionHandshake;
+import protocol.SocketTransport;
+import protocol.Transport;
+import protocol.WireFormat;
+import protocol.WriteMode;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class Client {
-    private Socket socket;              // Socket connection to the server
-    private PrintWriter out;           // Used for sending messages to the server
-    private Scanner in;                // Used for receiving messages from the server
+    // How long connect() waits for the server to answer a binary framing request
+    private static final int HANDSHAKE_TIMEOUT_MS = 2000;
+
+    // Chunks a listener's connection may read per turn on a shared ClientLoop thread, so one flooded
+    // client cannot starve the other connections on that thread
+    private static final int MAX_READS_PER_TURN = 4;
+
+    // Flushes throughput-mode clients once their latency budget runs out; shared by all clients
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "client-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Transport transport;        // Connection to the server, over TCP or in memory
+    private OutputStream out;          // Used for sending messages to the server
+    private InputStream in;            // Used for receiving messages from the server
+
+    private final MessageDecoder decoder = new MessageDecoder();      // Splits received bytes into messages
+    private final Deque<String> received = new ArrayDeque<>();        // Decoded messages not yet read
+    private final byte[] readChunk = new byte[8192];
+
+    private WireFormat preferredFormat = WireFormat.LINE;  // Requested before connecting
+    private volatile WireFormat wireFormat = WireFormat.LINE;  // Negotiated for the current connection
+    private long sequence = 0;         // Sequence number for outgoing binary frames
+
+    private boolean compression = false;              // Offer frame compression after the binary upgrade
+    private volatile boolean compressing = false;     // Negotiated for the current connection
+    private FrameCompressor compressor = new FrameCompressor();  // Also counts bytes and CPU time
+
+    private WriteMode writeMode = WriteMode.LATENCY;   // Flush every message, or coalesce them
+    private int writeCoalesceBytes = 8192;            // Buffered bytes that force a write
+    private long writeCoalesceDelayMicros = 1000;     // Longest a throughput-mode message waits
+    private boolean flushScheduled = false;
+
+    private boolean sessionResumption = false;       // Start a session on connect and resume it on reconnect
+    private volatile String sessionToken;             // Token of the current session, kept across connections
+    private volatile long lastSequence = -1;         // Sequence of the newest binary TEXT frame received
+    private boolean resumed = false;
+
+    private int maxInFlight = 1024;                   // Unacknowledged sendAsync() calls allowed at once
+    private Semaphore inFlightPermits = new Semaphore(maxInFlight);
+    private final Map<Long, CompletableFuture<DeliveryStatus>> inFlight = new ConcurrentHashMap<>();  // Keyed by frame sequence
+
+    private ClientLoop loop;                           // Reads for this client when a listener is set
+    private MessageListener listener;                  // Receives messages instead of readMessage()
+    private volatile boolean leaving = false;          // disconnect() or abort() is closing the connection
+
+    // Requests binary framing on the next connect(); falls back to lines if the server declines
+    public void setPreferredWireFormat(WireFormat preferredFormat) {
+        this.preferredFormat = preferredFormat;
+    }
+
+    // Returns the wire format negotiated for the current connection
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    // Offers deflate compression of large frames on the next connect(); needs binary framing
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    // Smallest payload in bytes this client sends deflated; takes effect on the next connect()
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressor = new FrameCompressor(compressionThreshold);
+    }
+
+    // Whether the current connection compresses large frames
+    public boolean isCompressing() {
+        return compressing;
+    }
+
+    // Compression ratio and CPU time for both directions, over every connection of this client
+    public FrameCompressor getCompressor() {
+        return compressor;
+    }
+
+    // LATENCY flushes after every message, THROUGHPUT coalesces messages until the byte or delay budget is used
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    // Size of the write buffer; takes effect on the next connect()
+    public void setWriteCoalesceBytes(int writeCoalesceBytes) {
+        this.writeCoalesceBytes = writeCoalesceBytes;
+    }
+
+    // Latency budget for throughput mode
+    public void setWriteCoalesceDelayMicros(long writeCoalesceDelayMicros) {
+        this.writeCoalesceDelayMicros = writeCoalesceDelayMicros;
+    }
+
+    // Starts a server session on connect so a later connect() within the server's grace window
+    // keeps the same ID and role and only receives the messages missed in between
+    public void setSessionResumption(boolean sessionResumption) {
+        this.sessionResumption = sessionResumption;
+    }
+
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    // Whether the last connect() resumed the previous session
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    // Limits how many acknowledged sends may be outstanding; takes effect on the next connect()
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    // Number of acknowledged sends still waiting for the server
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    // Hands received messages to the listener on one of the loop's threads instead of queueing them for
+    // readMessage(); takes effect on the next connect(). A null listener goes back to readMessage().
+    public void setMessageListener(ClientLoop loop, MessageListener listener) {
+        this.loop = loop;
+        this.listener = listener;
+    }
+
+    // Same, on the loop shared by the whole process
+    public void setMessageListener(MessageListener listener) {
+        setMessageListener(ClientLoop.shared(), listener);
+    }
 
     // Tries to establish a connection to the server using the provided IP and port
     public boolean connect(String serverAddress, int port) {
         try {
-            socket = new Socket(serverAddress, port);                 // Open socket connection
-            out = new PrintWriter(socket.getOutputStream(), true);   // Enable message output
-            in = new Scanner(socket.getInputStream());               // Enable message input
+            return connect(SocketTransport.connect(serverAddress, port));  // Open socket connection
+        } catch (Exception e) {
+            return false; // Connection failed
+        }
+    }
+
+    // Uses an established transport, e.g. Server.connectLoopback() for a client in the server's JVM
+    public boolean connect(Transport transport) {
+        synchronized (decoder) {
+            return open(transport);
+        }
+    }
+
+    private boolean open(Transport transport) {
+        try {
+            leaving = false;
+            this.transport = transport;
+            out = new BufferedOutputStream(transport.getOutputStream(), writeCoalesceBytes);  // Enable message output
+            in = transport.getInputStream();                            // Enable message input
+            decoder.switchTo(WireFormat.LINE);
+            decoder.setCompressor(null);
+            wireFormat = WireFormat.LINE;
+            compressing = false;
+            if (sessionToken == null) {
+                received.clear(); // When resuming, messages not read yet are still wanted
+            }
+            resumed = false;
+            inFlightPermits = new Semaphore(maxInFlight);
+
+            if (preferredFormat == WireFormat.BINARY) {
+                negotiateBinary();
+            }
+            if (compression && wireFormat == WireFormat.BINARY) {
+                negotiateCompression();
+            }
+            if (sessionResumption) {
+                startOrResumeSession();
+            }
+            if (listener != null) {
+                loop.attach(this, transport); // Also delivers what arrived during the handshakes
+            }
             return true;
         } catch (Exception e) {
             return false; // Connection failed
         }
     }
 
+    // Asks the server to switch to binary frames; lines received meanwhile are kept for readMessage()
+    private void negotiateBinary() throws Exception {
+        writeLine(Handshake.hello(Frame.VERSION));
+        transport.setReadTimeout(HANDSHAKE_TIMEOUT_MS);
+        try {
+            boolean[] answered = {false};
+            while (!answered[0]) {
+                int read = in.read(readChunk);
+                if (read == -1) {
+                    return;
+                }
+                decoder.feed(readChunk, 0, read, frame -> {
+                    String text = frame.getPayload();
+                    if (!answered[0] && Handshake.isAck(text)) {
+                        answered[0] = true;
+                        if (Handshake.version(text) == Frame.VERSION) {
+                            decoder.switchTo(WireFormat.BINARY);
+                            wireFormat = WireFormat.BINARY;
+                        }
+                    } else {
+                        onFrame(frame); // Frames after the ack may already be in this read
+                    }
+                });
+            }
+        } catch (SocketTimeoutException e) {
+            // Older server without framing support, stay on the line protocol
+        } finally {
+            transport.setReadTimeout(0);
+        }
+    }
+
+    // Offers compression; frames from the server may be compressed as soon as it has read the offer
+    private void negotiateCompression() throws Exception {
+        decoder.setCompressor(compressor);
+        sendMessage(Compression.request(Compression.DEFLATE));
+        transport.setReadTimeout(HANDSHAKE_TIMEOUT_MS);
+        try {
+            boolean[] answered = {false};
+            while (!answered[0]) {
+                int read = in.read(readChunk);
+                if (read == -1) {
+                    return;
+                }
+                decoder.feed(readChunk, 0, read, frame -> {
+                    String text = frame.getPayload();
+                    if (!answered[0] && frame.getType() == FrameType.TEXT && Compression.isAck(text)) {
+                        answered[0] = true;
+                        compressing = Compression.DEFLATE.equals(Compression.method(text));
+                    } else {
+                        onFrame(frame);
+                    }
+                });
+            }
+        } catch (SocketTimeoutException e) {
+            // Server without compression support
+        } finally {
+            transport.setReadTimeout(0);
+            if (!compressing) {
+                decoder.setCompressor(null);
+            }
+        }
+    }
+
+    // Asks for a new session, or to resume the current one, and waits for the server's answer;
+    // messages received meanwhile, including replayed ones, are kept for readMessage()
+    private void startOrResumeSession() throws Exception {
+        String token = sessionToken;
+        sendMessage(token == null ? SessionHandshake.START : SessionHandshake.resume(token, lastSequence));
+        transport.setReadTimeout(HANDSHAKE_TIMEOUT_MS);
+        try {
+            boolean[] answered = {false};
+            while (!answered[0]) {
+                int read = in.read(readChunk);
+                if (read == -1) {
+                    return;
+                }
+                decoder.feed(readChunk, 0, read, frame -> {
+                    String text = frame.getPayload();
+                    if (!answered[0] && frame.getType() == FrameType.TEXT && SessionHandshake.isReply(text)) {
+                        answered[0] = true;
+                        resumed = SessionHandshake.isResumed(text);
+                        sessionToken = SessionHandshake.token(text);
+                    } else {
+                        onFrame(frame);
+                    }
+                });
+            }
+        } catch (SocketTimeoutException e) {
+            // Server without sessions; carry on without one
+        } finally {
+            transport.setReadTimeout(0);
+        }
+    }
+
     // Sends a message to the server if connection is active
     public void sendMessage(String message) {
         if (out != null && isConnected()) {
-            out.println(message);  // Send the message to the server
+            try {
+                if (wireFormat == WireFormat.BINARY) {
+                    writeFrame(FrameType.TEXT, message, null);
+                } else {
+                    writeLine(message);
+                }
+            } catch (Exception ignored) {}
         }
     }
 
-    // Reads an incoming message from the server
-    public String readMessage() {
+    private synchronized void writeLine(String message) throws Exception {
+        out.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+        afterWrite();
+    }
+
+    // Sends a message the server acknowledges; blocks while the in-flight limit is reached.
+    // Acknowledgements are processed by whichever thread calls readMessage(), so keep reading,
+    // or by the loop when a listener is set.
+    public CompletableFuture<DeliveryStatus> sendAsync(String message) {
+        if (out == null || !isConnected() || wireFormat != WireFormat.BINARY) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Acknowledged sends need a connected client using binary framing"));
+        }
         try {
-            if (in != null && in.hasNextLine()) {
-                return in.nextLine();  // Return the next message from server
+            inFlightPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<DeliveryStatus> ack = new CompletableFuture<>();
+        try {
+            writeFrame(FrameType.REQUEST, message, ack);
+        } catch (Exception e) {
+            failInFlight(e);
+        }
+        return ack;
+    }
+
+    // Writes one frame; a pending acknowledgement is registered under the frame's sequence before it is sent
+    private synchronized void writeFrame(FrameType type, String message, CompletableFuture<DeliveryStatus> ack) throws Exception {
+        long id = ++sequence;
+        if (ack != null) {
+            inFlight.put(id, ack);
+        }
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = compressing ? compressor.deflate(payload) : null;
+        ByteBuffer frame = deflated != null
+                ? Frame.encodeCompressed(type, Frame.NO_CLIENT, Frame.NO_CLIENT, id, deflated)
+                : Frame.encode(type, Frame.NO_CLIENT, Frame.NO_CLIENT, id, payload);
+        out.write(frame.array(), frame.arrayOffset(), frame.remaining());
+        afterWrite();
+    }
+
+    // Completes the acknowledged send, answers heartbeats, or queues an ordinary message for readMessage()
+    private void onFrame(Frame frame) {
+        if (frame.getType() == FrameType.PING) {
+            try {
+                writeFrame(FrameType.PONG, "", null);
+            } catch (Exception ignored) {}
+        } else if (frame.getType() == FrameType.ACK) {
+            CompletableFuture<DeliveryStatus> ack = inFlight.remove(frame.getSequence());
+            if (ack != null) {
+                inFlightPermits.release();
+                ack.complete(DeliveryStatus.parse(frame.getPayload()));
+            }
+        } else if (frame.getType() != FrameType.PONG) {
+            if (frame.getType() == FrameType.TEXT && wireFormat == WireFormat.BINARY) {
+                lastSequence = frame.getSequence(); // Where to resume from
+            }
+            received.add(frame.getPayload());
+        }
+    }
+
+    // Fails every outstanding acknowledged send, e.g. when the connection is lost
+    private void failInFlight(Exception cause) {
+        for (Long id : inFlight.keySet()) {
+            CompletableFuture<DeliveryStatus> ack = inFlight.remove(id);
+            if (ack != null) {
+                inFlightPermits.release();
+                ack.completeExceptionally(cause);
+            }
+        }
+    }
+
+    // Flushes now in latency mode; in throughput mode the buffer flushes itself when full or after the delay
+    private void afterWrite() throws Exception {
+        if (writeMode == WriteMode.LATENCY) {
+            out.flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            FLUSHER.schedule(this::flush, writeCoalesceDelayMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    // Writes out anything still buffered
+    public synchronized void flush() {
+        flushScheduled = false;
+        try {
+            if (out != null) {
+                out.flush();
             }
         } catch (Exception ignored) {}
-        return null; // No message received
+    }
+
+    // Reads an incoming message from the server; returns null once the connection has ended, after
+    // which isConnected() is false
+    public String readMessage() {
+        if (listener != null) {
+            throw new IllegalStateException("Messages go to the listener");
+        }
+        try {
+            while (received.isEmpty() && in != null) {
+                int read = in.read(readChunk);
+                if (read == -1) {
+                    decoder.finish(this::onFrame);
+                    failInFlight(new IOException("Connection closed by server"));
+                    closeTransport(); // Otherwise a socket still counts as connected and callers loop on null
+                    break;
+                }
+                decoder.feed(readChunk, 0, read, this::onFrame);
+            }
+        } catch (Exception e) {
+            failInFlight(e);
+        }
+        return received.poll(); // Null if no message received
+    }
+
+    private void closeTransport() throws IOException {
+        Transport current = transport;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    // Runs on a loop thread whenever the connection may have bytes or end of stream waiting; reads
+    // without blocking, up to MAX_READS_PER_TURN chunks, and hands every complete message to the
+    // listener. Returns true if it stopped at the cap, so the caller should read again later.
+    boolean readAvailable(Transport source) {
+        MessageListener target = listener;
+        boolean lost = false;
+        boolean more = false;
+        synchronized (decoder) {
+            if (source != transport || target == null) {
+                return false; // Left over from a connection that was closed or replaced since
+            }
+            try {
+                int read = 0;
+                int reads = 0;
+                while (reads < MAX_READS_PER_TURN && (read = source.readNow(readChunk, 0, readChunk.length)) > 0) {
+                    decoder.feed(readChunk, 0, read, this::onFrame);
+                    reads++;
+                }
+                more = reads == MAX_READS_PER_TURN;
+                if (read == -1) {
+                    decoder.finish(this::onFrame);
+                    lost = true;
+                }
+            } catch (Exception e) {
+                lost = true;
+            }
+            String message;
+            while ((message = received.poll()) != null) {
+                try {
+                    target.onMessage(this, message);
+                } catch (RuntimeException e) {
+                    System.out.println("Message listener failed: " + e);
+                }
+            }
+            if (lost) {
+                failInFlight(new IOException("Connection closed by server"));
+                try {
+                    source.close();
+                } catch (Exception ignored) {}
+            }
+        }
+        if (lost && !leaving) {
+            target.onDisconnected(this);
+        }
+        return more && !lost;
+    }
+
+    // Drops the connection without telling the server, as a network failure would; the session
+    // stays resumable, so the next connect() picks it up again
+    public void abort() {
+        leaving = true;
+        try {
+            if (transport != null) {
+                transport.close();
+            }
+        } catch (Exception ignored) {
+        } finally {
+            failInFlight(new IOException("Connection aborted"));
+            out = null;
+            in = null;
+            transport = null;
+        }
     }
 
     // Disconnects the client from the server gracefully
     public void disconnect() {
+        leaving = true;
         try {
-            if (out != null && !socket.isClosed()) {
-                out.println("quit");  // Notify the server that the client is disconnecting
+            if (out != null && transport.isOpen()) {
+                if (sessionToken != null) {
+                    sendMessage(SessionHandshake.END);  // Leaving for good, no need to hold the session
+                    sessionToken = null;
+                    lastSequence = -1;
+                }
+                sendMessage("quit");  // Notify the server that the client is disconnecting
+                flush();
             }
-            if (socket != null && !socket.isClosed()) {
-                socket.close();      // Close the socket connection
+            if (transport != null && transport.isOpen()) {
+                transport.close();      // Close the connection
             }
         } catch (Exception e) {
             System.out.println("Error during disconnect: " + e.getMessage());
         } finally {
+            failInFlight(new IOException("Client disconnected"));
             out = null;
             in = null;
-            socket = null; // Reset all resources
+            transport = null; // Reset all resources
         }
     }
 
     // Checks whether the client is still connected to the server
     public boolean isConnected() {
-        return socket != null && socket.isConnected() && !socket.isClosed();
+        return transport != null && transport.isOpen();
     }
 }
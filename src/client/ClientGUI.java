@@ -1,19 +1,71 @@
 package client;
 
+import protocol.Transport;
+
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 public class ClientGUI {
     private Client client;                        // Core logic object to handle connection
     private JTextArea textArea;                   // Displays messages in the GUI
+    private MessagePane messagePane;              // Renders into textArea once per frame, within the scrollback
+    private int scrollbackLines = Integer.getInteger("client.scrollbackLines", MessagePane.DEFAULT_SCROLLBACK_LINES);
+    private volatile PresenceTracker presence;    // Follows the presence stream while this client coordinates
+    private DefaultListModel<String> memberList;  // What the tracker last knew, shown beside the messages
+    private Supplier<Transport> connector;        // Opens in-process connections instead of TCP ones, if set
     private JTextField txtMessage;                // Input field for typing messages
     private JButton btnSend, btnConnect, btnDisconnect, btnRequestInfo;
     private JLabel lblCoordinator;                // Displays coordinator info
 
+    // Lines kept in the message area (default 5000, or -Dclient.scrollbackLines); call before createClientPanel()
+    public void setScrollbackLines(int scrollbackLines) {
+        this.scrollbackLines = scrollbackLines;
+    }
+
+    // Connect through the supplier instead of the IP and port fields, e.g. server::connectLoopback
+    // for a client embedded in the server's GUI; call before createClientPanel()
+    public void setConnector(Supplier<Transport> connector) {
+        this.connector = connector;
+    }
+
+    // Received messages skipped because they arrived faster than the GUI could show them
+    public long getDroppedMessages() {
+        return messagePane != null ? messagePane.getDroppedMessages() : 0;
+    }
+
+    // Lines removed from the top of the message area to stay within the scrollback
+    public long getTrimmedLines() {
+        return messagePane != null ? messagePane.getTrimmedLines() : 0;
+    }
+
     // Builds and returns a JPanel containing the full client GUI
     public JPanel createClientPanel(String clientName, String initialCoordinatorName) {
         client = new Client(); // Create a new instance of the backend client
 
+        // Messages arrive on the process-wide client loop rather than on a reader thread per window
+        client.setMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(Client source, String message) {
+                PresenceTracker tracker = presence;
+                if (tracker != null && tracker.accept(message)) {
+                    if (tracker.isSynced()) {
+                        showMembers(tracker);
+                    }
+                } else {
+                    messagePane.post(message);
+                }
+            }
+
+            @Override
+            public void onDisconnected(Client source) {
+                SwingUtilities.invokeLater(() -> showDisconnected("Connection to server lost."));
+            }
+        });
+
         JPanel panel = new JPanel(new BorderLayout()); // Main container panel
 
         // Top section containing client label and connection panel
@@ -31,6 +83,8 @@ public class ClientGUI {
         JPanel connectPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JTextField txtIP = new JTextField("127.0.0.1", 10);
         JTextField txtPort = new JTextField("6666", 5);
+        txtIP.setEnabled(connector == null);
+        txtPort.setEnabled(connector == null);
         btnConnect = new JButton("Connect");
         btnDisconnect = new JButton("Disconnect");
         btnRequestInfo = new JButton("Request Info");
@@ -56,9 +110,18 @@ public class ClientGUI {
         // Middle section: text area for messages
         textArea = new JTextArea();
         textArea.setEditable(false);
+        messagePane = new MessagePane(textArea, scrollbackLines, this::updateCoordinatorLabel);
         JScrollPane scrollPane = new JScrollPane(textArea);
         panel.add(scrollPane, BorderLayout.CENTER);
 
+        // Right section: members, filled from the presence stream the coordinator receives
+        memberList = new DefaultListModel<>();
+        JList<String> members = new JList<>(memberList);
+        JScrollPane memberPane = new JScrollPane(members);
+        memberPane.setBorder(BorderFactory.createTitledBorder("Members"));
+        memberPane.setPreferredSize(new Dimension(260, 0));
+        panel.add(memberPane, BorderLayout.EAST);
+
         // Bottom section: message input + send button
         JPanel bottomPanel = new JPanel(new BorderLayout());
         txtMessage = new JTextField();
@@ -71,41 +134,18 @@ public class ClientGUI {
             String ip = txtIP.getText();
             int port = Integer.parseInt(txtPort.getText());
 
-            if (client.connect(ip, port)) {
-                textArea.append("Connected to server at " + ip + ":" + port + "\n");
+            presence = new PresenceTracker(client); // Starts over with every connection
+            boolean connected = connector != null ? client.connect(connector.get()) : client.connect(ip, port);
+            if (connected) {
+                messagePane.post(connector != null ? "Connected to the server in this process"
+                        : "Connected to server at " + ip + ":" + port);
                 btnConnect.setEnabled(false);
                 btnDisconnect.setEnabled(true);
                 btnSend.setEnabled(true);
                 btnRequestInfo.setEnabled(true);
                 txtMessage.setEnabled(true);
-
-                // Start a background thread to read server messages
-                new Thread(() -> {
-                    while (client.isConnected()) {
-                        String msg = client.readMessage();
-                        if (msg != null) {
-                            SwingUtilities.invokeLater(() -> {
-                                textArea.append(msg + "\n");
-
-                                // Update coordinator label based on message
-                                if (msg.contains("You are now the coordinator") || msg.contains("You are the coordinator")) {
-                                    lblCoordinator.setText("Coordinator: You");
-                                } else if (msg.startsWith("Current Coordinator:")) {
-                                    String coord = msg.replace("Current Coordinator:", "").trim();
-                                    lblCoordinator.setText("Coordinator: " + coord);
-                                } else if (msg.startsWith("[COORDINATOR_CHANGED]")) {
-                                    String coord = msg.replace("[COORDINATOR_CHANGED]", "").trim();
-                                    if (!lblCoordinator.getText().contains("You")) {
-                                        lblCoordinator.setText("Coordinator: " + coord);
-                                    }
-                                }
-                            });
-                        }
-                    }
-                }).start();
-
             } else {
-                textArea.append("Failed to connect to server.\n");
+                messagePane.post("Failed to connect to server.");
             }
         });
 
@@ -122,29 +162,68 @@ public class ClientGUI {
         btnDisconnect.addActionListener(e -> {
             if (client != null && client.isConnected()) {
                 client.disconnect();
-                textArea.append("Disconnected from server.\n");
-                btnConnect.setEnabled(true);
-                btnDisconnect.setEnabled(false);
-                btnSend.setEnabled(false);
-                btnRequestInfo.setEnabled(false);
-                txtMessage.setEnabled(false);
-                lblCoordinator.setText("Coordinator: Not connected");
+                showDisconnected("Disconnected from server.");
             }
         });
 
         // Action for requesting coordinator info
         btnRequestInfo.addActionListener(e -> {
             client.sendMessage("!requestinfo");
-            textArea.append("Request sent to coordinator...\n");
+            messagePane.post("Request sent to coordinator...");
         });
 
         return panel;
     }
 
+    // Resets the controls for connecting again, unless that already happened; runs on the EDT
+    private void showDisconnected(String notice) {
+        if (!btnDisconnect.isEnabled()) {
+            return;
+        }
+        messagePane.post(notice);
+        btnConnect.setEnabled(true);
+        btnDisconnect.setEnabled(false);
+        btnSend.setEnabled(false);
+        btnRequestInfo.setEnabled(false);
+        txtMessage.setEnabled(false);
+        lblCoordinator.setText("Coordinator: Not connected");
+        memberList.clear();
+    }
+
+    // Copies the tracker's members for the EDT; runs on the client loop
+    private void showMembers(PresenceTracker tracker) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Integer, String> member : tracker.getMembers().entrySet()) {
+            lines.add(member.getKey() == tracker.getCoordinatorId() ? member.getValue() + " (Coordinator)" : member.getValue());
+        }
+        SwingUtilities.invokeLater(() -> {
+            memberList.clear();
+            memberList.addAll(lines);
+        });
+    }
+
+    // Update coordinator label based on message; runs on the EDT as each message is rendered
+    private void updateCoordinatorLabel(String msg) {
+        if (msg.startsWith("You are no longer the coordinator")) {
+            memberList.clear(); // The presence stream stops here
+        }
+        if (msg.contains("You are now the coordinator") || msg.contains("You are the coordinator")) {
+            lblCoordinator.setText("Coordinator: You");
+        } else if (msg.startsWith("Current Coordinator:")) {
+            String coord = msg.replace("Current Coordinator:", "").trim();
+            lblCoordinator.setText("Coordinator: " + coord);
+        } else if (msg.startsWith("[COORDINATOR_CHANGED]")) {
+            String coord = msg.replace("[COORDINATOR_CHANGED]", "").trim();
+            if (!lblCoordinator.getText().contains("You")) {
+                lblCoordinator.setText("Coordinator: " + coord);
+            }
+        }
+    }
+
     // Append message to GUI text area (used by server UI)
     public void logToTextArea(String message) {
-        if (textArea != null) {
-            textArea.append(message + "\n");
+        if (messagePane != null) {
+            messagePane.post(message);
         }
     }
 }
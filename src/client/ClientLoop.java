@@ -0,0 +1,171 @@
+package client;
+
+import protocol.Transport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Reads for any number of clients on a few shared threads, so a process with hundreds of sessions
+// (bots, load tests, GUI windows) does not park a reader thread on each one. Every thread owns a
+// selector for TCP connections; in-memory connections wake it through their pipe instead. Threads
+// sleep in select() while nothing arrives.
+public class ClientLoop implements AutoCloseable {
+    public static final int DEFAULT_THREADS = 2;
+
+    private static ClientLoop shared;
+
+    private final Worker[] workers;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder wakeups = new LongAdder();
+
+    public ClientLoop(int threads) throws IOException {
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker("client-loop-" + i);
+        }
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    // The loop used by every client in this process that does not bring its own; never closed
+    public static synchronized ClientLoop shared() {
+        if (shared == null) {
+            try {
+                shared = new ClientLoop(DEFAULT_THREADS);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return shared;
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    // Times the loop threads woke up, all together; stays flat while nothing arrives
+    public long getWakeups() {
+        return wakeups.sum();
+    }
+
+    // Starts event-driven reads of the client's current connection on one of the threads
+    void attach(Client client, Transport transport) {
+        Worker worker = workers[Math.floorMod(next.getAndIncrement(), workers.length)];
+        Reader reader = new Reader(worker, client, transport);
+        worker.execute(() -> {
+            try {
+                transport.startAsyncReads(worker.selector, reader);
+            } catch (IOException e) {
+                reader.run(); // The read fails the same way and reports the connection as lost
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            worker.running = false;
+            worker.selector.wakeup();
+        }
+    }
+
+    // Readiness callback for one connection: queues a single read however often it is told. A read that
+    // stopped at its cap queues the next one behind the other connections' work; in-memory pipes only
+    // announce new bytes, so nothing else would bring it back.
+    private static final class Reader implements Runnable {
+        private final Worker worker;
+        private final Client client;
+        private final Transport transport;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Reader(Worker worker, Client client, Transport transport) {
+            this.worker = worker;
+            this.client = client;
+            this.transport = transport;
+        }
+
+        @Override
+        public void run() {
+            if (scheduled.compareAndSet(false, true)) {
+                worker.execute(this::read);
+            }
+        }
+
+        private void read() {
+            scheduled.set(false);
+            if (client.readAvailable(transport)) {
+                run();
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        Worker(String name) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        // Queues a task for this thread; only other threads need to wake the selector
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    // Requeued reads are still waiting, so only poll the sockets instead of sleeping
+                    if (tasks.isEmpty()) {
+                        selector.select();
+                    } else {
+                        selector.selectNow();
+                    }
+                    wakeups.increment();
+
+                    // Readable sockets only queue their read, so everything runs in the task pass below
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid()) {
+                            ((Runnable) key.attachment()).run();
+                        }
+                    }
+                    // Only the tasks queued before this pass, so requeued reads take turns with the sockets
+                    Runnable task;
+                    for (int pending = tasks.size(); pending > 0 && (task = tasks.poll()) != null; pending--) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            System.out.println("Client loop " + thread.getName() + " task failed: " + e);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Client loop " + thread.getName() + " failed: " + e.getMessage());
+            } finally {
+                try {
+                    selector.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+}
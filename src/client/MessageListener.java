@@ -0,0 +1,9 @@
+package client;
+
+// Receives a client's messages on a ClientLoop thread; see Client.setMessageListener()
+public interface MessageListener {
+    void onMessage(Client client, String message);
+
+    // The server or the network ended the connection; not called after disconnect() or abort()
+    default void onDisconnected(Client client) {}
+}
@@ -0,0 +1,101 @@
+package client;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Renders messages into a text area at most once per frame. Any thread may post; messages wait in a
+// MessageRing and the event dispatch thread appends everything that arrived since the last frame in
+// one document update, then trims the oldest lines beyond the scrollback. Only one render is ever
+// queued on the EDT, however fast messages arrive.
+public class MessagePane {
+    public static final int DEFAULT_SCROLLBACK_LINES = 5000;
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    private final JTextArea textArea;
+    private final int scrollbackLines;
+    private final MessageRing ring;
+    private final Consumer<String> onRender;   // Called on the EDT for every rendered message
+    private final Timer frameTimer;
+
+    // Touched on the EDT only
+    private final List<String> batch = new ArrayList<>();
+    private long lastFrameNanos = System.nanoTime() - FRAME_NANOS;
+    private long droppedShown = 0;
+    private volatile long trimmedLines = 0;
+
+    // Keeps up to scrollbackLines lines in the text area; as many messages may wait between two frames
+    public MessagePane(JTextArea textArea, int scrollbackLines, Consumer<String> onRender) {
+        this.textArea = textArea;
+        this.scrollbackLines = scrollbackLines;
+        this.ring = new MessageRing(scrollbackLines);
+        this.onRender = onRender;
+        this.frameTimer = new Timer(0, e -> render());
+        this.frameTimer.setRepeats(false);
+    }
+
+    // Queues a message for the next frame; safe to call from any thread
+    public void post(String message) {
+        if (ring.offer(message)) {
+            SwingUtilities.invokeLater(this::render); // The ring was empty, so no render is pending
+        }
+    }
+
+    public int getScrollbackLines() {
+        return scrollbackLines;
+    }
+
+    // Messages that were overwritten in the ring before a frame could show them
+    public long getDroppedMessages() {
+        return ring.getDropped();
+    }
+
+    // Lines removed from the top of the text area to stay within the scrollback
+    public long getTrimmedLines() {
+        return trimmedLines;
+    }
+
+    private void render() {
+        long wait = lastFrameNanos + FRAME_NANOS - System.nanoTime();
+        if (wait > 0) {
+            // Too soon after the last frame; messages keep collecting in the ring meanwhile
+            frameTimer.setInitialDelay((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+            frameTimer.restart();
+            return;
+        }
+        lastFrameNanos = System.nanoTime();
+
+        ring.drainTo(batch);
+        StringBuilder text = new StringBuilder();
+        long dropped = ring.getDropped();
+        if (dropped > droppedShown) {
+            text.append("[").append(dropped - droppedShown).append(" messages skipped]\n");
+            droppedShown = dropped;
+        }
+        for (String message : batch) {
+            text.append(message).append('\n');
+            onRender.accept(message);
+        }
+        batch.clear();
+        if (text.length() > 0) {
+            textArea.append(text.toString());
+            trim();
+        }
+    }
+
+    // Removes whole lines from the top until at most scrollbackLines remain
+    private void trim() {
+        int lines = textArea.getLineCount() - 1; // The text ends with a newline, which starts one more empty line
+        int excess = lines - scrollbackLines;
+        if (excess <= 0) {
+            return;
+        }
+        try {
+            textArea.getDocument().remove(0, textArea.getLineStartOffset(excess));
+            trimmedLines += excess;
+        } catch (BadLocationException ignored) {}
+    }
+}
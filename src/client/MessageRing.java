@@ -0,0 +1,59 @@
+package client;
+
+import java.util.List;
+
+// Bounded buffer between the thread that receives messages and the one that renders them. Offering
+// never blocks: when the ring is full the oldest message is overwritten and counted as dropped, so a
+// reader that falls behind loses old text instead of memory.
+public class MessageRing {
+    private final String[] slots;
+    private int head = 0;   // Index of the oldest message
+    private int size = 0;
+    private long dropped = 0;
+
+    public MessageRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.slots = new String[capacity];
+    }
+
+    // Adds a message; returns true if the ring was empty, i.e. nobody has been asked to drain it yet
+    public synchronized boolean offer(String message) {
+        if (size == slots.length) {
+            slots[head] = message; // Overwrite the oldest and move the head past it
+            head = (head + 1) % slots.length;
+            dropped++;
+            return false;
+        }
+        slots[(head + size) % slots.length] = message;
+        size++;
+        return size == 1;
+    }
+
+    // Moves every buffered message, oldest first, into the list; returns the number moved
+    public synchronized int drainTo(List<String> target) {
+        int drained = size;
+        for (int i = 0; i < drained; i++) {
+            int index = (head + i) % slots.length;
+            target.add(slots[index]);
+            slots[index] = null;
+        }
+        head = 0;
+        size = 0;
+        return drained;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    // Messages overwritten before they were drained, since the ring was created
+    public synchronized long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,156 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Follows the coordinator's presence stream: applies "[PRESENCE <version>]" deltas on top of the
+// last "[PRESENCE_SNAPSHOT <version> <members>]" and asks for a new snapshot when a version is missing.
+// A binary frame carries the whole snapshot; on the line protocol its member lines arrive one by one.
+public class PresenceTracker {
+    private static final String DELTA_PREFIX = "[PRESENCE ";
+    private static final String SNAPSHOT_PREFIX = "[PRESENCE_SNAPSHOT ";
+    public static final String SYNC_COMMAND = "!presence-sync";
+
+    private final Runnable requestSnapshot;
+    private final TreeMap<Integer, String> members = new TreeMap<>();  // ID -> member line
+    private int coordinatorId = -1;
+    private long version = -1;
+    private boolean synced = false;
+    private long gaps = 0;
+
+    // Snapshot still being gathered line by line, or null
+    private List<String> pendingLines;
+    private int pendingCount;
+    private long pendingVersion;
+
+    // Requests snapshots through the given client
+    public PresenceTracker(Client client) {
+        this(() -> client.sendMessage(SYNC_COMMAND));
+    }
+
+    public PresenceTracker(Runnable requestSnapshot) {
+        this.requestSnapshot = requestSnapshot;
+    }
+
+    // Consumes a presence message; returns false for anything else so the caller can display it
+    public boolean accept(String message) {
+        if (pendingLines != null) {
+            gather(message);
+            return true;
+        }
+        if (message.startsWith(SNAPSHOT_PREFIX)) {
+            startSnapshot(message);
+            return true;
+        }
+        if (!message.startsWith(DELTA_PREFIX)) {
+            return false;
+        }
+
+        int close = message.indexOf(']');
+        long deltaVersion = Long.parseLong(message.substring(DELTA_PREFIX.length(), close));
+        if (!synced || deltaVersion <= version) {
+            return true; // Waiting for a snapshot, or already covered by it
+        }
+        if (deltaVersion != version + 1) {
+            // Missed at least one change, start over from a fresh snapshot
+            gaps++;
+            synced = false;
+            requestSnapshot.run();
+            return true;
+        }
+
+        applyDelta(message.substring(close + 2));
+        version = deltaVersion;
+        return true;
+    }
+
+    // Parses "[PRESENCE_SNAPSHOT <version> <members>]" and whatever member lines came with it
+    private void startSnapshot(String message) {
+        String[] lines = message.split("\n");
+        String[] header = lines[0].substring(SNAPSHOT_PREFIX.length(), lines[0].indexOf(']')).split(" ");
+        pendingVersion = Long.parseLong(header[0]);
+        pendingCount = Integer.parseInt(header[1]);
+        pendingLines = new ArrayList<>(pendingCount);
+        for (int i = 1; i < lines.length && pendingLines.size() < pendingCount; i++) {
+            pendingLines.add(lines[i]);
+        }
+        if (pendingLines.size() == pendingCount) {
+            applySnapshot();
+        }
+    }
+
+    private void gather(String line) {
+        pendingLines.add(line);
+        if (pendingLines.size() == pendingCount) {
+            applySnapshot();
+        }
+    }
+
+    private void applySnapshot() {
+        version = pendingVersion;
+        members.clear();
+        coordinatorId = -1;
+        for (String line : pendingLines) {
+            int id = clientId(line);
+            if (id >= 0) {
+                members.put(id, line.replace(" (Coordinator)", ""));
+                if (line.contains(" (Coordinator)")) {
+                    coordinatorId = id;
+                }
+            }
+        }
+        pendingLines = null;
+        synced = true;
+    }
+
+    private void applyDelta(String event) {
+        if (event.startsWith("JOIN ")) {
+            String line = event.substring(5);
+            members.put(clientId(line), line);
+        } else if (event.startsWith("LEAVE ")) {
+            members.remove(clientId(event.substring(6)));
+        } else if (event.startsWith("COORDINATOR ")) {
+            coordinatorId = clientId(event.substring(12));
+        } else if (event.equals("CLEAR")) {
+            members.clear();
+            coordinatorId = -1;
+        }
+    }
+
+    // Parses the ID from "Client <id>..." or returns -1
+    private static int clientId(String line) {
+        if (!line.startsWith("Client ")) {
+            return -1;
+        }
+        int end = 7;
+        while (end < line.length() && Character.isDigit(line.charAt(end))) {
+            end++;
+        }
+        return end > 7 ? Integer.parseInt(line.substring(7, end)) : -1;
+    }
+
+    // Member lines by client ID, as of getVersion()
+    public Map<Integer, String> getMembers() {
+        return Collections.unmodifiableMap(members);
+    }
+
+    public int getCoordinatorId() {
+        return coordinatorId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    // How many times a missing version forced a new snapshot
+    public long getGapCount() {
+        return gaps;
+    }
+}
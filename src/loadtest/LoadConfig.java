@@ -0,0 +1,73 @@
+package loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Settings of one load run, read from key=value arguments; see LoadGenerator for the list
+final class LoadConfig {
+    private static final Set<String> KEYS = Set.of("host", "port", "embedded", "clients", "threads", "warmup",
+            "duration", "rate", "broadcast", "private", "members", "size", "report");
+
+    String host = "localhost";
+    int port = 6666;
+    String embedded = null;       // Engine mode of an in-process server to test instead, or null
+    int clients = 100;
+    int threads = 2;
+    int warmupSeconds = 5;
+    int durationSeconds = 30;
+    double rate = 5;              // Operations per second per client; 0 sends as fast as acknowledgements allow
+    int broadcastWeight = 70;
+    int privateWeight = 25;
+    int membersWeight = 5;
+    int messageSize = 64;         // Bytes of text per broadcast or private message, timestamp included
+    String report = null;         // File for the report, or null for standard output
+
+    static LoadConfig parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            }
+            String key = arg.substring(0, equals);
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown setting " + key + ", expected one of " + KEYS);
+            }
+            values.put(key, arg.substring(equals + 1));
+        }
+
+        LoadConfig config = new LoadConfig();
+        config.host = values.getOrDefault("host", config.host);
+        config.port = intValue(values, "port", config.port);
+        config.embedded = values.getOrDefault("embedded", config.embedded);
+        config.clients = intValue(values, "clients", config.clients);
+        config.threads = intValue(values, "threads", config.threads);
+        config.warmupSeconds = intValue(values, "warmup", config.warmupSeconds);
+        config.durationSeconds = intValue(values, "duration", config.durationSeconds);
+        config.rate = Double.parseDouble(values.getOrDefault("rate", Double.toString(config.rate)));
+        config.broadcastWeight = intValue(values, "broadcast", config.broadcastWeight);
+        config.privateWeight = intValue(values, "private", config.privateWeight);
+        config.membersWeight = intValue(values, "members", config.membersWeight);
+        config.messageSize = intValue(values, "size", config.messageSize);
+        config.report = values.getOrDefault("report", config.report);
+        if (config.clients < 1 || config.threads < 1 || config.durationSeconds < 1
+                || config.broadcastWeight + config.privateWeight + config.membersWeight <= 0) {
+            throw new IllegalArgumentException("Need at least one client, thread, second and message kind");
+        }
+        // A negative weight would quietly hand part of another kind's share to broadcasts
+        if (config.broadcastWeight < 0 || config.privateWeight < 0 || config.membersWeight < 0) {
+            throw new IllegalArgumentException("Weights must not be negative: broadcast=" + config.broadcastWeight
+                    + " private=" + config.privateWeight + " members=" + config.membersWeight);
+        }
+        if (!(config.rate >= 0) || config.messageSize < 0 || config.warmupSeconds < 0) {
+            throw new IllegalArgumentException("rate, size and warmup must not be negative");
+        }
+        return config;
+    }
+
+    private static int intValue(Map<String, String> values, String key, int defaultValue) {
+        String value = values.get(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
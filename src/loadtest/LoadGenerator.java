@@ -0,0 +1,223 @@
+package loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import protocol.DeliveryStatus;
+import server.EngineMode;
+import server.LatencyHistogram;
+import server.Server;
+
+// Headless load test: many simulated clients on a few selector threads, each running a closed loop of
+// broadcasts, private messages and (from the coordinator) !members requests against a running server.
+// Reports sent and delivered messages per second and delivery and acknowledgement latency as JSON, one
+// value per line, so reports from two builds can be diffed. Example:
+//   java -cp <classes> loadtest.LoadGenerator host=localhost port=6666 clients=2000 threads=4 rate=2
+//       warmup=5 duration=30 broadcast=70 private=25 members=5 size=64 report=build-42.json
+// embedded=NIO (or THREAD_PER_CLIENT) starts a server in this JVM instead of connecting to host:port.
+public class LoadGenerator {
+    // Clients connect in batches, so the server's accept backlog never overflows
+    private static final int CONNECT_BATCH = 50;
+    private static final long CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    private final LoadConfig config;
+    private final LoadStats stats = new LoadStats();
+    private final long epochNanos = System.nanoTime();
+    private final AtomicIntegerArray clientIds;
+    private final AtomicInteger ready = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final int totalWeight;
+    private volatile boolean sending = false;
+
+    LoadGenerator(LoadConfig config) {
+        this.config = config;
+        this.clientIds = new AtomicIntegerArray(config.clients);
+        this.totalWeight = config.broadcastWeight + config.privateWeight + config.membersWeight;
+    }
+
+    // Prints the report unless report=<file> was given
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.parse(args);
+        String report = run(config);
+        if (config.report == null) {
+            System.out.println(report);
+        } else {
+            System.out.println("Report written to " + config.report);
+        }
+    }
+
+    // Runs a load test with key=value settings and returns the report; writes it to report=<file> as well if given
+    public static String run(String... args) throws IOException, InterruptedException {
+        return run(LoadConfig.parse(args));
+    }
+
+    private static String run(LoadConfig config) throws IOException, InterruptedException {
+        Server server = null;
+        if (config.embedded != null) {
+            server = startEmbedded(EngineMode.valueOf(config.embedded));
+            config.host = "localhost";
+            config.port = server.getLocalPort();
+        }
+        try {
+            String report = new LoadGenerator(config).execute();
+            if (config.report != null) {
+                Files.writeString(Path.of(config.report), report, StandardCharsets.UTF_8);
+            }
+            return report;
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    private String execute() throws IOException, InterruptedException {
+        InetSocketAddress address = new InetSocketAddress(config.host, config.port);
+        LoadLoop[] loops = new LoadLoop[config.threads];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new LoadLoop(i, address);
+            loops[i].start();
+        }
+        try {
+            for (int i = 0; i < config.clients; i++) {
+                loops[i % loops.length].add(new SimulatedClient(i, this, epochNanos + i));
+                if ((i + 1) % CONNECT_BATCH == 0 || i + 1 == config.clients) {
+                    awaitConnected(i + 1);
+                }
+            }
+            int connected = ready.get();
+            System.out.println("Connected " + connected + " of " + config.clients + " clients to " + address);
+
+            sending = true;
+            Thread.sleep(TimeUnit.SECONDS.toMillis(config.warmupSeconds));
+            stats.reset();
+            long start = System.nanoTime();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(config.durationSeconds));
+            long elapsedNanos = System.nanoTime() - start;
+            String report = report(connected, elapsedNanos);
+            sending = false;
+            return report;
+        } finally {
+            for (LoadLoop loop : loops) {
+                loop.stop();
+            }
+        }
+    }
+
+    // Waits until every client created so far has either connected or failed
+    private void awaitConnected(int created) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (ready.get() + failed.get() < created && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private String report(int connected, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long sent = 0;
+        for (MessageKind kind : MessageKind.values()) {
+            sent += stats.getSent(kind);
+        }
+
+        StringBuilder json = new StringBuilder("{\n");
+        field(json, "target", "\"" + config.host + ":" + config.port + "\"");
+        field(json, "engine", config.embedded != null ? "\"" + config.embedded + "\"" : "null");
+        field(json, "clients", config.clients);
+        field(json, "connected", connected);
+        field(json, "threads", config.threads);
+        field(json, "warmupSeconds", config.warmupSeconds);
+        field(json, "durationSeconds", config.durationSeconds);
+        field(json, "ratePerClient", config.rate);
+        field(json, "broadcastWeight", config.broadcastWeight);
+        field(json, "privateWeight", config.privateWeight);
+        field(json, "membersWeight", config.membersWeight);
+        field(json, "messageSize", config.messageSize);
+        field(json, "sentBroadcast", stats.getSent(MessageKind.BROADCAST));
+        field(json, "sentPrivate", stats.getSent(MessageKind.PRIVATE));
+        field(json, "sentMembers", stats.getSent(MessageKind.MEMBERS));
+        field(json, "sentPerSecond", Math.round(sent / seconds));
+        for (DeliveryStatus status : DeliveryStatus.values()) {
+            String name = status.name();
+            field(json, "ack" + name.charAt(0) + name.substring(1).toLowerCase(), stats.getAcknowledged(status));
+        }
+        field(json, "delivered", stats.getDelivered());
+        field(json, "deliveredPerSecond", Math.round(stats.getDelivered() / seconds));
+        latency(json, "deliveryLatency", stats.getDeliveryLatency());
+        latency(json, "ackLatency", stats.getAckLatency());
+        field(json, "connectionsLost", stats.getConnectionsLost());
+        field(json, "protocolErrors", stats.getProtocolErrors());
+        json.setLength(json.length() - 2); // Drop the last comma
+        return json.append("\n}").toString();
+    }
+
+    private static void latency(StringBuilder json, String name, LatencyHistogram histogram) {
+        field(json, name + "Count", histogram.getCount());
+        field(json, name + "P50Micros", histogram.getValueAtPercentile(50) / 1000);
+        field(json, name + "P99Micros", histogram.getValueAtPercentile(99) / 1000);
+        field(json, name + "P999Micros", histogram.getValueAtPercentile(99.9) / 1000);
+        field(json, name + "MaxMicros", histogram.getMax() / 1000);
+    }
+
+    private static void field(StringBuilder json, String name, Object value) {
+        json.append("  \"").append(name).append("\": ").append(value).append(",\n");
+    }
+
+    private static Server startEmbedded(EngineMode mode) throws InterruptedException {
+        Server server = new Server(mode);
+        new Thread(() -> server.start(0), "embedded-server").start();
+        for (int i = 0; i < 250 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+        return server;
+    }
+
+    // Called by a client once the server welcomed it
+    void ready(int index, int clientId) {
+        clientIds.set(index, clientId);
+        ready.incrementAndGet();
+    }
+
+    // Called by a client whose connection failed or was closed by the server
+    void failed(int index) {
+        if (clientIds.getAndSet(index, 0) != 0) {
+            ready.decrementAndGet();
+        }
+        failed.incrementAndGet();
+    }
+
+    // Server ID of a random other connected client, or 0 if the one picked is not connected
+    int randomPeer(SplittableRandom random, int self) {
+        if (config.clients < 2) {
+            return 0;
+        }
+        int index = random.nextInt(config.clients - 1);
+        return clientIds.get(index < self ? index : index + 1);
+    }
+
+    LoadConfig getConfig() {
+        return config;
+    }
+
+    LoadStats getStats() {
+        return stats;
+    }
+
+    long getEpochNanos() {
+        return epochNanos;
+    }
+
+    int getTotalWeight() {
+        return totalWeight;
+    }
+
+    boolean isSending() {
+        return sending;
+    }
+}
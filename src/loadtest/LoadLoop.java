@@ -0,0 +1,97 @@
+package loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// One selector thread driving many simulated clients: connects, reads, writes, and every millisecond
+// gives each client whose think time is over the chance to send
+final class LoadLoop implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long SEND_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Selector selector;
+    private final InetSocketAddress address;
+    private final Queue<SimulatedClient> pending = new ConcurrentLinkedQueue<>();
+    private final List<SimulatedClient> clients = new ArrayList<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    LoadLoop(int index, InetSocketAddress address) throws IOException {
+        this.selector = Selector.open();
+        this.address = address;
+        this.thread = new Thread(this, "load-loop-" + index);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    // Hands a client to this loop, which starts connecting it
+    void add(SimulatedClient client) {
+        pending.add(client);
+        selector.wakeup();
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Override
+    public void run() {
+        try {
+            long nextSendCheck = System.nanoTime();
+            while (running) {
+                selector.select(1);
+                registerPending();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SimulatedClient client = (SimulatedClient) key.attachment();
+                    if (key.isValid() && key.isConnectable()) {
+                        client.handleConnect();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        client.handleRead(readBuffer);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        client.handleWrite();
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                long now = System.nanoTime();
+                if (now - nextSendCheck >= 0) {
+                    for (SimulatedClient client : clients) {
+                        client.maybeSend(now);
+                    }
+                    nextSendCheck = now + SEND_CHECK_NANOS;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(thread.getName() + " failed: " + e.getMessage());
+        } finally {
+            clients.forEach(SimulatedClient::close);
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void registerPending() {
+        SimulatedClient client;
+        while ((client = pending.poll()) != null) {
+            clients.add(client);
+            client.register(selector, address);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import protocol.DeliveryStatus;
+import server.LatencyHistogram;
+
+// What the simulated clients observed; shared by all loop threads and reset when the warmup ends
+final class LoadStats {
+    private final Map<MessageKind, LongAdder> sent = new EnumMap<>(MessageKind.class);
+    private final Map<DeliveryStatus, LongAdder> acknowledged = new EnumMap<>(DeliveryStatus.class);
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder connectionsLost = new LongAdder();
+    private final LongAdder protocolErrors = new LongAdder();
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+
+    LoadStats() {
+        for (MessageKind kind : MessageKind.values()) {
+            sent.put(kind, new LongAdder());
+        }
+        for (DeliveryStatus status : DeliveryStatus.values()) {
+            acknowledged.put(status, new LongAdder());
+        }
+    }
+
+    void sent(MessageKind kind) {
+        sent.get(kind).increment();
+    }
+
+    void acknowledged(DeliveryStatus status, long latencyNanos) {
+        acknowledged.get(status).increment();
+        ackLatency.record(latencyNanos);
+    }
+
+    void delivered(long latencyNanos) {
+        delivered.increment();
+        deliveryLatency.record(latencyNanos);
+    }
+
+    void connectionLost() {
+        connectionsLost.increment();
+    }
+
+    // Malformed frames or a refused binary upgrade; the client also counts as lost
+    void protocolError() {
+        protocolErrors.increment();
+    }
+
+    long getSent(MessageKind kind) {
+        return sent.get(kind).sum();
+    }
+
+    long getAcknowledged(DeliveryStatus status) {
+        return acknowledged.get(status).sum();
+    }
+
+    long getDelivered() {
+        return delivered.sum();
+    }
+
+    long getConnectionsLost() {
+        return connectionsLost.sum();
+    }
+
+    long getProtocolErrors() {
+        return protocolErrors.sum();
+    }
+
+    LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    LatencyHistogram getAckLatency() {
+        return ackLatency;
+    }
+
+    // Starts the measured interval; lost connections and protocol errors count over the whole run
+    void reset() {
+        sent.values().forEach(LongAdder::reset);
+        acknowledged.values().forEach(LongAdder::reset);
+        delivered.reset();
+        deliveryLatency.reset();
+        ackLatency.reset();
+    }
+}
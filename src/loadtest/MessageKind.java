@@ -0,0 +1,4 @@
+package loadtest;
+
+// Kinds of request a simulated client sends
+enum MessageKind { BROADCAST, PRIVATE, MEMBERS }
@@ -0,0 +1,255 @@
+package loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import protocol.DeliveryStatus;
+import protocol.Frame;
+import protocol.FrameType;
+import protocol.Handshake;
+import protocol.MessageDecoder;
+import protocol.WireFormat;
+
+// One simulated chat client, driven by a LoadLoop thread. It upgrades to binary framing and then runs a
+// closed loop: send one acknowledged request, wait for the ACK, think, send the next. Broadcasts and
+// private messages carry the send time (nanoseconds since the run started, all clients share one clock),
+// so every client that receives one can time its delivery. Only the coordinator sends !members, since
+// the server treats it as ordinary chat from anyone else; the other clients broadcast instead.
+final class SimulatedClient {
+    static final String STAMP = "lt:";
+    private static final String WELCOME = "Welcome! Your ID is ";
+    private static final String NOW_COORDINATOR = "You are now the coordinator.";
+    private static final String STILL_COORDINATOR = "You are the coordinator.";
+    private static final String NO_LONGER_COORDINATOR = "You are no longer the coordinator.";
+
+    private final int index;
+    private final LoadGenerator generator;
+    private final LoadStats stats;
+    private final SocketChannel channel;
+    private final MessageDecoder decoder = new MessageDecoder();
+    private final ArrayDeque<ByteBuffer> writes = new ArrayDeque<>();
+    private final SplittableRandom random;
+    private final StringBuilder text = new StringBuilder();
+    private SelectionKey key;
+
+    private int clientId = 0;             // Assigned by the server's welcome
+    private boolean coordinator = false;
+    private long sequence = 0;
+    private boolean outstanding = false;  // A request is waiting for its ACK
+    private long sentNanos;
+    private long nextSendNanos;
+    private boolean closed = false;
+
+    SimulatedClient(int index, LoadGenerator generator, long seed) throws IOException {
+        this.index = index;
+        this.generator = generator;
+        this.stats = generator.getStats();
+        this.random = new SplittableRandom(seed);
+        this.channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    // Starts connecting (loop thread only)
+    void register(Selector selector, InetSocketAddress address) {
+        try {
+            key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            if (channel.connect(address)) {
+                onConnected();
+            }
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    void handleConnect() {
+        try {
+            if (channel.finishConnect()) {
+                onConnected();
+            }
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    private void onConnected() {
+        key.interestOps(SelectionKey.OP_READ);
+        write(ByteBuffer.wrap((Handshake.hello(Frame.VERSION) + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Reads what is available into the loop's shared buffer and handles every complete frame
+    void handleRead(ByteBuffer buffer) {
+        try {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read == -1) {
+                fail();
+                return;
+            }
+            buffer.flip();
+            decoder.feed(buffer, this::onFrame);
+        } catch (ProtocolException e) {
+            stats.protocolError();
+            fail();
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    private void onFrame(Frame frame) {
+        long now = System.nanoTime();
+        String payload = frame.getPayload();
+        switch (frame.getType()) {
+            case TEXT -> {
+                if (decoder.getFormat() == WireFormat.LINE && Handshake.isAck(payload)) {
+                    if (Handshake.version(payload) != Frame.VERSION) {
+                        stats.protocolError(); // Server declined binary framing
+                        fail();
+                        return;
+                    }
+                    decoder.switchTo(WireFormat.BINARY);
+                } else if (clientId == 0 && payload.startsWith(WELCOME)) {
+                    clientId = Integer.parseInt(payload.substring(WELCOME.length()).trim());
+                    nextSendNanos = now + thinkNanos();
+                    generator.ready(index, clientId);
+                } else if (payload.equals(NOW_COORDINATOR) || payload.equals(STILL_COORDINATOR)) {
+                    coordinator = true;
+                } else if (payload.equals(NO_LONGER_COORDINATOR)) {
+                    coordinator = false;
+                } else {
+                    int stamp = payload.indexOf(STAMP);
+                    if (stamp >= 0) {
+                        stats.delivered(now - generator.getEpochNanos() - parseStamp(payload, stamp + STAMP.length()));
+                    }
+                }
+            }
+            case ACK -> {
+                if (outstanding && frame.getSequence() == sequence) {
+                    outstanding = false;
+                    stats.acknowledged(DeliveryStatus.parse(payload), now - sentNanos);
+                    nextSendNanos = now + thinkNanos();
+                }
+            }
+            case PING -> write(Frame.encode(FrameType.PONG, Frame.NO_CLIENT, Frame.NO_CLIENT, 0, new byte[0]));
+            default -> {
+                // Nothing else is expected on a client connection
+            }
+        }
+    }
+
+    // Sends the next request if the previous one was acknowledged and the think time is over (loop thread only)
+    void maybeSend(long now) {
+        if (closed || clientId == 0 || outstanding || now - nextSendNanos < 0 || !generator.isSending()) {
+            return;
+        }
+        text.setLength(0);
+        int roll = random.nextInt(generator.getTotalWeight());
+        LoadConfig config = generator.getConfig();
+        MessageKind kind;
+        if (roll < config.broadcastWeight) {
+            kind = MessageKind.BROADCAST;
+        } else if (roll < config.broadcastWeight + config.privateWeight) {
+            int target = generator.randomPeer(random, index);
+            kind = target > 0 ? MessageKind.PRIVATE : MessageKind.BROADCAST;
+            if (target > 0) {
+                text.append('@').append(target).append(' ');
+            }
+        } else {
+            kind = coordinator ? MessageKind.MEMBERS : MessageKind.BROADCAST;
+        }
+
+        sentNanos = System.nanoTime();
+        if (kind == MessageKind.MEMBERS) {
+            text.append("!members");
+        } else {
+            text.append(STAMP).append(sentNanos - generator.getEpochNanos()).append(' ');
+            while (text.length() < config.messageSize) {
+                text.append('x');
+            }
+        }
+        sequence++;
+        outstanding = true;
+        stats.sent(kind);
+        byte[] payload = text.toString().getBytes(StandardCharsets.UTF_8);
+        write(Frame.encode(FrameType.REQUEST, Frame.NO_CLIENT, Frame.NO_CLIENT, sequence, payload));
+    }
+
+    // Writes what the socket takes and keeps the rest for the next writable event
+    private void write(ByteBuffer frame) {
+        writes.addLast(frame);
+        handleWrite();
+    }
+
+    void handleWrite() {
+        try {
+            ByteBuffer next;
+            while ((next = writes.peekFirst()) != null) {
+                channel.write(next);
+                if (next.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                writes.pollFirst();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    boolean isReady() {
+        return clientId != 0 && !closed;
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void fail() {
+        if (!closed) {
+            stats.connectionLost();
+        }
+        close();
+        generator.failed(index);
+    }
+
+    // Exponential think time with the configured mean rate, so arrivals look like independent users
+    private long thinkNanos() {
+        double rate = generator.getConfig().rate;
+        if (rate <= 0) {
+            return 0;
+        }
+        return (long) (-Math.log(1 - random.nextDouble()) / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static long parseStamp(String payload, int from) {
+        long value = 0;
+        for (int i = from; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
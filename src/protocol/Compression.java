@@ -0,0 +1,49 @@
+package protocol;
+
+import java.nio.charset.StandardCharsets;
+
+// Negotiates frame compression on a binary connection. The client sends "!compress deflate"; the
+// server answers "!compress-ok deflate" if it accepts, or "!compress-ok none". From then on either side
+// may send frames whose payload is deflated with DICTIONARY preset; such frames have COMPRESSED set in
+// the type byte. Only payloads of at least the sender's threshold are compressed, and only if they shrink.
+public final class Compression {
+    public static final String REQUEST = "!compress";
+    public static final String ACK = "!compress-ok";
+
+    public static final String DEFLATE = "deflate";
+    public static final String NONE = "none";
+
+    // Bit set in the frame type byte when the payload is deflated
+    public static final int COMPRESSED = 0x80;
+
+    // Payloads smaller than this are sent as they are; deflate gains little on short chat lines
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    // Preset dictionary shared by both sides: text that recurs in rosters and server notices, so even a
+    // single roster line compresses well. Deflate favours the end of the dictionary, so the most common
+    // fragments come last. Changing it breaks compatibility with existing peers.
+    static final byte[] DICTIONARY = ("Group Member Details: Current Coordinator: You are now the coordinator. "
+            + "[COORDINATOR_CHANGED] [PRESENCE_SNAPSHOT [PRESENCE  JOIN LEAVE COORDINATOR "
+            + "Active Clients:\n- Client  [ID:  [IP Address: 192.168.1. [Port: ]\n- Client ")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private Compression() {
+    }
+
+    public static String request(String method) {
+        return REQUEST + " " + method;
+    }
+
+    public static String ack(String method) {
+        return ACK + " " + method;
+    }
+
+    public static boolean isAck(String line) {
+        return line.startsWith(ACK + " ");
+    }
+
+    // Method carried by a request or ack line
+    public static String method(String line) {
+        return line.substring(line.indexOf(' ') + 1).trim();
+    }
+}
@@ -0,0 +1,26 @@
+package protocol;
+
+// Outcome the server reports in an ACK frame
+public enum DeliveryStatus {
+    // The message was accepted and handed to its recipients, or passed on to the cluster node that owns them
+    ROUTED,
+
+    // A private message was handed to its recipient's connection
+    DELIVERED,
+
+    // The recipient is offline; the message waits in its inbox until it reconnects
+    QUEUED,
+
+    // The message could not be routed (e.g. unknown or malformed target)
+    REJECTED;
+
+    // Parses an ACK payload, treating anything unknown as rejected
+    public static DeliveryStatus parse(String payload) {
+        for (DeliveryStatus status : values()) {
+            if (status.name().equals(payload)) {
+                return status;
+            }
+        }
+        return REJECTED;
+    }
+}
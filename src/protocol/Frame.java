@@ -0,0 +1,96 @@
+package protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// One protocol message. Binary layout (big-endian):
+//   int32 length   - number of bytes after this field
+//   int8  version  - frame format version (VERSION)
+//   int8  type     - FrameType code, plus Compression.COMPRESSED if the payload is deflated
+//   int32 sender   - client ID of the sender, -1 for the server
+//   int32 target   - client ID of the recipient, -1 for everyone
+//   int64 sequence - sender-assigned sequence number
+//   bytes payload  - UTF-8 text
+public final class Frame {
+    public static final int VERSION = 1;
+
+    // Size of the fields between the length prefix and the payload
+    public static final int HEADER_SIZE = 1 + 1 + 4 + 4 + 8;
+
+    // Largest accepted value of the length field
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    public static final int NO_CLIENT = -1;
+
+    private final FrameType type;
+    private final int sender;
+    private final int target;
+    private final long sequence;
+    private final String payload;
+
+    public Frame(FrameType type, int sender, int target, long sequence, String payload) {
+        this.type = type;
+        this.sender = sender;
+        this.target = target;
+        this.sequence = sequence;
+        this.payload = payload;
+    }
+
+    // A plain text frame without routing information, e.g. a line received over the line protocol
+    public static Frame text(String payload) {
+        return new Frame(FrameType.TEXT, NO_CLIENT, NO_CLIENT, 0, payload);
+    }
+
+    public FrameType getType() {
+        return type;
+    }
+
+    public int getSender() {
+        return sender;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    // Encodes this frame into a new buffer ready for writing
+    public ByteBuffer encode() {
+        return encode(type, sender, target, sequence, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Encodes a frame from an already UTF-8 encoded payload
+    public static ByteBuffer encode(FrameType type, int sender, int target, long sequence, byte[] payload) {
+        return encode(type.getCode(), sender, target, sequence, payload);
+    }
+
+    // Encodes a frame whose payload was deflated by a FrameCompressor (see Compression)
+    public static ByteBuffer encodeCompressed(FrameType type, int sender, int target, long sequence, byte[] deflated) {
+        return encode(type.getCode() | Compression.COMPRESSED, sender, target, sequence, deflated);
+    }
+
+    private static ByteBuffer encode(int typeByte, int sender, int target, long sequence, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + HEADER_SIZE + payload.length);
+        buffer.putInt(HEADER_SIZE + payload.length)
+              .put((byte) VERSION)
+              .put((byte) typeByte)
+              .putInt(sender)
+              .putInt(target)
+              .putLong(sequence)
+              .put(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[from=" + sender + ", to=" + target + ", seq=" + sequence + "] " + payload;
+    }
+}
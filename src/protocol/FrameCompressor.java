@@ -0,0 +1,156 @@
+package protocol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ProtocolException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Deflates and inflates frame payloads with the shared dictionary (see Compression) and counts bytes
+// and CPU time both ways. Safe to share between threads: each thread reuses its own Deflater and Inflater.
+public class FrameCompressor {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean THREAD_CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final int threshold;
+
+    private final LongAdder deflatedFrames = new LongAdder();
+    private final LongAdder deflateBytesIn = new LongAdder();
+    private final LongAdder deflateBytesOut = new LongAdder();
+    private final LongAdder deflateCpuNanos = new LongAdder();
+    private final LongAdder inflatedFrames = new LongAdder();
+    private final LongAdder inflateBytesIn = new LongAdder();
+    private final LongAdder inflateBytesOut = new LongAdder();
+    private final LongAdder inflateCpuNanos = new LongAdder();
+
+    public FrameCompressor() {
+        this(Compression.DEFAULT_THRESHOLD);
+    }
+
+    // Payloads shorter than threshold bytes are never compressed
+    public FrameCompressor(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    // Returns the deflated payload, or null if it is below the threshold or would not get smaller
+    public byte[] deflate(byte[] payload) {
+        if (payload.length < threshold) {
+            return null;
+        }
+        long start = cpuNanos();
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(Compression.DICTIONARY);
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] output = new byte[payload.length];
+        int length = 0;
+        while (!deflater.finished() && length < output.length) {
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        boolean smaller = deflater.finished() && length < payload.length;
+        deflateCpuNanos.add(cpuNanos() - start);
+        if (!smaller) {
+            return null;
+        }
+        deflatedFrames.increment();
+        deflateBytesIn.add(payload.length);
+        deflateBytesOut.add(length);
+        return Arrays.copyOf(output, length);
+    }
+
+    // Inflates a compressed payload; fails if it is corrupt or would exceed maxLength bytes
+    public byte[] inflate(byte[] data, int offset, int length, int maxLength) throws ProtocolException {
+        long start = cpuNanos();
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(Compression.DICTIONARY); // Raw deflate: the dictionary is set up front
+        inflater.setInput(data, offset, length);
+        byte[] output = new byte[Math.min(maxLength, Math.max(64, length * 4))];
+        int size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (size == output.length) {
+                    if (size == maxLength) {
+                        throw new ProtocolException("Compressed payload exceeds " + maxLength + " bytes");
+                    }
+                    output = Arrays.copyOf(output, (int) Math.min(maxLength, 2L * size));
+                }
+                int inflated = inflater.inflate(output, size, output.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ProtocolException("Truncated compressed payload");
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Corrupt compressed payload: " + e.getMessage());
+        } finally {
+            inflateCpuNanos.add(cpuNanos() - start);
+        }
+        inflatedFrames.increment();
+        inflateBytesIn.add(length);
+        inflateBytesOut.add(size);
+        return size == output.length ? output : Arrays.copyOf(output, size);
+    }
+
+    public long getDeflatedFrames() {
+        return deflatedFrames.sum();
+    }
+
+    // Payload bytes before and after deflating, over the frames that were sent compressed
+    public long getDeflateBytesIn() {
+        return deflateBytesIn.sum();
+    }
+
+    public long getDeflateBytesOut() {
+        return deflateBytesOut.sum();
+    }
+
+    // CPU time spent deflating, including attempts that did not shrink the payload
+    public long getDeflateCpuNanos() {
+        return deflateCpuNanos.sum();
+    }
+
+    public long getInflatedFrames() {
+        return inflatedFrames.sum();
+    }
+
+    public long getInflateBytesIn() {
+        return inflateBytesIn.sum();
+    }
+
+    public long getInflateBytesOut() {
+        return inflateBytesOut.sum();
+    }
+
+    public long getInflateCpuNanos() {
+        return inflateCpuNanos.sum();
+    }
+
+    // Uncompressed size divided by compressed size over everything deflated so far, 1 if nothing was
+    public double getCompressionRatio() {
+        long out = deflateBytesOut.sum();
+        return out == 0 ? 1.0 : (double) deflateBytesIn.sum() / out;
+    }
+
+    // CPU time of the current thread where the JVM measures it, wall-clock time otherwise
+    private static long cpuNanos() {
+        if (THREAD_CPU_TIME) {
+            long nanos = THREADS.getCurrentThreadCpuTime();
+            if (nanos >= 0) {
+                return nanos;
+            }
+        }
+        return System.nanoTime();
+    }
+}
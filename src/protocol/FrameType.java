@@ -0,0 +1,42 @@
+package protocol;
+
+// Type byte carried in every binary frame
+public enum FrameType {
+    // Chat text, commands and server notices; the payload is the same text the line protocol would carry
+    TEXT(1),
+
+    // Text the client wants acknowledged; the server answers with an ACK carrying the same sequence
+    REQUEST(2),
+
+    // Server acknowledgement of a REQUEST; the payload is a DeliveryStatus name
+    ACK(3),
+
+    // Heartbeat probe; the peer answers with a PONG, neither is shown to the user
+    PING(4),
+
+    // Heartbeat answer; any frame counts as activity for idle detection
+    PONG(5),
+
+    // Control message between cluster nodes, e.g. for the coordinator election; never sent to clients
+    PEER(6);
+
+    private final int code;
+
+    FrameType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    // Returns the frame type for a wire code, or null if it is unknown
+    public static FrameType fromCode(int code) {
+        for (FrameType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package protocol;
+
+// Line-protocol commands used to upgrade a connection to binary framing.
+// The client sends "!protocol <version>" as a line; the server answers with
+// "!protocol-ok <version>" as a line and writes binary frames from then on.
+// A reply of version 0 (or no reply at all from an older server) means the
+// connection stays on the line protocol.
+public final class Handshake {
+    public static final String HELLO = "!protocol";
+    public static final String ACK = "!protocol-ok";
+
+    // Version number meaning "stay on the line protocol"
+    public static final int LINE_VERSION = 0;
+
+    private Handshake() {
+    }
+
+    public static String hello(int version) {
+        return HELLO + " " + version;
+    }
+
+    public static String ack(int version) {
+        return ACK + " " + version;
+    }
+
+    public static boolean isHello(String line) {
+        return line.startsWith(HELLO + " ");
+    }
+
+    public static boolean isAck(String line) {
+        return line.startsWith(ACK + " ");
+    }
+
+    // Returns the version carried by a hello or ack line, or LINE_VERSION if it cannot be parsed
+    public static int version(String line) {
+        int space = line.indexOf(' ');
+        try {
+            return Integer.parseInt(line.substring(space + 1).trim());
+        } catch (NumberFormatException e) {
+            return LINE_VERSION;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package protocol;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One direction of a LoopbackTransport: a bounded ring of bytes. Writers block while it is full, like a
+// socket whose send buffer is full, so a client that stops reading backs up into the server's outbound
+// queue exactly as it would over TCP. Once closed, readers get what is left and then end of stream.
+final class LoopbackPipe {
+    private final byte[] ring;
+    private int head = 0;   // Next byte to read
+    private int size = 0;
+    private boolean closed = false;
+    private volatile Runnable readable;   // Told about new bytes and the close, for event-driven readers
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    LoopbackPipe(int capacity) {
+        this.ring = new byte[capacity];
+    }
+
+    void setReadable(Runnable readable) {
+        this.readable = readable;
+    }
+
+    void write(byte[] data, int offset, int length) throws IOException {
+        try {
+            writeLocked(data, offset, length);
+        } finally {
+            notifyReadable();
+        }
+    }
+
+    private void writeLocked(byte[] data, int offset, int length) throws IOException {
+        lock.lock();
+        try {
+            while (length > 0) {
+                while (size == ring.length && !closed) {
+                    notFull.awaitUninterruptibly();
+                }
+                if (closed) {
+                    throw new IOException("Loopback connection closed");
+                }
+                int tail = (head + size) % ring.length;
+                int chunk = Math.min(length, Math.min(ring.length - size, ring.length - tail));
+                System.arraycopy(data, offset, ring, tail, chunk);
+                size += chunk;
+                offset += chunk;
+                length -= chunk;
+                notEmpty.signal();
+                if (length > 0 && readable != null) {
+                    lock.unlock(); // Let an event-driven reader drain the ring before waiting for room
+                    try {
+                        notifyReadable();
+                    } finally {
+                        lock.lock();
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Reads at least one byte, or returns -1 once the pipe is closed and drained
+    int read(byte[] data, int offset, int length, int timeoutMillis) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (size == 0 && !closed) {
+                if (timeoutMillis == 0) {
+                    notEmpty.awaitUninterruptibly();
+                } else if (remaining <= 0) {
+                    throw new SocketTimeoutException("Read timed out");
+                } else {
+                    try {
+                        remaining = notEmpty.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while reading", e);
+                    }
+                }
+            }
+            if (size == 0) {
+                return -1;
+            }
+            int chunk = Math.min(length, Math.min(size, ring.length - head));
+            System.arraycopy(ring, head, data, offset, chunk);
+            head = (head + chunk) % ring.length;
+            size -= chunk;
+            notFull.signal();
+            return chunk;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Never blocks: the byte count, 0 if the ring is empty, -1 once it is closed and drained
+    int readNow(byte[] data, int offset, int length) {
+        lock.lock();
+        try {
+            if (size == 0) {
+                return closed ? -1 : 0;
+            }
+            int chunk = Math.min(length, Math.min(size, ring.length - head));
+            System.arraycopy(ring, head, data, offset, chunk);
+            head = (head + chunk) % ring.length;
+            size -= chunk;
+            notFull.signal();
+            return chunk;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int available() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        notifyReadable();
+    }
+
+    private void notifyReadable() {
+        Runnable listener = readable;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-memory transport for a client in the same JVM as its server: two bounded byte pipes, one per
+// direction, and no sockets, kernel copies or loopback round trips. Create both ends with pair().
+public class LoopbackTransport implements Transport {
+    // Bytes buffered per direction, about what a socket buffers
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    // Made-up client ports for the roster, from the start of the ephemeral range
+    private static final AtomicInteger NEXT_PORT = new AtomicInteger(49152);
+
+    private final LoopbackPipe inbound;
+    private final LoopbackPipe outbound;
+    private final int remotePort;
+    private final InputStream in = new In();
+    private final OutputStream out = new Out();
+    private volatile int readTimeoutMillis = 0;
+    private volatile boolean open = true;
+    private LoopbackTransport peer;
+
+    private LoopbackTransport(LoopbackPipe inbound, LoopbackPipe outbound, int remotePort) {
+        this.inbound = inbound;
+        this.outbound = outbound;
+        this.remotePort = remotePort;
+    }
+
+    // Returns the client end [0] and the server end [1] of a new connection
+    public static LoopbackTransport[] pair() {
+        return pair(DEFAULT_CAPACITY);
+    }
+
+    public static LoopbackTransport[] pair(int capacity) {
+        LoopbackPipe toServer = new LoopbackPipe(capacity);
+        LoopbackPipe toClient = new LoopbackPipe(capacity);
+        LoopbackTransport client = new LoopbackTransport(toClient, toServer, 0);
+        LoopbackTransport server = new LoopbackTransport(toServer, toClient, NEXT_PORT.getAndIncrement());
+        client.peer = server;
+        server.peer = client;
+        return new LoopbackTransport[] {client, server};
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public void setReadTimeout(int millis) {
+        this.readTimeoutMillis = millis;
+    }
+
+    @Override
+    public int getRemotePort() {
+        return remotePort;
+    }
+
+    // Open until either end closes, as a socket would notice once it next reads or writes
+    @Override
+    public boolean isOpen() {
+        return open && peer.open;
+    }
+
+    // No selector needed: the inbound pipe reports new bytes and the close itself
+    @Override
+    public void startAsyncReads(Selector selector, Runnable readable) {
+        inbound.setReadable(readable);
+        readable.run(); // Bytes may have arrived before now
+    }
+
+    @Override
+    public int readNow(byte[] buffer, int offset, int length) {
+        return open ? inbound.readNow(buffer, offset, length) : -1;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        outbound.close();
+        inbound.close();
+    }
+
+    private final class In extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException {
+            if (!open) {
+                throw new IOException("Loopback connection closed");
+            }
+            return inbound.read(data, offset, length, readTimeoutMillis);
+        }
+
+        @Override
+        public int available() {
+            return inbound.available();
+        }
+
+        @Override
+        public void close() {
+            LoopbackTransport.this.close();
+        }
+    }
+
+    private final class Out extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            outbound.write(data, offset, length);
+        }
+
+        @Override
+        public void close() {
+            LoopbackTransport.this.close();
+        }
+    }
+}
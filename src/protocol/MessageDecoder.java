@@ -0,0 +1,157 @@
+package protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Incremental decoder for both wire formats. Bytes are fed as they arrive and every
+// complete message is passed to the sink; the format may be switched from inside the
+// sink, and any bytes left in the same read are then decoded in the new format.
+public class MessageDecoder {
+    private WireFormat format = WireFormat.LINE;
+    private byte[] buffer = new byte[1024];
+    private int start = 0;
+    private int end = 0;
+
+    // Inflates compressed frames once compression is negotiated; until then they are refused
+    private FrameCompressor compressor;
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    public void switchTo(WireFormat format) {
+        this.format = format;
+    }
+
+    // Accepts compressed frames from now on, inflating them with the given compressor; null refuses them again
+    public void setCompressor(FrameCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public void feed(byte[] data, int offset, int length, Consumer<Frame> sink) throws ProtocolException {
+        append(data, offset, length);
+        decode(sink);
+    }
+
+    public void feed(ByteBuffer data, Consumer<Frame> sink) throws ProtocolException {
+        int length = data.remaining();
+        ensureCapacity(length);
+        data.get(buffer, end, length);
+        end += length;
+        decode(sink);
+    }
+
+    // Called at end of stream: a trailing line without a newline is still delivered
+    public void finish(Consumer<Frame> sink) {
+        if (format == WireFormat.LINE && end > start) {
+            sink.accept(Frame.text(lineText(end)));
+        }
+        start = end = 0;
+    }
+
+    private void decode(Consumer<Frame> sink) throws ProtocolException {
+        while (end > start) {
+            Frame frame = format == WireFormat.LINE ? nextLine() : nextFrame();
+            if (frame == null) {
+                break;
+            }
+            sink.accept(frame);
+        }
+        if (start == end) {
+            start = end = 0;
+        }
+    }
+
+    private Frame nextLine() throws ProtocolException {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == '\n') {
+                String line = lineText(i);
+                start = i + 1;
+                return Frame.text(line);
+            }
+        }
+        if (end - start > Frame.MAX_FRAME_LENGTH) {
+            throw new ProtocolException("Line exceeds " + Frame.MAX_FRAME_LENGTH + " bytes");
+        }
+        return null;
+    }
+
+    // Decodes [start, newlineIndex) as UTF-8, dropping a trailing carriage return
+    private String lineText(int newlineIndex) {
+        int lineEnd = newlineIndex;
+        if (lineEnd > start && buffer[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+        return new String(buffer, start, lineEnd - start, StandardCharsets.UTF_8);
+    }
+
+    private Frame nextFrame() throws ProtocolException {
+        if (end - start < 4) {
+            return null;
+        }
+        ByteBuffer view = ByteBuffer.wrap(buffer, start, end - start);
+        int length = view.getInt();
+        if (length < Frame.HEADER_SIZE || length > Frame.MAX_FRAME_LENGTH) {
+            throw new ProtocolException("Invalid frame length " + length);
+        }
+        if (view.remaining() < length) {
+            ensureCapacity(4 + length - (end - start));
+            return null;
+        }
+
+        int version = view.get();
+        if (version != Frame.VERSION) {
+            throw new ProtocolException("Unsupported frame version " + version);
+        }
+        int typeByte = view.get() & 0xFF;
+        boolean compressed = (typeByte & Compression.COMPRESSED) != 0;
+        int typeCode = typeByte & ~Compression.COMPRESSED;
+        FrameType type = FrameType.fromCode(typeCode);
+        if (type == null) {
+            throw new ProtocolException("Unknown frame type " + typeCode);
+        }
+        if (compressed && compressor == null) {
+            throw new ProtocolException("Compressed frame without negotiated compression");
+        }
+        int sender = view.getInt();
+        int target = view.getInt();
+        long sequence = view.getLong();
+        int payloadLength = length - Frame.HEADER_SIZE;
+        String payload;
+        if (compressed) {
+            byte[] inflated = compressor.inflate(buffer, view.position(), payloadLength, Frame.MAX_FRAME_LENGTH);
+            payload = new String(inflated, StandardCharsets.UTF_8);
+        } else {
+            payload = new String(buffer, view.position(), payloadLength, StandardCharsets.UTF_8);
+        }
+
+        start += 4 + length;
+        return new Frame(type, sender, target, sequence, payload);
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, buffer, end, length);
+        end += length;
+    }
+
+    // Makes room for extra bytes after end, compacting before growing
+    private void ensureCapacity(int extra) {
+        if (end + extra <= buffer.length) {
+            return;
+        }
+        int used = end - start;
+        if (used + extra <= buffer.length) {
+            System.arraycopy(buffer, start, buffer, 0, used);
+        } else {
+            byte[] grown = Arrays.copyOf(Arrays.copyOfRange(buffer, start, end),
+                    Math.max(buffer.length * 2, used + extra));
+            buffer = grown;
+        }
+        start = 0;
+        end = used;
+    }
+}
@@ -0,0 +1,44 @@
+package protocol;
+
+// Commands for resumable sessions. Right after connecting (and after any binary upgrade) the client
+// sends "!session" to start a session, or "!resume <token> <last sequence>" to take its old one back.
+// The server answers "[SESSION <token>]" for a new session, or "[SESSION RESUMED <token>]" followed by
+// the messages the client missed. The last sequence is that of the newest binary TEXT frame received,
+// or -1 for line clients, which then get everything sent since their connection dropped.
+public final class SessionHandshake {
+    public static final String START = "!session";
+    public static final String RESUME = "!resume";
+    public static final String END = "!session-end";
+
+    private static final String STARTED = "[SESSION ";
+    private static final String RESUMED = "[SESSION RESUMED ";
+
+    private SessionHandshake() {
+    }
+
+    public static String resume(String token, long lastSequence) {
+        return RESUME + " " + token + " " + lastSequence;
+    }
+
+    public static String started(String token) {
+        return STARTED + token + "]";
+    }
+
+    public static String resumed(String token) {
+        return RESUMED + token + "]";
+    }
+
+    // Whether the line is either session reply
+    public static boolean isReply(String line) {
+        return line.startsWith(STARTED) && line.endsWith("]");
+    }
+
+    public static boolean isResumed(String line) {
+        return line.startsWith(RESUMED) && line.endsWith("]");
+    }
+
+    // Token carried by a session reply
+    public static String token(String line) {
+        return line.substring(line.lastIndexOf(' ') + 1, line.length() - 1);
+    }
+}
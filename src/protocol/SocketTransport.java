@@ -0,0 +1,161 @@
+package protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+// Transport over a connected TCP socket. Sockets opened with connect() belong to a SocketChannel, so
+// they can later be handed to a selector for event-driven reads; accepted plain sockets cannot.
+public class SocketTransport implements Transport {
+    // Longest wait for the send buffer to drain before checking that the socket is still open
+    private static final long WRITABLE_CHECK_MILLIS = 100;
+
+    private final Socket socket;
+    private final SocketChannel channel;   // Null for sockets without a channel
+    private OutputStream out;
+    private ChannelOutputStream channelOut;
+
+    public SocketTransport(Socket socket) {
+        this.socket = socket;
+        this.channel = socket.getChannel();
+    }
+
+    // Opens a blocking connection that can switch to event-driven reads later
+    public static SocketTransport connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.connect(new InetSocketAddress(host, port));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return new SocketTransport(channel.socket());
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException {
+        if (out == null) {
+            if (channel != null) {
+                channelOut = new ChannelOutputStream();
+                out = channelOut;
+            } else {
+                out = socket.getOutputStream();
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void setReadTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    @Override
+    public int getRemotePort() {
+        return socket.getPort();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    @Override
+    public void startAsyncReads(Selector selector, Runnable readable) throws IOException {
+        if (channel == null) {
+            throw new IOException("Socket has no channel to select on");
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, readable);
+    }
+
+    @Override
+    public int readNow(byte[] buffer, int offset, int length) throws IOException {
+        return channel.read(ByteBuffer.wrap(buffer, offset, length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        ChannelOutputStream stream;
+        synchronized (this) {
+            stream = channelOut;
+        }
+        if (stream != null) {
+            stream.closeSelector();
+        }
+    }
+
+    // Writes through the channel, which keeps working once the channel is non-blocking. When the send
+    // buffer is full, the writer sleeps on a selector of its own until the socket is writable again;
+    // the channel stays registered with the read loop's selector as well.
+    private final class ChannelOutputStream extends OutputStream {
+        private volatile Selector writeSelector;   // Opened on the first full send buffer
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] data, int offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0) {
+                    awaitWritable();
+                }
+            }
+        }
+
+        // Only a non-blocking channel writes nothing, so it can be registered here
+        private void awaitWritable() throws IOException {
+            Selector selector = writeSelector;
+            try {
+                if (selector == null) {
+                    selector = Selector.open();
+                    writeSelector = selector;
+                    channel.register(selector, SelectionKey.OP_WRITE);
+                }
+                selector.select(WRITABLE_CHECK_MILLIS);
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                throw new ClosedChannelException();
+            } finally {
+                // Also covers a close() that ran before the selector was published
+                if (!channel.isOpen()) {
+                    closeSelector();
+                }
+            }
+            if (!channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+        }
+
+        // Called by close() without the stream's lock, so it wakes a writer waiting for the buffer to drain
+        void closeSelector() {
+            Selector selector = writeSelector;
+            if (selector != null) {
+                try {
+                    selector.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+}
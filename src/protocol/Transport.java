@@ -0,0 +1,35 @@
+package protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Selector;
+
+// Byte stream between one client and the server. SocketTransport carries it over TCP;
+// LoopbackTransport keeps it in memory for clients running in the server's own JVM.
+public interface Transport extends Closeable {
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    // How long a read may block before it throws SocketTimeoutException; 0 waits forever
+    void setReadTimeout(int millis) throws IOException;
+
+    // Port of the other end as shown in the roster
+    int getRemotePort();
+
+    boolean isOpen();
+
+    // Switches to event-driven reads for a shared I/O loop: from now on `readable` runs, on any thread,
+    // whenever data or end of stream may be waiting, and reads go through readNow. Transports that need
+    // a selector register with the given one; call this on the thread that selects on it.
+    void startAsyncReads(Selector selector, Runnable readable) throws IOException;
+
+    // Reads whatever is already available without blocking: the byte count, 0 if nothing, -1 at end of stream
+    int readNow(byte[] buffer, int offset, int length) throws IOException;
+
+    // Closes both directions; the other end reads what was already sent, then end of stream
+    @Override
+    void close() throws IOException;
+}
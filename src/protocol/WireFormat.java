@@ -0,0 +1,10 @@
+package protocol;
+
+// How messages are framed on a connection
+public enum WireFormat {
+    // Newline-terminated UTF-8 text (original protocol, used by every connection until negotiated otherwise)
+    LINE,
+
+    // Length-prefixed binary frames (see Frame)
+    BINARY
+}
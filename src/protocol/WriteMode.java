@@ -0,0 +1,10 @@
+package protocol;
+
+// How a connection trades latency for fewer, larger writes
+public enum WriteMode {
+    // Write as soon as the writer gets a turn, coalescing only what is already queued
+    LATENCY,
+
+    // Also wait up to the configured delay for more messages, until the byte budget is filled
+    THROUGHPUT
+}
@@ -0,0 +1,134 @@
+package server;
+
+import protocol.Frame;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// A named room. Subscribers are kept in join order in an array that is replaced on every
+// join or leave, so publishing walks a stable snapshot without locking. The oldest
+// subscriber coordinates the channel and the next oldest takes over when it leaves.
+public final class Channel {
+    private static final ClientHandler[] EMPTY = new ClientHandler[0];
+
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile ClientHandler[] subscribers = EMPTY;
+    private volatile int coordinatorId = Frame.NO_CLIENT;
+    private boolean closed = false; // Set once the last subscriber left; guarded by lock
+
+    Channel(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCoordinatorId() {
+        return coordinatorId;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.length;
+    }
+
+    // Subscribers in join order
+    public ClientHandler[] getSubscribers() {
+        return subscribers.clone();
+    }
+
+    public boolean contains(int clientId) {
+        return indexOf(subscribers, clientId) >= 0;
+    }
+
+    // Adds the client; returns false if the channel was already emptied and dropped from the index
+    boolean add(ClientHandler client) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            ClientHandler[] current = subscribers;
+            if (indexOf(current, client.getClientId()) >= 0) {
+                return true;
+            }
+            ClientHandler[] updated = new ClientHandler[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = client;
+            subscribers = updated;
+
+            if (current.length == 0) {
+                coordinatorId = client.getClientId();
+                client.sendMessage("You are now the coordinator of #" + name + ".");
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Swaps in the client's new connection, keeping its place in join order
+    void replace(ClientHandler previous, ClientHandler replacement) {
+        lock.lock();
+        try {
+            ClientHandler[] updated = subscribers.clone();
+            int index = indexOf(updated, previous.getClientId());
+            if (index >= 0) {
+                updated[index] = replacement;
+                subscribers = updated;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Removes the client and hands the coordinator role to the oldest remaining subscriber;
+    // returns true if the channel is now empty
+    boolean remove(int clientId) {
+        lock.lock();
+        try {
+            ClientHandler[] current = subscribers;
+            int index = indexOf(current, clientId);
+            if (index < 0) {
+                return closed;
+            }
+            ClientHandler[] updated = new ClientHandler[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, updated.length - index);
+            subscribers = updated;
+
+            if (updated.length == 0) {
+                closed = true;
+                coordinatorId = Frame.NO_CLIENT;
+            } else if (clientId == coordinatorId) {
+                ClientHandler successor = updated[0];
+                coordinatorId = successor.getClientId();
+                successor.sendMessage("You are now the coordinator of #" + name + ".");
+
+                // Same notice the server sends on a global coordinator change, scoped to the channel
+                publish(new OutboundMessage("[#" + name + "] [COORDINATOR_CHANGED] Client " + coordinatorId), Frame.NO_CLIENT);
+            }
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queues the message for every subscriber except the sender; costs O(subscribers)
+    void publish(OutboundMessage message, int senderId) {
+        for (ClientHandler subscriber : subscribers) {
+            if (subscriber.getClientId() != senderId) {
+                subscriber.send(message);
+            }
+        }
+    }
+
+    private static int indexOf(ClientHandler[] handlers, int clientId) {
+        for (int i = 0; i < handlers.length; i++) {
+            if (handlers[i].getClientId() == clientId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
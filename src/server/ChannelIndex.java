@@ -0,0 +1,93 @@
+package server;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Channel name to subscribers index. A channel exists while it has at least one subscriber;
+// each handler also remembers its own channels so a disconnect leaves them without a scan.
+public class ChannelIndex {
+    private static final int MAX_NAME_LENGTH = 32;
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    // Subscribes the client, creating the channel if needed
+    public Channel join(ClientHandler client, String name) {
+        String key = normalize(name);
+        while (true) {
+            Channel channel = channels.computeIfAbsent(key, Channel::new);
+            if (channel.add(client)) {
+                client.subscriptions().add(key);
+                return channel;
+            }
+            // The last subscriber left while we looked it up; drop the dead channel and retry
+            channels.remove(key, channel);
+        }
+    }
+
+    // Unsubscribes the client; returns false if it was not in the channel
+    public boolean leave(ClientHandler client, String name) {
+        String key = normalize(name);
+        Channel channel = channels.get(key);
+        if (channel == null || !client.subscriptions().remove(key)) {
+            return false;
+        }
+        if (channel.remove(client.getClientId())) {
+            channels.remove(key, channel);
+        }
+        return true;
+    }
+
+    // Leaves every channel the client joined, e.g. on disconnect
+    public void leaveAll(ClientHandler client) {
+        for (String name : client.subscriptions()) {
+            leave(client, name);
+        }
+    }
+
+    // Moves the client's subscriptions to its new connection after a session resume
+    void transfer(ClientHandler previous, ClientHandler replacement) {
+        for (String name : previous.subscriptions()) {
+            Channel channel = channels.get(name);
+            if (channel != null) {
+                channel.replace(previous, replacement);
+            }
+        }
+    }
+
+    // Returns the channel, or null if nobody is subscribed to it
+    public Channel get(String name) {
+        return channels.get(normalize(name));
+    }
+
+    public Collection<Channel> getChannels() {
+        return channels.values();
+    }
+
+    public int size() {
+        return channels.size();
+    }
+
+    public void clear() {
+        channels.clear();
+    }
+
+    // Channel names are 1-32 letters, digits, '-' or '_', compared case-insensitively
+    public static boolean isValidName(CharSequence text, int from, int to) {
+        if (to <= from || to - from > MAX_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (!(c < 128 && (Character.isLetterOrDigit(c) || c == '-' || c == '_'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,176 +1,580 @@
 package server;
 
+import protocol.Compression;
+import protocol.DeliveryStatus;
+import protocol.Frame;
+import protocol.FrameType;
+import protocol.Handshake;
+import protocol.MessageDecoder;
+import protocol.SessionHandshake;
+import protocol.SocketTransport;
+import protocol.Transport;
+import protocol.WireFormat;
+
 import javax.swing.*;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
 import java.net.Socket;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ClientHandler implements Runnable {
+    // Messages the thread-per-client writer remembers per write, so their latency is taken after the write
+    private static final int MAX_TIMED_PER_WRITE = 64;
 
-public class ClientHandler extends Thread {
-    private Socket socket;
-    private Server server;
-    private PrintWriter out;
-    private Scanner in;
+    private Transport transport;
+    protected Server server;
+    protected final ServerMetrics metrics;
+    private WritableByteChannel out;
+    private InputStream in;
     private int clientId;
-    private boolean isCoordinator = false;
-    private Thread coordinatorThread;
+    private volatile long joinPosition;  // Place in the server's join order, 0 until added
     private volatile boolean running = true;
 
+    // Timers on the server's shared wheel; cancelled when the role or the connection ends
+    private volatile TimerWheel.Timeout coordinatorTask;
+    private volatile TimerWheel.Timeout heartbeatTask;
+    private volatile TimerWheel.Timeout idleTask;
+    private volatile TimerWheel.Timeout admissionTask;
+
+    // With sessions enabled a connection is registered only once it starts or resumes a session
+    private final AtomicBoolean admitted = new AtomicBoolean(true);
+    private volatile Session session;
+
+    // When the bytes being decoded were read, so the messages they route are timed from their arrival;
+    // written and read only by the thread that reads this connection
+    private long arrivalNanos;
+
+    // When the last complete message arrived, and whether the client can answer binary pings
+    private volatile long lastActivityNanos = System.nanoTime();
+    private volatile boolean binary = false;
+
+    // Set once the client negotiated compression; large binary frames are then sent deflated
+    private volatile boolean compressing = false;
+
+    // Messages waiting to be written; senders only enqueue, the writer drains
+    protected final OutboundQueue<OutboundMessage> outbound;
+
+    // Splits incoming bytes into messages in the connection's current wire format
+    protected final MessageDecoder decoder = new MessageDecoder();
+
+    // Names of the channels this client joined
+    private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+
+    // Reused for every line this connection receives
+    private final ParsedCommand parsed = new ParsedCommand();
+
     // Constructor to initialize the client handler with socket, ID, and server reference
     public ClientHandler(Socket socket, int clientId, Server server) {
-        this.socket = socket;
+        this(new SocketTransport(socket), clientId, server);
+    }
+
+    // Serves a connection over any transport, e.g. an in-memory one from Server.connectLoopback()
+    public ClientHandler(Transport transport, int clientId, Server server) {
+        this.transport = transport;
         this.clientId = clientId;
         this.server = server;
+        this.metrics = server.getMetrics();
+        this.outbound = server.createOutboundQueue();
 
         try {
-            out = new PrintWriter(socket.getOutputStream(), true); // Used to send messages
-            in = new Scanner(socket.getInputStream());             // Used to receive messages
+            out = Channels.newChannel(transport.getOutputStream());  // Used to send messages
+            in = transport.getInputStream();                         // Used to receive messages
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // Constructor for engines that own the connection I/O themselves (e.g. the NIO engine)
+    protected ClientHandler(int clientId, Server server) {
+        this.clientId = clientId;
+        this.server = server;
+        this.metrics = server.getMetrics();
+        this.outbound = server.createOutboundQueue();
+    }
+
     public int getClientId() {
         return clientId;
     }
 
     public int getClientPort() {
-        return socket.getPort(); // Get the port of the connected client
+        return transport.getRemotePort(); // Get the port of the connected client
     }
 
-    // Assign or remove coordinator status to this client
-    public void setCoordinator(boolean isCoordinator) {
-        if (this.isCoordinator && !isCoordinator) {
-            stopCoordinatorThread(); // Stop the coordinator task if being demoted
-        }
+    // Whether the underlying connection is still usable
+    public boolean isOpen() {
+        return transport != null && transport.isOpen();
+    }
 
-        this.isCoordinator = isCoordinator;
+    // Messages waiting to be written to this client
+    int getQueuedMessageCount() {
+        return outbound.size();
+    }
+
+    Set<String> subscriptions() {
+        return subscriptions;
+    }
+
+    // Resumable session of this client, or null
+    public Session getSession() {
+        return session;
+    }
+
+    void setSession(Session session) {
+        this.session = session;
+    }
+
+    long getJoinPosition() {
+        return joinPosition;
+    }
+
+    void setJoinPosition(long joinPosition) {
+        this.joinPosition = joinPosition;
+    }
+
+    // The server's coordinator state is the only source of truth, so a handler can never disagree with it
+    public boolean isCoordinator() {
+        return server.getCoordinatorId() == clientId;
+    }
 
-        if (isCoordinator) {
+    // Called after the server moved the coordinator role to or away from this client
+    public void setCoordinator(boolean isCoordinator) {
+        if (!isCoordinator) {
+            stopCoordinatorThread(); // Stop the coordinator task if being demoted
+        } else if (isCoordinator()) {
             sendMessage("You are now the coordinator.");
             server.broadcastMessage("Server: Client " + clientId + " is now the coordinator.", -1);
             startCoordinatorThread();
         }
     }
 
-    // Coordinator thread sends active clients list every 20 seconds
+    // Coordinator gets a presence snapshot now, deltas as membership changes,
+    // and optionally a full resync every few seconds
     private void startCoordinatorThread() {
-        coordinatorThread = new Thread(() -> {
-            try {
-                while (running && isCoordinator && !socket.isClosed()) {
-                    Thread.sleep(20000); // Wait for 20 seconds
-
-                    StringBuilder list = new StringBuilder("Active Clients:\n\n");
-                    server.getClients().keySet().stream().sorted().forEach(id -> {
-                        ClientHandler ch = server.getClients().get(id);
-                        if (ch != null) {
-                            String ip = server.getFakeClientIP(id);
-                            int port = ch.getClientPort();
-                            boolean isCoord = id == server.getCoordinatorId();
-
-                            list.append("Client ").append(id);
-                            if (isCoord) list.append(" (Coordinator)");
-                            list.append(" [ID: ").append(id)
-                                .append("] [IP Address: ").append(ip)
-                                .append("] [Port: ").append(port).append("]\n");
-                        }
-                    });
+        send(server.getRoster().snapshot().message(RosterFormat.PRESENCE_SNAPSHOT));
 
-                    sendMessage(list.toString());
-                }
-            } catch (InterruptedException ignored) {}
-        });
-        coordinatorThread.start();
+        int resyncSeconds = server.getRosterResyncSeconds();
+        TimerWheel.Timeout existing = coordinatorTask;
+        if (resyncSeconds <= 0 || (existing != null && !existing.isCancelled())) {
+            return;
+        }
+        coordinatorTask = server.getTimerWheel().scheduleAtFixedRate(() -> {
+            if (running && isCoordinator() && isOpen()) {
+                send(server.getRoster().snapshot().message(RosterFormat.PRESENCE_SNAPSHOT));
+            }
+        }, resyncSeconds, resyncSeconds, TimeUnit.SECONDS);
     }
 
-    // Stop the coordinator thread if running
+    // Stop the coordinator task if running
     private void stopCoordinatorThread() {
-        isCoordinator = false;
-        if (coordinatorThread != null && coordinatorThread.isAlive()) {
-            coordinatorThread.interrupt();
-            coordinatorThread = null;
+        coordinatorTask = cancel(coordinatorTask);
+    }
+
+    // Starts the heartbeat and idle timers for this connection
+    private void startConnectionTimers() {
+        long heartbeatMillis = server.getHeartbeatIntervalMillis();
+        if (heartbeatMillis > 0) {
+            heartbeatTask = server.getTimerWheel().scheduleAtFixedRate(
+                    this::sendHeartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        }
+        long idleMillis = server.getIdleTimeoutMillis();
+        if (idleMillis > 0) {
+            lastActivityNanos = System.nanoTime();
+            idleTask = server.getTimerWheel().schedule(this::checkIdle, idleMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopConnectionTimers() {
+        heartbeatTask = cancel(heartbeatTask);
+        idleTask = cancel(idleTask);
+    }
+
+    private static TimerWheel.Timeout cancel(TimerWheel.Timeout timeout) {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        return null;
+    }
+
+    // Pings binary clients so half-open connections fail on write and live ones answer with a pong
+    private void sendHeartbeat() {
+        if (running && binary) {
+            send(OutboundMessage.ping());
         }
     }
 
-    // Sends a message to the client
+    // Closes the connection if nothing arrived within the idle timeout, otherwise checks again when it could next expire
+    private void checkIdle() {
+        if (!running) {
+            return;
+        }
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(server.getIdleTimeoutMillis());
+        long silentNanos = System.nanoTime() - lastActivityNanos;
+        if (silentNanos >= idleNanos) {
+            System.out.println("Client " + clientId + " idle for " + TimeUnit.NANOSECONDS.toMillis(silentNanos) + " ms, disconnecting.");
+            closeConnection();
+        } else {
+            idleTask = server.getTimerWheel().schedule(this::checkIdle, idleNanos - silentNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Queues a message for the client; never blocks on the client's socket
     public void sendMessage(String message) {
-        if (out != null && !socket.isClosed()) {
-            out.println(message);
+        send(new OutboundMessage(message));
+    }
+
+    // Queues an already-built message, sharing its encoded frame with other recipients
+    public void send(OutboundMessage message) {
+        // Recorded even while the connection is down, so a resuming client can catch up
+        Session current = session;
+        if (current != null) {
+            current.record(message);
+        }
+        if (!isOpen()) {
+            return;
+        }
+        if (outbound.offer(message, timedFrom(message))) {
+            onMessageQueued();
+        } else {
+            System.out.println("Client " + clientId + " is too slow, disconnecting.");
+            closeConnection();
         }
     }
 
-    // Main execution for the thread - handles incoming messages
-    @Override
-    public void run() {
-        try {
-            sendMessage("Welcome! Your ID is " + clientId);
+    // Queues several messages and wakes the writer once, so they go out together
+    public void sendAll(List<OutboundMessage> messages) {
+        Session current = session;
+        if (current != null) {
+            messages.forEach(current::record);
+        }
+        enqueueAll(messages, false);
+    }
 
-            // Send coordinator-related message depending on the role
-            if (isCoordinator) {
-                sendMessage("You are the coordinator.");
-                startCoordinatorThread();
-            } else {
-                int coordId = server.getCoordinatorId();
-                ClientHandler ch = server.getClients().get(coordId);
-                if (ch != null) {
-                    sendMessage("Current Coordinator: Client " + coordId +
-                            " [IP Address: " + server.getFakeClientIP(coordId) + "]");
-                }
+    // Replayed messages are timed from now: their ingress time says how long ago they were first sent
+    private void enqueueAll(List<OutboundMessage> messages, boolean replayed) {
+        if (!isOpen()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (OutboundMessage message : messages) {
+            if (!outbound.offer(message, replayed ? now : timedFrom(message))) {
+                System.out.println("Client " + clientId + " is too slow, disconnecting.");
+                closeConnection();
+                return;
             }
+        }
+        onMessageQueued();
+    }
 
-            // Continuously listen for input from client
-            while (in.hasNextLine()) {
-                String message = in.nextLine().trim();
-
-                // If the coordinator requests to see all members
-                if (message.equalsIgnoreCase("!members") && isCoordinator) {
-                    StringBuilder list = new StringBuilder("Active Clients:\n");
-                    server.getClients().keySet().stream().sorted().forEach(id -> {
-                        ClientHandler ch = server.getClients().get(id);
-                        list.append("- Client ").append(ch.getClientId());
-                        if (id == server.getCoordinatorId()) list.append(" (Coordinator)");
-                        list.append(" [ID: ").append(ch.getClientId())
-                            .append("] [IP Address: ").append(server.getFakeClientIP(id))
-                            .append("] [Port: ").append(ch.getClientPort()).append("]\n");
-                    });
-                    sendMessage(list.toString());
-                }
+    // Latency runs from when the request behind a message arrived, so a broadcast's fan-out is included;
+    // server-made messages such as cached rosters are timed from when they are queued
+    private static long timedFrom(OutboundMessage message) {
+        long ingress = message.getIngressNanos();
+        return ingress != 0 ? ingress : System.nanoTime();
+    }
+
+    // Called after a message was queued; the thread-per-client writer wakes up on its own
+    protected void onMessageQueued() {
+    }
+
+    // Closes the connection so the read loop ends and normal disconnect handling runs
+    protected void closeConnection() {
+        try {
+            if (transport != null) {
+                transport.close();
+            }
+        } catch (IOException ignored) {}
+    }
 
-                // Handle group member info request
-                else if (message.equalsIgnoreCase("!requestinfo")) {
-                    if (server.getCoordinatorId() == clientId) {
-                        sendMessage("You are the coordinator. You already have the info.");
+    // Writer task: drains the outbound queue to the socket until the handler shuts down,
+    // combining everything queued (up to the byte budget) into one write
+    private void writeLoop() {
+        WireFormat format = WireFormat.LINE;
+        ByteBuffer batch = ByteBuffer.allocate(server.getWriteCoalesceBytes());
+        OutboundMessage[] timed = new OutboundMessage[MAX_TIMED_PER_WRITE];
+        long[] timedFromNanos = new long[MAX_TIMED_PER_WRITE];
+        long delayNanos = server.getWriteCoalesceDelayNanos();
+        try {
+            OutboundMessage message;
+            while ((message = outbound.take()) != null) {
+                long deadline = System.nanoTime() + delayNanos;
+                int timedCount = 0;
+                do {
+                    long timedFrom = outbound.lastTimedFromNanos();
+                    ByteBuffer frame = encode(message, format);
+                    if (frame.remaining() > batch.remaining()) {
+                        writeBatch(batch, timed, timedFromNanos, timedCount);
+                        timedCount = 0;
+                    }
+                    if (frame.remaining() > batch.capacity()) {
+                        writeFully(frame); // Larger than the whole budget, write it on its own
+                        metrics.messageWritten(message, timedFrom, System.nanoTime());
                     } else {
-                        ClientHandler coordinator = server.getClients().get(server.getCoordinatorId());
-                        if (coordinator != null) {
-                            coordinator.sendInfoRequestPopup(clientId);
+                        batch.put(frame);
+                        if (timedCount < timed.length) {
+                            timedFromNanos[timedCount] = timedFrom;
+                            timed[timedCount++] = message;
                         } else {
-                            sendMessage("Coordinator not found.");
+                            metrics.messageWritten(message, timedFrom, System.nanoTime()); // Rare: timed a little early
                         }
                     }
-                }
-
-                // Private message handling (starts with @)
-                else if (message.startsWith("@")) {
-                    String[] parts = message.split(" ", 2);
-                    if (parts.length == 2) {
-                        int targetClientId = Integer.parseInt(parts[0].substring(1));
-                        server.sendPrivateMessage(targetClientId, "Private from " + clientId + ": " + parts[1]);
+                    if (message.getSwitchTo() != null) {
+                        format = message.getSwitchTo();
                     }
-                }
+                    message = nextToCoalesce(deadline);
+                } while (message != null);
+                writeBatch(batch, timed, timedFromNanos, timedCount);
+            }
+        } catch (IOException e) {
+            closeConnection();
+        } catch (InterruptedException ignored) {}
+    }
 
-                // General message to all clients
-                else {
-                    server.broadcastMessage("Client " + clientId + ": " + message, clientId);
-                }
+    // Shared encoded frame of the message as this connection sends it
+    protected ByteBuffer encode(OutboundMessage message, WireFormat format) {
+        if (compressing && format == WireFormat.BINARY) {
+            return message.compressedFrame(server.getFrameCompressor());
+        }
+        return message.frame(format);
+    }
+
+    // Next queued message to add to the current write; waits until the deadline in throughput mode
+    private OutboundMessage nextToCoalesce(long deadline) throws InterruptedException {
+        OutboundMessage message = outbound.poll();
+        if (message == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                message = outbound.poll(remaining, TimeUnit.NANOSECONDS);
             }
+        }
+        return message;
+    }
+
+    // Writes the batch, then records the latency of the messages in it
+    private void writeBatch(ByteBuffer batch, OutboundMessage[] timed, long[] timedFromNanos, int timedCount) throws IOException {
+        batch.flip();
+        writeFully(batch);
+        batch.clear();
+        long now = System.nanoTime();
+        for (int i = 0; i < timedCount; i++) {
+            metrics.messageWritten(timed[i], timedFromNanos[i], now);
+            timed[i] = null;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        metrics.bytesWritten(buffer.remaining());
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    // Main execution for the handler task - handles incoming messages
+    @Override
+    public void run() {
+        try {
+            server.getHandlerExecutor().execute(this::writeLoop);
+            connectionReady();
+
+            // Continuously listen for input from client
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                markArrival();
+                metrics.bytesRead(read);
+                decoder.feed(chunk, 0, read, this::handleFrame);
+            }
+            decoder.finish(this::handleFrame);
         } catch (Exception e) {
             System.out.println("Client " + clientId + " disconnected.");
         } finally {
-            running = false;
-            stopCoordinatorThread();
-            server.removeClient(clientId);
+            onDisconnect(); // Before the socket closes, so a session is detached by the time the drop is visible
+            closeConnection();
+        }
+    }
+
+    // Holds the connection back from registration until it starts or resumes a session (see Server.start)
+    void deferAdmission() {
+        admitted.set(false);
+    }
+
+    // Greets the client, or if admission is deferred waits briefly for it to start or resume a session;
+    // clients that say something else, or nothing, are registered as new clients
+    protected void connectionReady() {
+        if (admitted.get()) {
+            onConnect();
+        } else {
+            admissionTask = server.getTimerWheel().schedule(() -> admit(false),
+                    Server.ADMISSION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Registers a deferred connection as a new client, optionally with a fresh session
+    void admit(boolean withSession) {
+        if (running && admitted.compareAndSet(false, true)) {
+            admissionTask = cancel(admissionTask);
+            server.admit(this, withSession);
+        }
+    }
+
+    // Tries to take over a detached session; falls back to registering as a new client with a new session
+    boolean resume(String token, long lastSequence) {
+        if (!running || !admitted.compareAndSet(false, true)) {
+            return false;
+        }
+        admissionTask = cancel(admissionTask);
+        if (server.resumeSession(this, token, lastSequence)) {
+            return true;
         }
+        server.admit(this, true);
+        return false;
+    }
+
+    // Takes over the identity of the session's previous connection; called by the server under its membership lock
+    void takeOver(Session resumed, ClientHandler previous) {
+        clientId = resumed.getClientId();
+        session = resumed;
+        subscriptions.addAll(previous.subscriptions);
+    }
+
+    // Confirms the resumption, replays what was missed in one batch and restarts this connection's timers
+    void resumed(List<OutboundMessage> missed) {
+        List<OutboundMessage> batch = new ArrayList<>(missed.size() + 1);
+        batch.add(new OutboundMessage(SessionHandshake.resumed(session.getToken())));
+        batch.addAll(missed);
+
+        // Private messages queued while the connection was down follow the replay in the same batch;
+        // drained under the membership lock, so none can be stored after this
+        for (String text : server.getOfflineInboxes().drain(session.getToken())) {
+            batch.add(new OutboundMessage(text, Frame.NO_CLIENT, clientId));
+        }
+        enqueueAll(batch, true);
+        if (isCoordinator()) {
+            startCoordinatorThread();
+        }
+        startConnectionTimers();
+    }
+
+    boolean isAdmitted() {
+        return admitted.get();
+    }
+
+    // Sends the welcome and coordinator info once the connection is established
+    protected void onConnect() {
+        sendMessage("Welcome! Your ID is " + clientId);
+
+        // Send coordinator-related message depending on the role
+        if (isCoordinator()) {
+            sendMessage("You are the coordinator.");
+            startCoordinatorThread();
+        } else {
+            int coordId = server.getCoordinatorId();
+            ClientHandler ch = server.getClients().get(coordId);
+            if (ch != null) {
+                sendMessage("Current Coordinator: Client " + coordId +
+                        " [IP Address: " + server.getFakeClientIP(coordId) + "]");
+            }
+        }
+        startConnectionTimers();
+    }
+
+    // Called by the reading thread right after bytes came off the socket
+    protected void markArrival() {
+        arrivalNanos = System.nanoTime();
+    }
+
+    // When the message being handled arrived, or 0 if it was not read from this connection
+    long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    // Routes one decoded message; line and binary clients share the same text commands
+    protected void handleFrame(Frame frame) {
+        lastActivityNanos = System.nanoTime();
+        if (frame.getType() == FrameType.PONG) {
+            return;
+        }
+        if (frame.getType() == FrameType.PING) {
+            send(OutboundMessage.pong());
+            return;
+        }
+
+        DeliveryStatus status = handleMessage(frame.getPayload());
+
+        // Pipelined senders learn the outcome from an ACK carrying their sequence number
+        if (frame.getType() == FrameType.REQUEST) {
+            send(OutboundMessage.ack(frame.getSequence(), status, arrivalNanos));
+        }
+    }
+
+    // Parses a single line received from the client, routes it and reports whether it could be routed
+    protected DeliveryStatus handleMessage(String line) {
+        CommandParser.parse(line, parsed);
+        if (!admitted.get() && !parsed.nameEquals(Handshake.HELLO) && !parsed.nameEquals(Compression.REQUEST)
+                && !parsed.nameEquals(SessionHandshake.RESUME)) {
+            admit(false); // An ordinary first message: a new client that does not use sessions
+        }
+        return server.getCommandRegistry().dispatch(this, parsed);
+    }
+
+    // Answers a handshake; only versions this server understands switch the connection to binary
+    void negotiate(int version) {
+        if (version == Frame.VERSION && decoder.getFormat() == WireFormat.LINE) {
+            // The reply is written as a line, everything after it as binary frames
+            send(OutboundMessage.switchingTo(WireFormat.BINARY, Handshake.ack(Frame.VERSION)));
+            decoder.switchTo(WireFormat.BINARY);
+            binary = true;
+        } else {
+            sendMessage(Handshake.ack(Handshake.LINE_VERSION));
+        }
+    }
+
+    // Answers a compression offer; accepted only on binary connections and if the server allows it
+    void negotiateCompression(String method) {
+        if (binary && Compression.DEFLATE.equalsIgnoreCase(method) && server.isCompressionEnabled()) {
+            // The client inflates from the moment it asks, so frames may be compressed before the reply
+            decoder.setCompressor(server.getFrameCompressor());
+            compressing = true;
+            sendMessage(Compression.ack(Compression.DEFLATE));
+        } else {
+            sendMessage(Compression.ack(Compression.NONE));
+        }
+    }
+
+    public boolean isCompressing() {
+        return compressing;
+    }
+
+    // Releases coordinator duties and removes this client from the server, unless its session
+    // keeps it registered for a while so it can resume
+    protected void onDisconnect() {
+        metrics.connectionClosed();
+        running = false;
+        outbound.close();
+        stopConnectionTimers();
+        admissionTask = cancel(admissionTask);
+        if (!admitted.getAndSet(true)) {
+            return; // Never registered
+        }
+        if (session != null && server.detachSession(this)) {
+            coordinatorTask = cancel(coordinatorTask); // The role stays with the session
+            return;
+        }
+        leaveServer();
+    }
+
+    // Gives up the coordinator role and channels and removes the client
+    void leaveServer() {
+        stopCoordinatorThread();
+        server.getChannels().leaveAll(this);
+        server.removeClient(clientId);
     }
 
     // Show popup for the coordinator to approve or deny info sharing
@@ -184,20 +588,7 @@ public class ClientHandler extends Thread {
 
             if (result == JOptionPane.YES_OPTION) {
                 if (requester != null) {
-                    StringBuilder info = new StringBuilder("Group Member Details:\n\n");
-                    for (ClientHandler ch : server.getClients().values()) {
-                        int id = ch.getClientId();
-                        String fakeIP = server.getFakeClientIP(id);
-                        int port = ch.getClientPort();
-                        boolean isCoord = id == server.getCoordinatorId();
-
-                        info.append("Client ").append(id);
-                        if (isCoord) info.append(" (Coordinator)");
-                        info.append(" [ID: ").append(id)
-                            .append("] [IP Address: ").append(fakeIP)
-                            .append("] [Port: ").append(port).append("]\n");
-                    }
-                    requester.sendMessage(info.toString());
+                    requester.send(server.getRoster().snapshot().message(RosterFormat.GROUP_DETAILS));
                 }
             } else {
                 if (requester != null) {
@@ -1,6 +1,7 @@
 package server;
 
 import client.ClientGUI;
+import protocol.DeliveryStatus;
 
 import javax.swing.*;
 import java.awt.*;
@@ -117,39 +118,34 @@ public class ClientHandlerGUI {
             // Custom server instance with GUI-aware logging
             server = new Server() {
                 @Override
-                public synchronized void broadcastMessage(String message, int senderId) {
-                    super.broadcastMessage(message, senderId);
+                public void broadcastMessage(String message, int senderId, long arrivalNanos) {
+                    super.broadcastMessage(message, senderId, arrivalNanos);
                     log("Broadcast: " + message);
                 }
 
                 @Override
-                public synchronized void sendPrivateMessage(int targetClientId, String message) {
-                    super.sendPrivateMessage(targetClientId, message);
-                    log("Private to " + targetClientId + ": " + message);
+                public DeliveryStatus sendPrivateMessage(int targetClientId, String message, long arrivalNanos) {
+                    DeliveryStatus status = super.sendPrivateMessage(targetClientId, message, arrivalNanos);
+                    log("Private to " + targetClientId + " (" + status + "): " + message);
+                    return status;
                 }
 
                 @Override
-                public synchronized void removeClient(int clientId) {
+                public void removeClient(int clientId) {
                     super.removeClient(clientId);
                     updateClientList();
                     log("Client " + clientId + " disconnected.");
                 }
 
                 @Override
-                public synchronized void updateClientList() {
+                public void updateClientList() {
                     clientListModel.clear();
                     for (Map.Entry<Integer, ClientHandler> entry : clients.entrySet()) {
                         int id = entry.getKey();
-                        boolean isCoord = id == coordinatorId;
+                        boolean isCoord = id == getCoordinatorId();
                         clientListModel.addElement("Client " + id + (isCoord ? " (Coordinator)" : ""));
                     }
                 }
-
-                @Override
-                public synchronized void addClient(ClientHandler handler) {
-                    clients.put(handler.getClientId(), handler);
-                    updateClientList();
-                }
             };
 
             // Start the server on a new thread
@@ -163,6 +159,9 @@ public class ClientHandlerGUI {
         btnAddClient.addActionListener(e -> {
             String clientName = "Client " + (++clientCount);
             ClientGUI clientGui = new ClientGUI();
+            if (server != null) {
+                clientGui.setConnector(server::connectLoopback); // Same process, so skip the network stack
+            }
             JPanel panel = clientGui.createClientPanel(clientName, "Client 1");
 
             clientPanels.put(clientName, panel);
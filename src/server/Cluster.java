@@ -0,0 +1,287 @@
+package server;
+
+import protocol.DeliveryStatus;
+import protocol.Frame;
+import protocol.FrameType;
+import protocol.MessageDecoder;
+import protocol.WireFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Static full mesh of Server nodes that share one client ID space. Node k of n issues the IDs
+// k+1, k+1+n, k+1+2n, ..., so every node knows which node owns an ID without asking anyone.
+// Each node dials every peer and only sends on its own links; frames arriving from a peer are
+// delivered locally and never forwarded again, so a broadcast crosses each link exactly once.
+// The nodes elect a leader (see Election), and only the leader hosts the coordinator.
+public class Cluster {
+    public static final String HELLO = "!peer";
+
+    private static final int LINK_QUEUE_CAPACITY = 65536;
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final int nodeId;
+    private final int nodeCount;
+    private final Map<Integer, PeerLink> links = new ConcurrentSkipListMap<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private final SlowConsumerStats linkStats = new SlowConsumerStats();
+
+    private volatile ServerSocket listener;
+    private volatile Server server;
+    private volatile Election election;
+    private volatile boolean running = false;
+    private long electionTimeoutMillis = 1500;
+
+    // Node IDs run from 0 to nodeCount - 1
+    public Cluster(int nodeId, int nodeCount) {
+        if (nodeCount < 1 || nodeId < 0 || nodeId >= nodeCount) {
+            throw new IllegalArgumentException("Node " + nodeId + " is not part of a cluster of " + nodeCount);
+        }
+        this.nodeId = nodeId;
+        this.nodeCount = nodeCount;
+    }
+
+    // Opens the port peers connect to; 0 picks a free port. Returns the bound port
+    public int listen(int port) throws IOException {
+        listener = new ServerSocket(port);
+        return listener.getLocalPort();
+    }
+
+    // Adds the node with the given ID at host:port (its cluster port, not its client port)
+    public void addPeer(int peerId, String host, int port) {
+        if (peerId < 0 || peerId >= nodeCount || peerId == nodeId) {
+            throw new IllegalArgumentException("Invalid peer node " + peerId + " for node " + nodeId + " of " + nodeCount);
+        }
+        ByteBuffer hello = encode(nodeId, Frame.NO_CLIENT, HELLO + " " + nodeId + " " + nodeCount);
+        OutboundQueue<ByteBuffer> queue = new OutboundQueue<>(LINK_QUEUE_CAPACITY, SlowConsumerPolicy.DROP_OLDEST, linkStats);
+        if (links.putIfAbsent(peerId, new PeerLink(peerId, new InetSocketAddress(host, port), hello, queue)) != null) {
+            throw new IllegalArgumentException("Peer node " + peerId + " was already added");
+        }
+    }
+
+    // Called by Server.start(): accepts peer links and starts dialing the peers
+    void start(Server server) {
+        if (listener == null) {
+            throw new IllegalStateException("Cluster node " + nodeId + " must listen() before the server starts");
+        }
+        this.server = server;
+        this.election = new Election(this, server, electionTimeoutMillis);
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "cluster-acceptor-" + nodeId);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (PeerLink link : links.values()) {
+            link.start();
+        }
+        election.start();
+    }
+
+    void stop() {
+        running = false;
+        if (election != null) {
+            election.stop();
+        }
+        try {
+            if (listener != null) {
+                listener.close();
+            }
+        } catch (IOException ignored) {}
+        for (PeerLink link : links.values()) {
+            link.stop();
+        }
+        for (Socket socket : inbound) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+        inbound.clear();
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    // A node that hears nothing from the leader for this long (plus a random part of it) starts an election;
+    // failover takes roughly one to three timeouts. Must be called before the server starts
+    public void setElectionTimeoutMillis(long electionTimeoutMillis) {
+        this.electionTimeoutMillis = electionTimeoutMillis;
+    }
+
+    // Leader election state, available once the server has started
+    public Election getElection() {
+        return election;
+    }
+
+    // Node that issued the given client ID
+    public int ownerOf(int clientId) {
+        return (clientId - 1) % nodeCount;
+    }
+
+    // Whether the ID belongs to this node; IDs that can never be issued count as local so they are rejected here
+    public boolean isLocal(int clientId) {
+        return clientId <= 0 || ownerOf(clientId) == nodeId;
+    }
+
+    // Whether the outgoing link to the peer is currently connected
+    public boolean isConnected(int peerId) {
+        PeerLink link = links.get(peerId);
+        return link != null && link.isConnected();
+    }
+
+    // Client messages forwarded to the peer so far; a broadcast counts once however many clients it reaches
+    public long getForwardedCount(int peerId) {
+        PeerLink link = links.get(peerId);
+        return link != null ? link.getForwardedCount() : 0;
+    }
+
+    // Frames dropped because a peer was unreachable for too long
+    public SlowConsumerStats getLinkStats() {
+        return linkStats;
+    }
+
+    // Sends a client's broadcast to every other node once; each node fans it out to its own clients
+    void forwardBroadcast(int senderId, String message) {
+        if (links.isEmpty()) {
+            return;
+        }
+        ByteBuffer frame = encode(senderId, Frame.NO_CLIENT, message);
+        for (PeerLink link : links.values()) {
+            link.forward(frame);
+        }
+    }
+
+    // Hands a private message to the node owning the target, which delivers it, keeps it in an inbox or
+    // rejects it. Only the owner knows which, and it does not answer, so the sender is told ROUTED.
+    DeliveryStatus forwardPrivate(int targetClientId, String message) {
+        PeerLink link = links.get(ownerOf(targetClientId));
+        if (link == null) {
+            return DeliveryStatus.REJECTED; // Owner never configured
+        }
+        link.forward(encode(Frame.NO_CLIENT, targetClientId, message));
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Election traffic shares the links with chat; late delivery is safe because leases count from sending time
+    void sendControl(int peerId, String message) {
+        PeerLink link = links.get(peerId);
+        if (link != null) {
+            link.control(encodeControl(message));
+        }
+    }
+
+    void broadcastControl(String message) {
+        ByteBuffer frame = encodeControl(message);
+        for (PeerLink link : links.values()) {
+            link.control(frame);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = listener.accept();
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                inbound.add(socket);
+                Thread reader = new Thread(() -> readLoop(socket), "peer-reader-" + nodeId + "-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Cluster node " + nodeId + " stopped accepting peers: " + e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    // Delivers frames from one peer: broadcasts to local clients, private messages to their local owner
+    private void readLoop(Socket socket) {
+        MessageDecoder decoder = new MessageDecoder();
+        decoder.switchTo(WireFormat.BINARY);
+        Boolean[] accepted = {null}; // Unknown until the peer's hello arrives
+        try (socket) {
+            InputStream in = socket.getInputStream();
+            byte[] chunk = new byte[READ_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                long arrivalNanos = System.nanoTime();
+                decoder.feed(chunk, 0, read, frame -> {
+                    if (accepted[0] == null) {
+                        accepted[0] = checkHello(socket, frame.getPayload());
+                    } else if (!accepted[0]) {
+                        return;
+                    } else if (frame.getType() == FrameType.PEER) {
+                        election.onMessage(frame.getPayload());
+                    } else if (frame.getTarget() == Frame.NO_CLIENT) {
+                        server.deliverBroadcast(frame.getPayload(), frame.getSender(), arrivalNanos);
+                    } else {
+                        server.sendPrivateMessage(frame.getTarget(), frame.getPayload(), arrivalNanos);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            // Peer went away; it dials us again when it comes back
+        } finally {
+            inbound.remove(socket);
+        }
+    }
+
+    // Peers must agree on the cluster size, otherwise they would disagree about who owns which ID
+    private boolean checkHello(Socket socket, String hello) {
+        String[] parts = hello.split(" ");
+        if (parts.length == 3 && parts[0].equals(HELLO) && parts[2].equals(Integer.toString(nodeCount))) {
+            return true;
+        }
+        System.out.println("Cluster node " + nodeId + " rejected peer " + socket.getRemoteSocketAddress() + ": " + hello);
+        try {
+            socket.close();
+        } catch (IOException ignored) {}
+        return false;
+    }
+
+    private ByteBuffer encodeControl(String message) {
+        return Frame.encode(FrameType.PEER, nodeId, Frame.NO_CLIENT, 0, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer encode(int sender, int target, String message) {
+        return Frame.encode(FrameType.TEXT, sender, target, 0, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Runs one headless node, e.g. node 1 of 3 with clients on 6667 and peers on 7001/7002:
+    //   java server.Cluster 1 3 6667 7001 0=localhost:7000 2=localhost:7002
+    // -Dcluster.electionTimeoutMillis=<ms> changes the election timeout, -Dserver.metricsDumpSeconds=<s>
+    // prints the server metrics that often
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: server.Cluster <node id> <node count> <client port> <cluster port> [<peer id>=<host>:<port> ...]");
+            return;
+        }
+        Cluster cluster = new Cluster(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        cluster.listen(Integer.parseInt(args[3]));
+        for (int i = 4; i < args.length; i++) {
+            String[] peer = args[i].split("[=:]");
+            cluster.addPeer(Integer.parseInt(peer[0]), peer[1], Integer.parseInt(peer[2]));
+        }
+
+        cluster.setElectionTimeoutMillis(Long.getLong("cluster.electionTimeoutMillis", 1500));
+
+        Server server = new Server(EngineMode.NIO);
+        server.setCluster(cluster);
+        server.setMetricsDumpSeconds(Integer.getInteger("server.metricsDumpSeconds", 0));
+        server.start(Integer.parseInt(args[2]));
+    }
+}
@@ -0,0 +1,9 @@
+package server;
+
+import protocol.DeliveryStatus;
+
+// Handles one kind of client command; registered in a CommandRegistry
+@FunctionalInterface
+public interface CommandHandler {
+    DeliveryStatus handle(ClientHandler client, ParsedCommand command);
+}
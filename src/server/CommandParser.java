@@ -0,0 +1,100 @@
+package server;
+
+// Splits a client line into ParsedCommand offsets without creating intermediate strings.
+// parse() is also the entry point for parser benchmarks.
+public final class CommandParser {
+
+    private CommandParser() {
+    }
+
+    // Fills the given command with the offsets of the trimmed line, its first token, argument and "@id" target
+    public static ParsedCommand parse(CharSequence line, ParsedCommand command) {
+        int start = 0;
+        int end = line.length();
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int nameEnd = start;
+        while (nameEnd < end && line.charAt(nameEnd) != ' ') {
+            nameEnd++;
+        }
+
+        command.line = line;
+        command.start = start;
+        command.end = end;
+        command.nameEnd = nameEnd;
+        command.argumentStart = nameEnd < end ? nameEnd + 1 : -1;
+
+        // "@12 text" style target: the digits after the prefix character
+        int target = nameEnd - start > 1 ? parseInt(line, start + 1, nameEnd, Integer.MIN_VALUE) : Integer.MIN_VALUE;
+        command.targetValid = target != Integer.MIN_VALUE;
+        command.targetId = command.targetValid ? target : -1;
+        return command;
+    }
+
+    // Parses [from, to) as a decimal int with optional sign; returns the fallback if malformed or out of range
+    static int parseInt(CharSequence text, int from, int to, int fallback) {
+        if (from >= to) {
+            return fallback;
+        }
+        boolean negative = false;
+        char first = text.charAt(from);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++from == to) {
+                return fallback;
+            }
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return fallback;
+            }
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE + 1L) {
+                return fallback;
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            return fallback;
+        }
+        return (int) value;
+    }
+
+    // Parses [from, to) as a decimal long with optional sign; returns the fallback if malformed or out of range
+    static long parseLong(CharSequence text, int from, int to, long fallback) {
+        if (from >= to) {
+            return fallback;
+        }
+        boolean negative = false;
+        char first = text.charAt(from);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++from == to) {
+                return fallback;
+            }
+        }
+        long value = 0; // Accumulated below zero, so Long.MIN_VALUE fits too
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return fallback;
+            }
+            int digit = c - '0';
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                return fallback;
+            }
+            value = value * 10 - digit;
+        }
+        if (negative) {
+            return value;
+        }
+        return value == Long.MIN_VALUE ? fallback : -value;
+    }
+}
@@ -0,0 +1,111 @@
+package server;
+
+import protocol.DeliveryStatus;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Dispatch table for client lines: named commands ("!members") are matched on the first token,
+// then single-character prefixes ("@"), and anything else goes to the fallback (broadcast).
+// Every entry counts the lines it handled, for the server metrics.
+public class CommandRegistry {
+    private static final int PREFIX_TABLE_SIZE = 128;
+    static final String FALLBACK_NAME = "(fallback)";
+
+    // Named commands, replaced copy-on-write so lookups need no locking
+    private volatile Route[] named = new Route[0];
+    private volatile Route[] prefixes = new Route[PREFIX_TABLE_SIZE];
+    private volatile Route fallback = new Route(FALLBACK_NAME, true, (client, command) -> DeliveryStatus.REJECTED, new LongAdder());
+
+    // A counter is kept when a handler is replaced, so counts cover the registry's whole life
+    private record Route(String name, boolean takesArgument, CommandHandler handler, LongAdder calls) {}
+
+    // A registry with the built-in chat commands
+    public static CommandRegistry withDefaults() {
+        CommandRegistry registry = new CommandRegistry();
+        Commands.registerDefaults(registry);
+        return registry;
+    }
+
+    // Registers a command matched case-insensitively on the first token; without an argument
+    // flag the line must consist of the name alone
+    public synchronized void register(String name, boolean takesArgument, CommandHandler handler) {
+        Route[] current = named;
+        Route[] updated = new Route[current.length + 1];
+        LongAdder calls = new LongAdder();
+        int size = 0;
+        for (Route command : current) {
+            if (!command.name().equalsIgnoreCase(name)) {
+                updated[size++] = command;
+            } else {
+                calls = command.calls();
+            }
+        }
+        updated[size++] = new Route(name, takesArgument, handler, calls);
+        named = Arrays.copyOf(updated, size);
+    }
+
+    // Registers a handler for every line starting with the given ASCII character
+    public synchronized void registerPrefix(char prefix, CommandHandler handler) {
+        if (prefix >= PREFIX_TABLE_SIZE) {
+            throw new IllegalArgumentException("Command prefix must be ASCII: " + prefix);
+        }
+        Route[] updated = prefixes.clone();
+        Route existing = updated[prefix];
+        updated[prefix] = new Route(String.valueOf(prefix), true, handler, existing != null ? existing.calls() : new LongAdder());
+        prefixes = updated;
+    }
+
+    // Handles lines that match no command
+    public synchronized void setFallback(CommandHandler fallback) {
+        this.fallback = new Route(FALLBACK_NAME, true, fallback, this.fallback.calls());
+    }
+
+    public CommandHandler getFallback() {
+        return fallback.handler();
+    }
+
+    // Finds the handler for a parsed line; never returns null
+    public CommandHandler lookup(ParsedCommand command) {
+        return route(command).handler();
+    }
+
+    public DeliveryStatus dispatch(ClientHandler client, ParsedCommand command) {
+        Route route = route(command);
+        route.calls().increment();
+        return route.handler().handle(client, command);
+    }
+
+    // Lines handled so far per command name, then per prefix, then by the fallback
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Route command : named) {
+            counts.put(command.name(), command.calls().sum());
+        }
+        for (Route prefix : prefixes) {
+            if (prefix != null) {
+                counts.put(prefix.name(), prefix.calls().sum());
+            }
+        }
+        counts.put(FALLBACK_NAME, fallback.calls().sum());
+        return counts;
+    }
+
+    private Route route(ParsedCommand command) {
+        for (Route candidate : named) {
+            if (command.nameEquals(candidate.name()) && (candidate.takesArgument() || !command.hasArgument())) {
+                return candidate;
+            }
+        }
+        char prefix = command.getPrefix();
+        if (prefix != 0 && prefix < PREFIX_TABLE_SIZE) {
+            Route route = prefixes[prefix];
+            if (route != null) {
+                return route;
+            }
+        }
+        return fallback;
+    }
+}
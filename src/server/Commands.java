@@ -0,0 +1,274 @@
+package server;
+
+import protocol.Compression;
+import protocol.DeliveryStatus;
+import protocol.Handshake;
+import protocol.SessionHandshake;
+
+// Built-in chat commands
+final class Commands {
+    // Records scanned per !replay request; the END marker tells the client where to continue
+    static final int REPLAY_BATCH = 500;
+
+    private Commands() {
+    }
+
+    static void registerDefaults(CommandRegistry registry) {
+        registry.register(Handshake.HELLO, true, Commands::handshake);
+        registry.register(Compression.REQUEST, true, Commands::compress);
+        registry.register("!members", false, Commands::members);
+        registry.register("!requestinfo", false, Commands::requestInfo);
+        registry.register("!presence-sync", false, Commands::presenceSync);
+        registry.register("!join", true, Commands::join);
+        registry.register("!leave", true, Commands::leave);
+        registry.register("!who", true, Commands::who);
+        registry.register("!replay", true, Commands::replay);
+        registry.register(SessionHandshake.START, false, Commands::startSession);
+        registry.register(SessionHandshake.RESUME, true, Commands::resumeSession);
+        registry.register(SessionHandshake.END, false, Commands::endSession);
+        registry.registerPrefix('@', Commands::privateMessage);
+        registry.registerPrefix('#', Commands::channelMessage);
+        registry.setFallback(Commands::broadcast);
+    }
+
+    // Client asks to upgrade the connection to binary framing
+    static DeliveryStatus handshake(ClientHandler client, ParsedCommand command) {
+        client.negotiate(command.argumentAsInt());
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Binary client offers frame compression ("!compress deflate")
+    static DeliveryStatus compress(ClientHandler client, ParsedCommand command) {
+        String method = command.hasArgument()
+                ? command.getLine().subSequence(command.getArgumentStart(), command.getEnd()).toString().trim()
+                : Compression.NONE;
+        client.negotiateCompression(method);
+        return DeliveryStatus.ROUTED;
+    }
+
+    // If the coordinator requests to see all members; from anyone else it is ordinary chat
+    static DeliveryStatus members(ClientHandler client, ParsedCommand command) {
+        if (!client.isCoordinator()) {
+            return broadcast(client, command);
+        }
+
+        client.send(client.server.getRoster().snapshot().message(RosterFormat.MEMBERS));
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Coordinator detected a gap in the presence stream and asks for a full snapshot
+    static DeliveryStatus presenceSync(ClientHandler client, ParsedCommand command) {
+        if (!client.isCoordinator()) {
+            client.sendMessage("Only the coordinator receives presence updates.");
+            return DeliveryStatus.REJECTED;
+        }
+        client.send(client.server.getRoster().snapshot().message(RosterFormat.PRESENCE_SNAPSHOT));
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Handle group member info request
+    static DeliveryStatus requestInfo(ClientHandler client, ParsedCommand command) {
+        Server server = client.server;
+        if (server.getCoordinatorId() == client.getClientId()) {
+            client.sendMessage("You are the coordinator. You already have the info.");
+            return DeliveryStatus.ROUTED;
+        }
+
+        ClientHandler coordinator = server.getClients().get(server.getCoordinatorId());
+        if (coordinator == null) {
+            client.sendMessage("Coordinator not found.");
+            return DeliveryStatus.REJECTED;
+        }
+        coordinator.sendInfoRequestPopup(client.getClientId());
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Private message handling ("@<id> <text>")
+    static DeliveryStatus privateMessage(ClientHandler client, ParsedCommand command) {
+        if (!command.hasArgument()) {
+            return DeliveryStatus.REJECTED;
+        }
+        if (!command.isTargetValid()) {
+            client.sendMessage("Invalid private message target: " + command.getLine().subSequence(command.getStart(), command.getNameEnd()));
+            return DeliveryStatus.REJECTED;
+        }
+
+        int targetClientId = command.getTargetId();
+        String text = new StringBuilder(command.getEnd() - command.getArgumentStart() + 24)
+                .append("Private from ").append(client.getClientId()).append(": ")
+                .append(command.getLine(), command.getArgumentStart(), command.getEnd())
+                .toString();
+        DeliveryStatus status = client.server.sendPrivateMessage(targetClientId, text, client.getArrivalNanos());
+        if (status == DeliveryStatus.QUEUED) {
+            client.sendMessage("Client " + targetClientId + " is offline; your message will be delivered when they reconnect.");
+        } else if (status == DeliveryStatus.REJECTED) {
+            client.sendMessage("Message to client " + targetClientId + " was not delivered: unknown client, client has left, or full inbox.");
+        }
+        return status;
+    }
+
+    // Subscribes to a channel ("!join <name>" or "!join #<name>")
+    static DeliveryStatus join(ClientHandler client, ParsedCommand command) {
+        String name = channelArgument(client, command);
+        if (name == null) {
+            return DeliveryStatus.REJECTED;
+        }
+        Channel channel = client.server.getChannels().join(client, name);
+        client.sendMessage("Joined #" + channel.getName() + " (" + channel.getSubscriberCount() + " members).");
+        return DeliveryStatus.ROUTED;
+    }
+
+    static DeliveryStatus leave(ClientHandler client, ParsedCommand command) {
+        String name = channelArgument(client, command);
+        if (name == null) {
+            return DeliveryStatus.REJECTED;
+        }
+        if (!client.server.getChannels().leave(client, name)) {
+            client.sendMessage("You are not in #" + name + ".");
+            return DeliveryStatus.REJECTED;
+        }
+        client.sendMessage("Left #" + name + ".");
+        return DeliveryStatus.ROUTED;
+    }
+
+    // The channel coordinator asks for the channel's members, like !members for the whole server
+    static DeliveryStatus who(ClientHandler client, ParsedCommand command) {
+        String name = channelArgument(client, command);
+        if (name == null) {
+            return DeliveryStatus.REJECTED;
+        }
+        Channel channel = client.server.getChannels().get(name);
+        if (channel == null || channel.getCoordinatorId() != client.getClientId()) {
+            client.sendMessage("Only the coordinator of #" + name + " can list its members.");
+            return DeliveryStatus.REJECTED;
+        }
+
+        StringBuilder list = new StringBuilder("Members of #").append(channel.getName()).append(':');
+        for (ClientHandler member : channel.getSubscribers()) {
+            list.append("\n- Client ").append(member.getClientId());
+            if (member.getClientId() == channel.getCoordinatorId()) {
+                list.append(" (Coordinator)");
+            }
+        }
+        client.sendMessage(list.toString());
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Message to everyone in a channel the sender has joined ("#<name> <text>")
+    static DeliveryStatus channelMessage(ClientHandler client, ParsedCommand command) {
+        int nameStart = command.getStart() + 1;
+        if (!command.hasArgument() || !ChannelIndex.isValidName(command.getLine(), nameStart, command.getNameEnd())) {
+            return broadcast(client, command); // Not channel syntax, e.g. "#1" or "#hashtag" alone
+        }
+
+        String name = command.getLine().subSequence(nameStart, command.getNameEnd()).toString();
+        Channel channel = client.server.getChannels().get(name);
+        if (channel == null || !channel.contains(client.getClientId())) {
+            client.sendMessage("You are not in #" + name + ".");
+            return DeliveryStatus.REJECTED;
+        }
+
+        String text = new StringBuilder(command.getEnd() - command.getStart() + 16)
+                .append("[#").append(channel.getName()).append("] Client ").append(client.getClientId()).append(": ")
+                .append(command.getLine(), command.getArgumentStart(), command.getEnd())
+                .toString();
+        client.server.publishToChannel(channel, text, client.getClientId(), client.getArrivalNanos());
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Replays logged broadcasts, and private messages to this client, from an offset ("!replay <offset>").
+    // Each comes back as "[LOG <offset>] <text>", followed by "[LOG END <next offset>]".
+    static DeliveryStatus replay(ClientHandler client, ParsedCommand command) {
+        MessageLog log = client.server.getMessageLog();
+        if (log == null) {
+            client.sendMessage("Message history is not enabled.");
+            return DeliveryStatus.REJECTED;
+        }
+        long fromOffset = command.argumentAsLong(); // Offsets outgrow an int long before the log is full
+        if (fromOffset < 0) {
+            client.sendMessage("Invalid replay offset: " + command.text());
+            return DeliveryStatus.REJECTED;
+        }
+
+        // Client IDs restart with the server, so older private messages may belong to someone else
+        int clientId = client.getClientId();
+        long privateFrom = log.getSessionStartOffset();
+        long next = log.read(fromOffset, REPLAY_BATCH, record -> {
+            if (record.isBroadcast() || (record.target() == clientId && record.offset() >= privateFrom)) {
+                client.sendMessage("[LOG " + record.offset() + "] " + record.text());
+            }
+        });
+        client.sendMessage("[LOG END " + next + "]");
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Starts a resumable session (or repeats the token of the current one)
+    static DeliveryStatus startSession(ClientHandler client, ParsedCommand command) {
+        Server server = client.server;
+        if (!server.isSessionsEnabled()) {
+            client.sendMessage("Session resumption is not enabled.");
+            return DeliveryStatus.REJECTED;
+        }
+        Session session = client.getSession();
+        if (session != null) {
+            client.sendMessage(SessionHandshake.started(session.getToken()));
+        } else {
+            server.startSession(client);
+        }
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Resumes a session; only valid as the first message of a new connection ("!resume <token> <last sequence>")
+    static DeliveryStatus resumeSession(ClientHandler client, ParsedCommand command) {
+        if (client.isAdmitted()) {
+            client.sendMessage("A session can only be resumed right after connecting.");
+            return DeliveryStatus.REJECTED;
+        }
+        if (!command.hasArgument()) {
+            client.sendMessage("Usage: " + SessionHandshake.RESUME + " <token> [<last sequence>]");
+            return DeliveryStatus.REJECTED;
+        }
+        String[] parts = command.getLine().subSequence(command.getArgumentStart(), command.getEnd()).toString().trim().split("\\s+");
+        long lastSequence = -1;
+        if (parts.length > 1) {
+            try {
+                lastSequence = Long.parseLong(parts[1]);
+            } catch (NumberFormatException ignored) {}
+        }
+        return client.resume(parts[0], lastSequence) ? DeliveryStatus.ROUTED : DeliveryStatus.REJECTED;
+    }
+
+    // The client is leaving on purpose, so its disconnect should not wait for a resume
+    static DeliveryStatus endSession(ClientHandler client, ParsedCommand command) {
+        client.server.endSession(client);
+        return DeliveryStatus.ROUTED;
+    }
+
+    // Channel name from the command argument, with or without a leading '#'; replies and returns null if it is invalid
+    private static String channelArgument(ClientHandler client, ParsedCommand command) {
+        CharSequence line = command.getLine();
+        int from = command.hasArgument() ? command.getArgumentStart() : command.getEnd();
+        int to = command.getEnd();
+        while (from < to && line.charAt(from) <= ' ') {
+            from++;
+        }
+        if (from < to && line.charAt(from) == '#') {
+            from++;
+        }
+        if (!ChannelIndex.isValidName(line, from, to)) {
+            client.sendMessage("Invalid channel name: " + line.subSequence(from, to));
+            return null;
+        }
+        return ChannelIndex.normalize(line.subSequence(from, to).toString());
+    }
+
+    // General message to all clients
+    static DeliveryStatus broadcast(ClientHandler client, ParsedCommand command) {
+        String text = new StringBuilder(command.getEnd() - command.getStart() + 16)
+                .append("Client ").append(client.getClientId()).append(": ")
+                .append(command.getLine(), command.getStart(), command.getEnd())
+                .toString();
+        client.server.broadcastMessage(text, client.getClientId(), client.getArrivalNanos());
+        return DeliveryStatus.ROUTED;
+    }
+}
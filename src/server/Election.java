@@ -0,0 +1,322 @@
+package server;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Raft-style leader election with a lease, run by every node of a Cluster. Terms only grow, each node
+// votes once per term and a leader needs a majority. Only the leader hosts the coordinator.
+//
+// Why two coordinators never overlap: a follower that acknowledged a heartbeat refuses to vote for
+// anyone for a full election timeout afterwards, and a leader's lease only runs for half of that from
+// the moment the heartbeat was sent. Any new majority contains one of those followers, so a new leader
+// cannot exist before the old lease has run out, and the old leader drops the coordinator when it does.
+// The term acts as a fencing token: heartbeats and votes from older terms are refused.
+public class Election {
+    enum Role { FOLLOWER, CANDIDATE, LEADER }
+
+    static final String VOTE_REQUEST = "VOTE?";
+    static final String VOTE = "VOTE";
+    static final String HEARTBEAT = "LEAD";
+    static final String HEARTBEAT_ACK = "LEAD-ACK";
+
+    // Heartbeat rounds remembered for counting acknowledgements
+    private static final int ROUNDS_KEPT = 16;
+
+    private final Cluster cluster;
+    private final Server server;
+    private final int nodeId;
+    private final int majority;
+    private final long electionTimeoutNanos;
+    private final long leaseNanos;
+    private final long heartbeatNanos;
+    private final Random random = new Random();
+
+    // Guards all election state; taken before the server's membership lock, never after it
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Role role = Role.FOLLOWER;
+    private long term = 0;
+    private int votedFor = -1;
+    private int leaderId = -1;
+    private final Set<Integer> votes = new HashSet<>();
+    private long lastHeardNanos;          // Last heartbeat from the leader, or vote granted
+    private long lastLeaderHeardNanos;    // Last heartbeat from another leader, 0 if there never was one
+    private long electionDeadlineNanos;
+    private long electionStartNanos;
+    private long leaseExpiryNanos;
+    private long round = 0;
+    private final Map<Long, Round> rounds = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Round> eldest) {
+            return size() > ROUNDS_KEPT;
+        }
+    };
+
+    private volatile boolean leader = false;
+    private volatile long currentTerm = 0;
+    private volatile int knownLeaderId = -1;
+    private volatile long lastFailoverMillis = -1;
+    private volatile long leaderChanges = 0;
+    private TimerWheel.Timeout ticker;
+
+    private static final class Round {
+        final long startNanos;
+        final Set<Integer> acks = new HashSet<>();
+
+        Round(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    // The lease is half the election timeout and heartbeats go out six times per timeout
+    Election(Cluster cluster, Server server, long electionTimeoutMillis) {
+        this.cluster = cluster;
+        this.server = server;
+        this.nodeId = cluster.getNodeId();
+        this.majority = cluster.getNodeCount() / 2 + 1;
+        this.electionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(electionTimeoutMillis);
+        this.leaseNanos = electionTimeoutNanos / 2;
+        this.heartbeatNanos = electionTimeoutNanos / 6;
+    }
+
+    void start() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            lastHeardNanos = now - electionTimeoutNanos; // Nobody to be loyal to yet
+            electionDeadlineNanos = now + randomTimeout();
+            ticker = server.getTimerWheel().scheduleAtFixedRate(this::tick, 0, heartbeatNanos, TimeUnit.NANOSECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void stop() {
+        lock.lock();
+        try {
+            if (ticker != null) {
+                ticker.cancel();
+                ticker = null;
+            }
+            if (role == Role.LEADER) {
+                stepDown();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    public long getTerm() {
+        return currentTerm;
+    }
+
+    // Node this one last accepted heartbeats from (itself when leading), or -1
+    public int getLeaderId() {
+        return knownLeaderId;
+    }
+
+    // On the node that won the latest election it took part in: time from the last heartbeat of the
+    // previous leader to winning, or -1 if it has not taken over from another leader
+    public long getLastFailoverMillis() {
+        return lastFailoverMillis;
+    }
+
+    // How often this node became leader or stopped being leader
+    public long getLeaderChanges() {
+        return leaderChanges;
+    }
+
+    // Runs every heartbeat interval on the server timer
+    private void tick() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (role == Role.LEADER) {
+                if (now - leaseExpiryNanos >= 0) {
+                    stepDown(); // Could not reach a majority in time; someone else may be elected soon
+                } else {
+                    sendHeartbeat(now);
+                }
+            } else if (now - electionDeadlineNanos >= 0) {
+                startElection(now);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Handles a control message from another node
+    void onMessage(String message) {
+        String[] parts = message.split(" ");
+        try {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                long messageTerm = Long.parseLong(parts[1]);
+                int from = Integer.parseInt(parts[2]);
+                switch (parts[0]) {
+                    case VOTE_REQUEST -> onVoteRequest(now, messageTerm, from);
+                    case VOTE -> onVote(messageTerm, from, parts[3].equals("1"));
+                    case HEARTBEAT -> onHeartbeat(now, messageTerm, from, Long.parseLong(parts[3]));
+                    case HEARTBEAT_ACK -> onHeartbeatAck(messageTerm, from, Long.parseLong(parts[3]), parts[4].equals("1"));
+                    default -> System.out.println("Node " + nodeId + " ignored election message: " + message);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Node " + nodeId + " ignored malformed election message: " + message);
+        }
+    }
+
+    private void startElection(long now) {
+        setTerm(term + 1);
+        role = Role.CANDIDATE;
+        votedFor = nodeId;
+        leaderId = -1;
+        knownLeaderId = -1;
+        votes.clear();
+        votes.add(nodeId);
+        electionStartNanos = now;
+        electionDeadlineNanos = now + randomTimeout();
+        if (votes.size() >= majority) {
+            becomeLeader(now);
+        } else {
+            cluster.broadcastControl(VOTE_REQUEST + " " + term + " " + nodeId);
+        }
+    }
+
+    private void onVoteRequest(long now, long candidateTerm, int candidate) {
+        // Loyal to a live leader: refuse without even looking at the term, so a node that was cut off
+        // cannot depose a healthy leader by showing up with a higher term
+        if (role == Role.LEADER || now - lastHeardNanos < electionTimeoutNanos || candidateTerm < term) {
+            cluster.sendControl(candidate, VOTE + " " + candidateTerm + " " + nodeId + " 0");
+            return;
+        }
+        if (candidateTerm > term) {
+            becomeFollower(candidateTerm);
+        }
+        boolean granted = votedFor == -1 || votedFor == candidate;
+        if (granted) {
+            votedFor = candidate;
+            lastHeardNanos = now; // Granting a vote counts as a promise, like acknowledging a heartbeat
+            electionDeadlineNanos = now + randomTimeout();
+        }
+        cluster.sendControl(candidate, VOTE + " " + candidateTerm + " " + nodeId + (granted ? " 1" : " 0"));
+    }
+
+    private void onVote(long voteTerm, int voter, boolean granted) {
+        if (voteTerm > term) {
+            becomeFollower(voteTerm);
+            return;
+        }
+        if (role == Role.CANDIDATE && voteTerm == term && granted) {
+            votes.add(voter);
+            if (votes.size() >= majority) {
+                becomeLeader(System.nanoTime());
+            }
+        }
+    }
+
+    private void onHeartbeat(long now, long leaderTerm, int from, long heartbeatRound) {
+        if (leaderTerm < term) {
+            cluster.sendControl(from, HEARTBEAT_ACK + " " + term + " " + nodeId + " " + heartbeatRound + " 0");
+            return; // Fenced off: a deposed leader learns about the newer term and stays down
+        }
+        if (leaderTerm > term || role != Role.FOLLOWER) {
+            becomeFollower(leaderTerm);
+        }
+        if (leaderId != from) {
+            leaderId = from;
+            knownLeaderId = from;
+        }
+        lastHeardNanos = now;
+        lastLeaderHeardNanos = now;
+        electionDeadlineNanos = now + randomTimeout();
+        cluster.sendControl(from, HEARTBEAT_ACK + " " + term + " " + nodeId + " " + heartbeatRound + " 1");
+    }
+
+    private void onHeartbeatAck(long ackTerm, int from, long ackRound, boolean ok) {
+        if (ackTerm > term) {
+            becomeFollower(ackTerm);
+            return;
+        }
+        Round acked = rounds.get(ackRound);
+        if (role != Role.LEADER || ackTerm != term || !ok || acked == null) {
+            return;
+        }
+        acked.acks.add(from);
+        if (acked.acks.size() + 1 >= majority && acked.startNanos + leaseNanos - leaseExpiryNanos > 0) {
+            leaseExpiryNanos = acked.startNanos + leaseNanos;
+        }
+    }
+
+    private void becomeLeader(long now) {
+        role = Role.LEADER;
+        leaderId = nodeId;
+        knownLeaderId = nodeId;
+        rounds.clear();
+
+        // Every vote was granted after the election started, so the lease counts from then
+        leaseExpiryNanos = electionStartNanos + leaseNanos;
+        if (lastLeaderHeardNanos != 0) {
+            lastFailoverMillis = TimeUnit.NANOSECONDS.toMillis(now - lastLeaderHeardNanos);
+        }
+        leader = true;
+        leaderChanges++;
+        System.out.println("Node " + nodeId + " is the leader for term " + term + ".");
+        server.setCoordinatorHost(true);
+        sendHeartbeat(now);
+    }
+
+    private void becomeFollower(long newTerm) {
+        if (newTerm > term) {
+            setTerm(newTerm);
+            votedFor = -1;
+        }
+        if (role == Role.LEADER) {
+            stepDown();
+        }
+        role = Role.FOLLOWER;
+    }
+
+    // Gives up leadership; the coordinator is demoted before this returns
+    private void stepDown() {
+        role = Role.FOLLOWER;
+        leaderId = -1;
+        knownLeaderId = -1;
+        leader = false;
+        leaderChanges++;
+        electionDeadlineNanos = System.nanoTime() + randomTimeout();
+        System.out.println("Node " + nodeId + " stepped down in term " + term + ".");
+        server.setCoordinatorHost(false);
+    }
+
+    private void sendHeartbeat(long now) {
+        if (majority == 1) {
+            leaseExpiryNanos = now + leaseNanos; // A single node is its own majority; no acks will come
+        }
+        round++;
+        rounds.put(round, new Round(now));
+        cluster.broadcastControl(HEARTBEAT + " " + term + " " + nodeId + " " + round);
+    }
+
+    private void setTerm(long newTerm) {
+        term = newTerm;
+        currentTerm = newTerm;
+    }
+
+    // Somewhere between one and two election timeouts, so candidates rarely split the vote
+    private long randomTimeout() {
+        return electionTimeoutNanos + (long) (random.nextDouble() * electionTimeoutNanos);
+    }
+}
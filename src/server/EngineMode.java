@@ -0,0 +1,10 @@
+package server;
+
+// Selects how the server drives client connections
+public enum EngineMode {
+    // One blocking ClientHandler thread per connected client (original model)
+    THREAD_PER_CLIENT,
+
+    // Non-blocking channels multiplexed over a small fixed pool of selector event loops
+    NIO
+}
@@ -0,0 +1,42 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Factories for the executor that runs ClientHandler loops and coordinator tasks
+public final class HandlerExecutors {
+
+    private HandlerExecutors() {
+    }
+
+    // One platform thread per task, matching the original thread-per-client behaviour
+    public static ExecutorService platformThreads() {
+        AtomicInteger counter = new AtomicInteger(1);
+        ThreadFactory factory = task -> new Thread(task, "client-handler-" + counter.getAndIncrement());
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    // One virtual thread per task when the JDK supports it (21+), otherwise platform threads
+    public static ExecutorService virtualThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads are not available on this JDK, using platform threads.");
+            return platformThreads();
+        }
+    }
+
+    // Whether virtual threads can be used on the running JDK
+    public static boolean virtualThreadsSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Members in the order they joined, so the oldest surviving member can take over as coordinator.
+// Lock-free: adding and removing are O(log n) on a skip list, and finding the oldest member is O(1)
+// because it is always the first entry.
+final class JoinOrder {
+    private final ConcurrentSkipListMap<Long, ClientHandler> members = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    void add(ClientHandler member) {
+        long position = sequence.incrementAndGet();
+        member.setJoinPosition(position);
+        members.put(position, member);
+    }
+
+    // A resumed session keeps its place in the line
+    void replace(ClientHandler previous, ClientHandler replacement) {
+        replacement.setJoinPosition(previous.getJoinPosition());
+        members.replace(previous.getJoinPosition(), previous, replacement);
+    }
+
+    boolean remove(ClientHandler member) {
+        return members.remove(member.getJoinPosition(), member);
+    }
+
+    boolean contains(ClientHandler member) {
+        return members.get(member.getJoinPosition()) == member;
+    }
+
+    // Longest-standing member, or null if there is none
+    ClientHandler oldest() {
+        Map.Entry<Long, ClientHandler> first = members.firstEntry();
+        return first != null ? first.getValue() : null;
+    }
+
+    int size() {
+        return members.size();
+    }
+
+    void clear() {
+        members.clear();
+    }
+}
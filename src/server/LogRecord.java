@@ -0,0 +1,12 @@
+package server;
+
+import protocol.Frame;
+
+// One message read back from the MessageLog
+public record LogRecord(long offset, long timestamp, int sender, int target, String text) {
+
+    // Broadcasts are logged without a target
+    public boolean isBroadcast() {
+        return target == Frame.NO_CLIENT;
+    }
+}
@@ -0,0 +1,197 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+// One memory-mapped file of the message log plus its sparse offset index.
+// Record: int32 length of the rest, int64 offset, int64 timestamp, int32 sender, int32 target, UTF-8 text.
+// The length is written last, so a record cut short by a crash reads as the end of the segment.
+// Only the log's writer thread appends; readers see records up to the published write position.
+final class LogSegment {
+    static final int RECORD_HEADER = 28;
+    static final int INDEX_INTERVAL_BYTES = 4096;  // One index entry per this many log bytes
+    private static final int INDEX_ENTRY = 8;       // int32 offset relative to the base, int32 position
+
+    private final long baseOffset;
+    private final Path logFile;
+    private final Path indexFile;
+    private final MappedByteBuffer log;
+    private final MappedByteBuffer index;
+    private final int capacity;
+
+    // Published by the writer after each record
+    private volatile int writePosition;
+    private volatile long nextOffset;
+    private volatile int indexEntries;
+    private volatile long lastTimestamp;
+    private int lastIndexedPosition;
+
+    private LogSegment(long baseOffset, Path logFile, Path indexFile, int capacity) throws IOException {
+        this.baseOffset = baseOffset;
+        this.logFile = logFile;
+        this.indexFile = indexFile;
+        this.capacity = capacity;
+        this.log = map(logFile, capacity);
+        this.index = map(indexFile, (capacity / INDEX_INTERVAL_BYTES + 1) * INDEX_ENTRY);
+        this.nextOffset = baseOffset;
+    }
+
+    // Creates an empty segment whose first record gets the base offset
+    static LogSegment create(Path directory, long baseOffset, int capacity) throws IOException {
+        return new LogSegment(baseOffset, logFile(directory, baseOffset), indexFile(directory, baseOffset), capacity);
+    }
+
+    // Opens an existing segment; only the records after the last index entry are scanned
+    static LogSegment open(Path directory, long baseOffset) throws IOException {
+        Path logFile = logFile(directory, baseOffset);
+        LogSegment segment = new LogSegment(baseOffset, logFile, indexFile(directory, baseOffset), (int) Files.size(logFile));
+        segment.recover();
+        return segment;
+    }
+
+    static Path logFile(Path directory, long baseOffset) {
+        return directory.resolve(String.format("%020d.log", baseOffset));
+    }
+
+    static Path indexFile(Path directory, long baseOffset) {
+        return directory.resolve(String.format("%020d.idx", baseOffset));
+    }
+
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size); // The mapping outlives the channel
+        }
+    }
+
+    private void recover() {
+        // Index positions only grow and unused entries are zero, so the last entry is found by binary search
+        int low = 0;
+        int high = index.capacity() / INDEX_ENTRY;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index.getInt(mid * INDEX_ENTRY + 4) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        indexEntries = low;
+
+        int position = low > 0 ? index.getInt((low - 1) * INDEX_ENTRY + 4) : 0;
+        lastIndexedPosition = position;
+        long next = baseOffset;
+        while (position + RECORD_HEADER <= capacity) {
+            int length = log.getInt(position);
+            if (length < RECORD_HEADER - 4 || position + 4 + length > capacity) {
+                break;
+            }
+            next = log.getLong(position + 4) + 1;
+            lastTimestamp = log.getLong(position + 12);
+            position += 4 + length;
+        }
+        writePosition = position;
+        nextOffset = next;
+    }
+
+    boolean fits(int payloadLength) {
+        return writePosition + RECORD_HEADER + payloadLength <= capacity;
+    }
+
+    // Appends one record; the caller checked fits() first
+    void append(long timestamp, int sender, int target, byte[] payload) {
+        int position = writePosition;
+        long offset = nextOffset;
+        ByteBuffer buffer = log.duplicate();
+        buffer.position(position + 4);
+        buffer.putLong(offset).putLong(timestamp).putInt(sender).putInt(target).put(payload);
+        log.putInt(position, RECORD_HEADER - 4 + payload.length);
+
+        if (position > 0 && position - lastIndexedPosition >= INDEX_INTERVAL_BYTES) {
+            int entry = indexEntries * INDEX_ENTRY;
+            index.putInt(entry, (int) (offset - baseOffset));
+            index.putInt(entry + 4, position);
+            lastIndexedPosition = position;
+            indexEntries++;
+        }
+        lastTimestamp = timestamp;
+        writePosition = position + RECORD_HEADER + payload.length;
+        nextOffset = offset + 1;
+    }
+
+    // Passes up to maxRecords records starting at fromOffset to the sink; returns how many were read
+    int read(long fromOffset, int maxRecords, Consumer<LogRecord> sink) {
+        int limit = writePosition;
+        int position = indexLookup(fromOffset, limit);
+        int count = 0;
+        while (position < limit && count < maxRecords) {
+            int length = log.getInt(position);
+            long offset = log.getLong(position + 4);
+            if (offset >= fromOffset) {
+                byte[] payload = new byte[length - (RECORD_HEADER - 4)];
+                log.get(position + RECORD_HEADER, payload);
+                sink.accept(new LogRecord(offset, log.getLong(position + 12), log.getInt(position + 20),
+                        log.getInt(position + 24), new String(payload, StandardCharsets.UTF_8)));
+                count++;
+            }
+            position += 4 + length;
+        }
+        return count;
+    }
+
+    // Position of the last indexed record at or before the offset, or 0
+    private int indexLookup(long offset, int limit) {
+        long relative = offset - baseOffset;
+        int low = 0;
+        int high = indexEntries - 1;
+        int position = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (index.getInt(mid * INDEX_ENTRY) <= relative) {
+                int candidate = index.getInt(mid * INDEX_ENTRY + 4);
+                if (candidate < limit) {
+                    position = candidate;
+                }
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return position;
+    }
+
+    long getBaseOffset() {
+        return baseOffset;
+    }
+
+    long getNextOffset() {
+        return nextOffset;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    // Time of the newest record, used for age-based retention
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    void force() {
+        log.force();
+        index.force();
+    }
+
+    // Removes the files; the mapping itself is released once no reader holds it
+    void delete() throws IOException {
+        Files.deleteIfExists(logFile);
+        Files.deleteIfExists(indexFile);
+    }
+}
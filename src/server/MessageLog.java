@@ -0,0 +1,203 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Durable, append-only history of routed messages, stored as memory-mapped segment files in one directory.
+// Routing threads only enqueue; a single writer thread assigns offsets, appends, rolls segments and
+// applies retention. When the writer falls behind, new records are dropped rather than slowing fan-out.
+public class MessageLog implements Closeable {
+    private static final long RETENTION_CHECK_MILLIS = 60_000;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long retentionBytes;
+    private final long retentionMillis;
+
+    // Segments by base offset; the last one is the active segment
+    private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private volatile LogSegment active;
+
+    private final SlowConsumerStats appendStats = new SlowConsumerStats();
+    private final OutboundQueue<Pending> pending;
+    private final Thread writer;
+    private volatile boolean closing = false;
+
+    // First offset written since this log was opened
+    private final long sessionStartOffset;
+
+    private record Pending(long timestamp, int sender, int target, String text) {}
+
+    // Opens the log with 16 MB segments, keeping up to 1 GB or 7 days of history
+    public MessageLog(Path directory) throws IOException {
+        this(directory, 16 * 1024 * 1024, 1024L * 1024 * 1024, TimeUnit.DAYS.toMillis(7));
+    }
+
+    public MessageLog(Path directory, int segmentBytes, long retentionBytes, long retentionMillis) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.pending = new OutboundQueue<>(65536, SlowConsumerPolicy.DROP_NEWEST, appendStats);
+
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".log")) {
+                    long baseOffset = Long.parseLong(name.substring(0, name.length() - 4));
+                    segments.put(baseOffset, LogSegment.open(directory, baseOffset));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, LogSegment.create(directory, 0, segmentBytes));
+        }
+        active = segments.lastEntry().getValue();
+        sessionStartOffset = active.getNextOffset();
+
+        writer = new Thread(this::writeLoop, "message-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Queues a message for the log without waiting; counted in getDroppedCount() if the writer is too far behind
+    public void append(int sender, int target, String text) {
+        if (!closing) {
+            pending.offer(new Pending(System.currentTimeMillis(), sender, target, text));
+        }
+    }
+
+    // Passes up to maxRecords records, starting at fromOffset (or the oldest retained one), to the sink;
+    // returns the offset to continue from
+    public long read(long fromOffset, int maxRecords, Consumer<LogRecord> sink) {
+        long next = Math.max(fromOffset, getStartOffset());
+        Map.Entry<Long, LogSegment> first = segments.floorEntry(next);
+        Iterator<LogSegment> it = (first != null ? segments.tailMap(first.getKey()) : segments).values().iterator();
+
+        int remaining = maxRecords;
+        long[] last = {next - 1};
+        while (remaining > 0 && it.hasNext()) {
+            remaining -= it.next().read(next, remaining, record -> {
+                last[0] = record.offset();
+                sink.accept(record);
+            });
+        }
+        return last[0] + 1;
+    }
+
+    // Oldest offset still retained
+    public long getStartOffset() {
+        Map.Entry<Long, LogSegment> first = segments.firstEntry();
+        return first != null ? first.getKey() : 0;
+    }
+
+    // Offset the next appended record will get; everything below it can be read
+    public long getNextOffset() {
+        return active.getNextOffset();
+    }
+
+    // First offset appended since the log was opened; earlier records belong to a previous server run
+    public long getSessionStartOffset() {
+        return sessionStartOffset;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    // Records dropped because the writer could not keep up
+    public long getDroppedCount() {
+        return appendStats.getDroppedNewest();
+    }
+
+    // Writes out everything still queued, flushes the mapped files and stops the writer
+    @Override
+    public void close() {
+        closing = true;
+        pending.close();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        active.force();
+    }
+
+    private void writeLoop() {
+        long nextRetentionCheck = System.currentTimeMillis() + RETENTION_CHECK_MILLIS;
+        try {
+            while (true) {
+                Pending record = pending.poll(1, TimeUnit.SECONDS);
+                if (record != null) {
+                    write(record);
+                } else if (closing) {
+                    return;
+                }
+                if (System.currentTimeMillis() >= nextRetentionCheck) {
+                    applyRetention();
+                    nextRetentionCheck = System.currentTimeMillis() + RETENTION_CHECK_MILLIS;
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } catch (IOException e) {
+            System.out.println("Message log stopped: " + e.getMessage());
+        }
+    }
+
+    private void write(Pending record) throws IOException {
+        byte[] payload = record.text().getBytes(StandardCharsets.UTF_8);
+        if (!active.fits(payload.length)) {
+            roll(payload.length);
+        }
+        active.append(record.timestamp(), record.sender(), record.target(), payload);
+    }
+
+    // Starts a new segment; one that would not fit even an empty segment gets a segment of its own size.
+    // An active segment without records is replaced instead, as the next one would share its base offset
+    // and file names.
+    private void roll(int payloadLength) throws IOException {
+        long baseOffset = active.getNextOffset();
+        if (baseOffset == active.getBaseOffset()) {
+            active.delete();
+        } else {
+            active.force();
+        }
+        int capacity = Math.max(segmentBytes, LogSegment.RECORD_HEADER + payloadLength);
+        LogSegment segment = LogSegment.create(directory, baseOffset, capacity);
+        segments.put(baseOffset, segment); // Replaces the empty segment, if that is what was active
+        active = segment;
+        applyRetention();
+    }
+
+    // Deletes the oldest closed segments while the log is over its size budget or they are too old
+    private void applyRetention() {
+        long totalBytes = 0;
+        for (LogSegment segment : segments.values()) {
+            totalBytes += segment.getCapacity();
+        }
+        long oldestAllowed = System.currentTimeMillis() - retentionMillis;
+
+        for (LogSegment segment : segments.values()) {
+            if (segment == active || (totalBytes <= retentionBytes && segment.getLastTimestamp() >= oldestAllowed)) {
+                break;
+            }
+            segments.remove(segment.getBaseOffset());
+            totalBytes -= segment.getCapacity();
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                System.out.println("Could not delete log segment " + segment.getBaseOffset() + ": " + e.getMessage());
+            }
+        }
+    }
+}
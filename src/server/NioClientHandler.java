@@ -0,0 +1,194 @@
+package server;
+
+import protocol.Frame;
+import protocol.WireFormat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Client handler driven by an NioEventLoop instead of its own thread; speaks the same protocols
+class NioClientHandler extends ClientHandler {
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    // Maximum number of queued frames handed to one gathering write
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final int clientPort;
+
+    // Set while a flush is queued on the loop, so a burst of sends schedules only one
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    // Frames taken from the outbound queue; [batchStart, batchEnd) are not fully written yet
+    private final ByteBuffer[] writeBatch = new ByteBuffer[MAX_GATHER];
+    private final OutboundMessage[] writeMessages = new OutboundMessage[MAX_GATHER];
+    private final long[] writeTimedFromNanos = new long[MAX_GATHER];
+    private int batchStart = 0;
+    private int batchEnd = 0;
+    private final int maxBatchBytes;
+
+    // Flush bookkeeping owned by the event loop
+    boolean flushPending = false;
+    long flushDeadline;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    // Wire format used for frames the loop takes from the outbound queue
+    private WireFormat writeFormat = WireFormat.LINE;
+
+    private SelectionKey key;
+    private boolean closed = false;
+
+    NioClientHandler(SocketChannel channel, int clientId, Server server, NioEventLoop loop) throws IOException {
+        super(clientId, server);
+        this.channel = channel;
+        this.loop = loop;
+        this.clientPort = ((InetSocketAddress) channel.getRemoteAddress()).getPort();
+        this.maxBatchBytes = server.getWriteCoalesceBytes();
+    }
+
+    @Override
+    public int getClientPort() {
+        return clientPort;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    // Lets the owning event loop write out the queued message together with anything else queued this turn
+    @Override
+    protected void onMessageQueued() {
+        if (loop.inEventLoop()) {
+            loop.scheduleFlush(this);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(() -> {
+                flushScheduled.set(false);
+                loop.scheduleFlush(this);
+            });
+        }
+    }
+
+    // Channels may only be closed from the loop thread
+    @Override
+    protected void closeConnection() {
+        loop.execute(this::close);
+    }
+
+    // Registers with the loop's selector and greets the client (loop thread only)
+    void register(Selector selector) {
+        try {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        } catch (ClosedChannelException e) {
+            close();
+            return;
+        }
+        connectionReady();
+        loop.scheduleFlush(this); // Anything queued before registration
+    }
+
+    // Reads what is available and dispatches every complete message (loop thread only)
+    void handleRead() {
+        try {
+            int read = channel.read(readBuffer);
+            if (read == -1) {
+                decoder.finish(this::handleFrame);
+                close();
+                return;
+            }
+
+            markArrival();
+            metrics.bytesRead(read);
+            readBuffer.flip();
+            decoder.feed(readBuffer, this::handleFrame);
+            readBuffer.clear();
+        } catch (Exception e) {
+            System.out.println("Client " + getClientId() + " disconnected.");
+            close();
+        }
+    }
+
+    // Frames still buffered after a disconnect are ignored
+    @Override
+    protected void handleFrame(Frame frame) {
+        if (!closed) {
+            super.handleFrame(frame);
+        }
+    }
+
+    // Writes as much of the outbound queue as the socket accepts (loop thread only)
+    void handleWrite() {
+        if (closed || key == null || !key.isValid()) {
+            return;
+        }
+        try {
+            while (true) {
+                if (batchStart == batchEnd && !fillWriteBatch()) {
+                    break;
+                }
+                metrics.bytesWritten(channel.write(writeBatch, batchStart, batchEnd - batchStart));
+                long now = System.nanoTime();
+                while (batchStart < batchEnd && !writeBatch[batchStart].hasRemaining()) {
+                    metrics.messageWritten(writeMessages[batchStart], writeTimedFromNanos[batchStart], now);
+                    writeMessages[batchStart] = null;
+                    writeBatch[batchStart++] = null;
+                }
+                if (batchStart < batchEnd) {
+                    // Socket is full, wait until the selector reports it writable again
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // Closes the channel and runs the usual disconnect handling exactly once
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        onDisconnect(); // Before the channel closes, so a session is detached by the time the drop is visible
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        outbound.clear();
+        Arrays.fill(writeBatch, null);
+        Arrays.fill(writeMessages, null);
+        batchStart = batchEnd = 0;
+    }
+
+    // Moves queued frames into the gathering batch, up to the byte budget; returns false if nothing is queued
+    private boolean fillWriteBatch() {
+        batchStart = 0;
+        batchEnd = 0;
+        int bytes = 0;
+        OutboundMessage message;
+        while (batchEnd < MAX_GATHER && bytes < maxBatchBytes && (message = outbound.poll()) != null) {
+            ByteBuffer frame = encode(message, writeFormat);
+            bytes += frame.remaining();
+            writeMessages[batchEnd] = message;
+            writeTimedFromNanos[batchEnd] = outbound.lastTimedFromNanos();
+            writeBatch[batchEnd++] = frame;
+            if (message.getSwitchTo() != null) {
+                writeFormat = message.getSwitchTo();
+            }
+        }
+        return batchEnd > 0;
+    }
+}
@@ -0,0 +1,137 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Single-threaded selector loop that reads, parses and routes for the channels registered on it
+class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    // Connections with queued output, flushed once per turn (or after the delay in throughput mode)
+    private final ArrayDeque<NioClientHandler> flushQueue = new ArrayDeque<>();
+    private final long flushDelayNanos;
+
+    NioEventLoop(String name, long flushDelayNanos) throws IOException {
+        this.flushDelayNanos = flushDelayNanos;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    // Whether the caller is already running on this loop's thread
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    // Queues a task to run on the loop thread and wakes the selector
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    // Hands a freshly accepted connection over to this loop
+    void register(NioClientHandler handler) {
+        execute(() -> handler.register(selector));
+    }
+
+    // Marks a connection for flushing at the end of this turn; loop thread only
+    void scheduleFlush(NioClientHandler handler) {
+        if (!handler.flushPending) {
+            handler.flushPending = true;
+            handler.flushDeadline = System.nanoTime() + flushDelayNanos;
+            flushQueue.add(handler);
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                long waitNanos = flushDueConnections();
+                if (waitNanos < 0) {
+                    selector.select();
+                } else if (waitNanos == 0) {
+                    selector.selectNow();
+                } else {
+                    selector.select(Math.max(1, waitNanos / 1_000_000));
+                }
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    NioClientHandler handler = (NioClientHandler) key.attachment();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        handler.handleRead();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        handler.handleWrite();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Event loop " + thread.getName() + " failed: " + e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    // Writes out connections whose flush is due; returns nanos until the next one, or -1 if none is pending
+    private long flushDueConnections() {
+        long now = System.nanoTime();
+        NioClientHandler handler;
+        while ((handler = flushQueue.peek()) != null) {
+            long wait = handler.flushDeadline - now;
+            if (wait > 0) {
+                return wait;
+            }
+            flushQueue.poll();
+            handler.flushPending = false;
+            handler.handleWrite();
+        }
+        return -1;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    // Flushes what can still be written and closes every channel owned by this loop
+    private void closeAll() {
+        runTasks();
+        flushQueue.clear();
+        for (SelectionKey key : selector.keys()) {
+            NioClientHandler handler = (NioClientHandler) key.attachment();
+            handler.handleWrite();
+            handler.close();
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,70 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+// Accepts connections on a ServerSocketChannel and spreads them over a fixed pool of event loops
+class NioServerEngine {
+    private final Server server;
+    private final NioEventLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private int nextLoop = 0;
+
+    NioServerEngine(Server server, int eventLoopThreads) {
+        this.server = server;
+        this.loops = new NioEventLoop[Math.max(1, eventLoopThreads)];
+    }
+
+    // Binds the listening channel and starts the event loop threads
+    ServerSocket bind(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop("nio-event-loop-" + i, server.getWriteCoalesceDelayNanos());
+            loops[i].start();
+        }
+        return serverChannel.socket();
+    }
+
+    // Accepts clients until the listening channel is closed
+    void acceptLoop() throws IOException {
+        try {
+            while (serverChannel.isOpen()) {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                int clientId = server.nextClientId();
+
+                // Round-robin the connection onto one of the event loops
+                NioEventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+
+                NioClientHandler clientHandler = new NioClientHandler(channel, clientId, server, loop);
+                server.registerConnection(clientHandler);
+                loop.register(clientHandler);
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    // Closes the listening channel and stops every event loop
+    void shutdown() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException ignored) {}
+
+        for (NioEventLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Private messages waiting for clients whose connection is down, keyed by session token: a session is
+// what brings a client back under the same ID. The first messages for a session stay in memory; once
+// that fills up the rest go to a per-session spill file. Everything is handed back in one drain().
+public class OfflineInboxes {
+    private final Map<String, Inbox> inboxes = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int memoryLimit = 64;       // Messages per session kept in memory before spilling
+    private int maxMessages = 1024;     // Messages per session in total; further ones are rejected
+    private long ttlMillis = TimeUnit.HOURS.toMillis(24);  // Inboxes older than this are discarded
+    private Path directory;             // Spill files; a temporary directory is created on first spill
+
+    private static final class Inbox {
+        final ArrayDeque<String> memory = new ArrayDeque<>();
+        final long createdMillis = System.currentTimeMillis();
+        Path spillFile;
+        int spilled;
+
+        int size() {
+            return memory.size() + spilled;
+        }
+    }
+
+    // Keeps a message for the session; returns false if its inbox is full or the spill file cannot be written
+    public boolean store(String token, String text) {
+        lock.lock();
+        try {
+            Inbox inbox = inboxes.computeIfAbsent(token, key -> new Inbox());
+            if (inbox.size() >= maxMessages) {
+                return false;
+            }
+            // Once anything has spilled, later messages follow it to disk to keep their order
+            if (inbox.spilled == 0 && inbox.memory.size() < memoryLimit) {
+                inbox.memory.add(text);
+                return true;
+            }
+            return spill(token, inbox, text);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Removes and returns everything waiting for the session, oldest first
+    public List<String> drain(String token) {
+        lock.lock();
+        try {
+            Inbox inbox = inboxes.remove(token);
+            if (inbox == null) {
+                return List.of();
+            }
+            List<String> messages = new ArrayList<>(inbox.size());
+            messages.addAll(inbox.memory);
+            if (inbox.spillFile != null) {
+                readSpillFile(inbox.spillFile, messages);
+                deleteQuietly(inbox.spillFile);
+            }
+            return messages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Number of messages waiting for the session
+    public int size(String token) {
+        Inbox inbox = inboxes.get(token);
+        return inbox != null ? inbox.size() : 0;
+    }
+
+    // Number of sessions with waiting messages
+    public int getInboxCount() {
+        return inboxes.size();
+    }
+
+    // Discards inboxes older than the time-to-live
+    public void expire() {
+        long oldestAllowed = System.currentTimeMillis() - ttlMillis;
+        lock.lock();
+        try {
+            Iterator<Inbox> it = inboxes.values().iterator();
+            while (it.hasNext()) {
+                Inbox inbox = it.next();
+                if (inbox.createdMillis < oldestAllowed) {
+                    it.remove();
+                    if (inbox.spillFile != null) {
+                        deleteQuietly(inbox.spillFile);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Discards every inbox and spill file
+    public void clear() {
+        lock.lock();
+        try {
+            for (Inbox inbox : inboxes.values()) {
+                if (inbox.spillFile != null) {
+                    deleteQuietly(inbox.spillFile);
+                }
+            }
+            inboxes.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setMemoryLimit(int memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    public void setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    // Where spill files go; must be called before the first message spills
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    // Appends one length-prefixed UTF-8 record to the session's spill file
+    private boolean spill(String token, Inbox inbox, String text) {
+        try {
+            if (inbox.spillFile == null) {
+                if (directory == null) {
+                    directory = Files.createTempDirectory("chat-inbox");
+                }
+                Files.createDirectories(directory);
+                inbox.spillFile = directory.resolve(token + ".inbox"); // Tokens are hex
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                    inbox.spillFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            inbox.spilled++;
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not spill inbox for session " + token + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Reads the whole spill file in one go
+    private static void readSpillFile(Path file, List<String> messages) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    break; // Truncated by a crash mid-write
+                }
+                messages.add(new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8));
+                buffer.position(buffer.position() + length);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read inbox file " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,161 @@
+package server;
+
+import protocol.DeliveryStatus;
+import protocol.Frame;
+import protocol.FrameCompressor;
+import protocol.FrameType;
+import protocol.WireFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A message routed to one or more clients; encoded once per wire format and shared read-only by every recipient
+public final class OutboundMessage {
+    // Server-wide message sequence carried in binary frames
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    // Heartbeat frames never change, so every connection shares the same encoded bytes
+    private static final OutboundMessage PING = new OutboundMessage(FrameType.PING, "", Frame.NO_CLIENT, Frame.NO_CLIENT, 0, null);
+    private static final OutboundMessage PONG = new OutboundMessage(FrameType.PONG, "", Frame.NO_CLIENT, Frame.NO_CLIENT, 0, null);
+
+    private final FrameType type;
+    private final String text;
+    private final int sender;
+    private final int target;
+    private final long sequence;
+
+    // When the request it answers or routes was read off the socket, for the ingress-to-egress latency
+    // metrics; 0 for messages the server makes up itself
+    private final long ingressNanos;
+
+    // Wire format the connection switches to once this message has been written, or null
+    private final WireFormat switchTo;
+
+    // Encoded frames, created on first use; a racing double encode is harmless
+    private volatile ByteBuffer lineFrame;
+    private volatile ByteBuffer binaryFrame;
+    private volatile ByteBuffer compressedFrame;
+
+    public OutboundMessage(String text) {
+        this(text, Frame.NO_CLIENT, Frame.NO_CLIENT);
+    }
+
+    public OutboundMessage(String text, int sender, int target) {
+        this(text, sender, target, 0);
+    }
+
+    public OutboundMessage(String text, int sender, int target, long ingressNanos) {
+        this(FrameType.TEXT, text, sender, target, SEQUENCE.incrementAndGet(), null, ingressNanos);
+    }
+
+    private OutboundMessage(FrameType type, String text, int sender, int target, long sequence, WireFormat switchTo) {
+        this(type, text, sender, target, sequence, switchTo, 0);
+    }
+
+    private OutboundMessage(FrameType type, String text, int sender, int target, long sequence, WireFormat switchTo,
+            long ingressNanos) {
+        this.type = type;
+        this.text = text;
+        this.sender = sender;
+        this.target = target;
+        this.sequence = sequence;
+        this.switchTo = switchTo;
+        this.ingressNanos = ingressNanos;
+    }
+
+    // A message after which the writer changes the connection's wire format (used for the handshake reply)
+    public static OutboundMessage switchingTo(WireFormat format, String text) {
+        return new OutboundMessage(FrameType.TEXT, text, Frame.NO_CLIENT, Frame.NO_CLIENT, SEQUENCE.incrementAndGet(), format);
+    }
+
+    // Acknowledges the client's REQUEST frame with the given sequence
+    public static OutboundMessage ack(long correlationId, DeliveryStatus status, long ingressNanos) {
+        return new OutboundMessage(FrameType.ACK, status.name(), Frame.NO_CLIENT, Frame.NO_CLIENT, correlationId, null,
+                ingressNanos);
+    }
+
+    // Heartbeat probe for binary connections
+    public static OutboundMessage ping() {
+        return PING;
+    }
+
+    // Answer to a client's heartbeat probe
+    public static OutboundMessage pong() {
+        return PONG;
+    }
+
+    public FrameType getType() {
+        return type;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getSender() {
+        return sender;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getIngressNanos() {
+        return ingressNanos;
+    }
+
+    public WireFormat getSwitchTo() {
+        return switchTo;
+    }
+
+    // Returns a private view of the shared frame for the given wire format, positioned at its start
+    public ByteBuffer frame(WireFormat format) {
+        return format == WireFormat.BINARY ? binaryFrame() : lineFrame();
+    }
+
+    // Returns a private view of the shared UTF-8 "text\n" frame
+    public ByteBuffer lineFrame() {
+        ByteBuffer frame = lineFrame;
+        if (frame == null) {
+            frame = ByteBuffer.wrap((text + "\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+            lineFrame = frame;
+        }
+        return frame.duplicate();
+    }
+
+    // Returns a private view of the shared length-prefixed binary frame
+    public ByteBuffer binaryFrame() {
+        ByteBuffer frame = binaryFrame;
+        if (frame == null) {
+            byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+            frame = Frame.encode(type, sender, target, sequence, payload).asReadOnlyBuffer();
+            binaryFrame = frame;
+        }
+        return frame.duplicate();
+    }
+
+    // Returns a private view of the shared binary frame for connections that negotiated compression:
+    // deflated once for every such recipient if the payload is large enough and shrinks, plain otherwise
+    public ByteBuffer compressedFrame(FrameCompressor compressor) {
+        ByteBuffer frame = compressedFrame;
+        if (frame == null) {
+            byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+            byte[] deflated = compressor.deflate(payload);
+            frame = deflated != null
+                    ? Frame.encodeCompressed(type, sender, target, sequence, deflated).asReadOnlyBuffer()
+                    : binaryFrame();
+            compressedFrame = frame;
+        }
+        return frame.duplicate();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,190 @@
+package server;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded per-connection queue of outgoing messages; producers never block on a slow client.
+// Each entry keeps the time its latency is measured from: when the request behind it arrived, or
+// when it was queued for messages without one, such as cached rosters and replays.
+public class OutboundQueue<T> {
+    private static final int INITIAL_SLOTS = 16;
+
+    // Ring of queued items and their start times, grown by doubling up to the capacity
+    private Object[] items;
+    private long[] timedFromNanos;
+    private int head = 0;
+    private int count = 0;
+    private final int capacity;
+    private final SlowConsumerPolicy policy;
+    private final SlowConsumerStats stats;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private boolean closed = false;
+
+    // Written under the lock by the consumer's own poll/take, read back by that same consumer
+    private long lastTimedFromNanos;
+
+    public OutboundQueue(int capacity, SlowConsumerPolicy policy, SlowConsumerStats stats) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Outbound queue capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.stats = stats;
+        this.items = new Object[Math.min(capacity, INITIAL_SLOTS)];
+        this.timedFromNanos = new long[items.length];
+    }
+
+    // Adds an item, applying the slow-consumer policy when full; returns false if the client should be disconnected
+    public boolean offer(T item) {
+        return offer(item, System.nanoTime());
+    }
+
+    // Same, timing the item from the given moment instead of from now
+    public boolean offer(T item, long timedFromNanos) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (count >= capacity) {
+                stats.record(policy);
+                switch (policy) {
+                    case DROP_OLDEST:
+                        removeFirst();
+                        break;
+                    case DROP_NEWEST:
+                        return true;
+                    case DISCONNECT:
+                        return false;
+                }
+            }
+            if (count == items.length) {
+                grow();
+            }
+            int tail = (head + count) % items.length;
+            items[tail] = item;
+            this.timedFromNanos[tail] = timedFromNanos;
+            count++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Removes the next item without waiting, or returns null if the queue is empty
+    public T poll() {
+        lock.lock();
+        try {
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits up to the given time for the next item; returns null on timeout or once closed and drained
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (count == 0) {
+                if (closed || nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits for the next item; returns null once the queue is closed and drained
+    public T take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (count == 0) {
+                if (closed) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stops accepting new items and wakes any waiting writer
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops everything still queued
+    public void clear() {
+        lock.lock();
+        try {
+            Arrays.fill(items, null);
+            head = 0;
+            count = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Start time of the item last returned by poll or take; only meaningful to the single consumer
+    // that removed it
+    public long lastTimedFromNanos() {
+        return lastTimedFromNanos;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T removeFirst() {
+        if (count == 0) {
+            return null;
+        }
+        T item = (T) items[head];
+        items[head] = null;
+        lastTimedFromNanos = timedFromNanos[head];
+        head = (head + 1) % items.length;
+        count--;
+        return item;
+    }
+
+    private void grow() {
+        int slots = (int) Math.min((long) items.length * 2, capacity);
+        Object[] grownItems = new Object[slots];
+        long[] grownNanos = new long[slots];
+        for (int i = 0; i < count; i++) {
+            int from = (head + i) % items.length;
+            grownItems[i] = items[from];
+            grownNanos[i] = timedFromNanos[from];
+        }
+        items = grownItems;
+        timedFromNanos = grownNanos;
+        head = 0;
+    }
+}
@@ -0,0 +1,107 @@
+package server;
+
+// Offsets of one parsed client line. Each connection reuses a single instance, so parsing
+// allocates nothing; handlers read the name, target and payload straight from the line.
+public final class ParsedCommand {
+    CharSequence line;
+    int start;          // First character after trimming
+    int end;            // End (exclusive) after trimming
+    int nameEnd;        // End of the first token, i.e. the first space or end
+    int argumentStart;  // First character after that space, or -1 if there is none
+    boolean targetValid;
+    int targetId;
+
+    public CharSequence getLine() {
+        return line;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public boolean isEmpty() {
+        return start == end;
+    }
+
+    // First character of the trimmed line, or 0 for an empty line
+    public char getPrefix() {
+        return isEmpty() ? 0 : line.charAt(start);
+    }
+
+    public int getNameEnd() {
+        return nameEnd;
+    }
+
+    public boolean hasArgument() {
+        return argumentStart >= 0;
+    }
+
+    public int getArgumentStart() {
+        return argumentStart;
+    }
+
+    // Whether the first token equals the given name, ignoring case
+    public boolean nameEquals(String name) {
+        int length = nameEnd - start;
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(start + i);
+            char n = name.charAt(i);
+            if (c != n && Character.toLowerCase(c) != Character.toLowerCase(n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether the characters after the one-character prefix of the first token form a valid int (e.g. "@12")
+    public boolean isTargetValid() {
+        return targetValid;
+    }
+
+    public int getTargetId() {
+        return targetId;
+    }
+
+    // Parses the argument as a non-negative int without allocating; returns -1 if it is not one
+    public int argumentAsInt() {
+        if (!hasArgument()) {
+            return -1;
+        }
+        int from = argumentStart;
+        int to = end;
+        while (from < to && line.charAt(from) <= ' ') {
+            from++;
+        }
+        return CommandParser.parseInt(line, from, to, -1);
+    }
+
+    // Parses the argument as a non-negative long without allocating; returns -1 if it is not one
+    public long argumentAsLong() {
+        if (!hasArgument()) {
+            return -1;
+        }
+        int from = argumentStart;
+        int to = end;
+        while (from < to && line.charAt(from) <= ' ') {
+            from++;
+        }
+        return CommandParser.parseLong(line, from, to, -1);
+    }
+
+    // Trimmed line as a String, for handlers that need one
+    public String text() {
+        return line.subSequence(start, end).toString();
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
@@ -0,0 +1,125 @@
+package server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Outgoing half of the link to one peer node: a bounded queue of encoded frames drained by a thread
+// that keeps (re)connecting, so forwarding never blocks on a slow or unreachable peer
+class PeerLink {
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long RECONNECT_DELAY_MILLIS = 500;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final int peerId;
+    private final InetSocketAddress address;
+    private final ByteBuffer hello;
+    private final OutboundQueue<ByteBuffer> queue;
+    private final AtomicLong forwarded = new AtomicLong();
+    private final Thread writer;
+
+    private volatile boolean running = true;
+    private volatile Socket socket;  // Set once the hello went out, null while disconnected
+
+    PeerLink(int peerId, InetSocketAddress address, ByteBuffer hello, OutboundQueue<ByteBuffer> queue) {
+        this.peerId = peerId;
+        this.address = address;
+        this.hello = hello;
+        this.queue = queue;
+        this.writer = new Thread(this::writeLoop, "peer-link-" + peerId);
+        this.writer.setDaemon(true);
+    }
+
+    void start() {
+        writer.start();
+    }
+
+    // Queues an encoded client message; the buffer may be shared with other links and is never modified
+    void forward(ByteBuffer frame) {
+        forwarded.incrementAndGet();
+        queue.offer(frame);
+    }
+
+    // Queues a control frame, e.g. for the election
+    void control(ByteBuffer frame) {
+        queue.offer(frame);
+    }
+
+    boolean isConnected() {
+        Socket current = socket;
+        return current != null && !current.isClosed();
+    }
+
+    int getPeerId() {
+        return peerId;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    // Client messages handed to this link since it was created
+    long getForwardedCount() {
+        return forwarded.get();
+    }
+
+    void stop() {
+        running = false;
+        queue.close();
+        closeSocket();
+        writer.interrupt();
+    }
+
+    private void writeLoop() {
+        while (running) {
+            try (Socket peer = new Socket()) {
+                peer.connect(address, CONNECT_TIMEOUT_MILLIS);
+                peer.setTcpNoDelay(true);
+                peer.setKeepAlive(true);
+                OutputStream out = new BufferedOutputStream(peer.getOutputStream(), WRITE_BUFFER_SIZE);
+                write(out, hello);
+                out.flush();
+                socket = peer;
+
+                // Everything queued meanwhile goes out in as few writes as the buffer allows
+                ByteBuffer frame;
+                while ((frame = queue.take()) != null) {
+                    do {
+                        write(out, frame);
+                    } while ((frame = queue.poll()) != null);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Peer down or link broken; frames queued meanwhile wait for the next connection
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                socket = null;
+            }
+
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static void write(OutputStream out, ByteBuffer frame) throws IOException {
+        out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+    }
+
+    private void closeSocket() {
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
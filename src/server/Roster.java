@@ -0,0 +1,145 @@
+package server;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+// Member list kept up to date by addClient/removeClient. Each change bumps the version and
+// is published as a presence delta ("[PRESENCE <version>] JOIN|LEAVE|COORDINATOR ...").
+// Lock-free: every change builds the next immutable snapshot and installs it with a CAS, so the
+// current snapshot is always ready to send and a leaving client never waits on a joining one.
+public class Roster {
+    public static final String PRESENCE_PREFIX = "[PRESENCE ";
+
+    private static final RosterSnapshot EMPTY = new RosterSnapshot(0, new int[0], new String[0], -1);
+
+    private final AtomicReference<RosterSnapshot> current = new AtomicReference<>(EMPTY);
+
+    // Deltas whose CAS has won but which are not published yet, by version. Whoever holds the
+    // publishing lock drains them in order; the others only tryLock, so nobody waits on it.
+    private final ConcurrentHashMap<Long, String> unpublished = new ConcurrentHashMap<>();
+    private final ReentrantLock publishing = new ReentrantLock();
+    private volatile long published = 0;
+
+    // Receives each delta in version order, one call at a time, on whichever changing thread is
+    // publishing; it must not block
+    private volatile Consumer<String> presenceListener;
+
+    public void setPresenceListener(Consumer<String> presenceListener) {
+        this.presenceListener = presenceListener;
+    }
+
+    public void add(int clientId, String ip, int port) {
+        String entry = " [ID: " + clientId + "] [IP Address: " + ip + "] [Port: " + port + "]";
+        RosterSnapshot now;
+        RosterSnapshot next;
+        do {
+            now = current.get();
+            int[] ids = now.ids();
+            String[] entries = now.entries();
+            int index = Arrays.binarySearch(ids, clientId);
+            int[] nextIds;
+            String[] nextEntries;
+            if (index >= 0) {
+                nextIds = ids;
+                nextEntries = entries.clone();
+                nextEntries[index] = entry;
+            } else {
+                index = -index - 1;
+                nextIds = new int[ids.length + 1];
+                nextEntries = new String[ids.length + 1];
+                System.arraycopy(ids, 0, nextIds, 0, index);
+                System.arraycopy(entries, 0, nextEntries, 0, index);
+                nextIds[index] = clientId;
+                nextEntries[index] = entry;
+                System.arraycopy(ids, index, nextIds, index + 1, ids.length - index);
+                System.arraycopy(entries, index, nextEntries, index + 1, ids.length - index);
+            }
+            next = new RosterSnapshot(now.getVersion() + 1, nextIds, nextEntries, now.getCoordinatorId());
+        } while (!current.compareAndSet(now, next));
+        publish(next.getVersion(), "JOIN Client " + clientId + entry);
+    }
+
+    public void remove(int clientId) {
+        RosterSnapshot now;
+        RosterSnapshot next;
+        do {
+            now = current.get();
+            int[] ids = now.ids();
+            String[] entries = now.entries();
+            int index = Arrays.binarySearch(ids, clientId);
+            if (index < 0) {
+                return;
+            }
+            int[] nextIds = new int[ids.length - 1];
+            String[] nextEntries = new String[ids.length - 1];
+            System.arraycopy(ids, 0, nextIds, 0, index);
+            System.arraycopy(entries, 0, nextEntries, 0, index);
+            System.arraycopy(ids, index + 1, nextIds, index, ids.length - index - 1);
+            System.arraycopy(entries, index + 1, nextEntries, index, ids.length - index - 1);
+            next = new RosterSnapshot(now.getVersion() + 1, nextIds, nextEntries, now.getCoordinatorId());
+        } while (!current.compareAndSet(now, next));
+        publish(next.getVersion(), "LEAVE Client " + clientId);
+    }
+
+    public void setCoordinator(int clientId) {
+        syncCoordinator(() -> clientId);
+    }
+
+    // Re-reads the coordinator on every retry, so hand-offs racing to publish still leave the latest one
+    public void syncCoordinator(IntSupplier coordinator) {
+        RosterSnapshot now;
+        RosterSnapshot next;
+        int clientId;
+        do {
+            now = current.get();
+            clientId = coordinator.getAsInt();
+            if (now.getCoordinatorId() == clientId) {
+                return;
+            }
+            next = new RosterSnapshot(now.getVersion() + 1, now.ids(), now.entries(), clientId);
+        } while (!current.compareAndSet(now, next));
+        publish(next.getVersion(), clientId == -1 ? "COORDINATOR none" : "COORDINATOR Client " + clientId);
+    }
+
+    public void clear() {
+        RosterSnapshot now;
+        RosterSnapshot next;
+        do {
+            now = current.get();
+            next = new RosterSnapshot(now.getVersion() + 1, EMPTY.ids(), EMPTY.entries(), -1);
+        } while (!current.compareAndSet(now, next));
+        publish(next.getVersion(), "CLEAR");
+    }
+
+    public long getVersion() {
+        return current.get().getVersion();
+    }
+
+    public RosterSnapshot snapshot() {
+        return current.get();
+    }
+
+    private void publish(long version, String event) {
+        unpublished.put(version, event);
+        // Re-checked after unlocking: a delta added just before the unlock found the lock taken
+        // and left it to us
+        while (unpublished.containsKey(published + 1) && publishing.tryLock()) {
+            try {
+                String next;
+                while ((next = unpublished.remove(published + 1)) != null) {
+                    published++;
+                    Consumer<String> listener = presenceListener;
+                    if (listener != null) {
+                        listener.accept(PRESENCE_PREFIX + published + "] " + next);
+                    }
+                }
+            } finally {
+                publishing.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package server;
+
+// The layouts in which the member list is sent to clients
+public enum RosterFormat {
+    // Reply to the coordinator's !members command
+    MEMBERS("Active Clients:\n", "- "),
+
+    // Sent to a client whose !requestinfo the coordinator approved
+    GROUP_DETAILS("Group Member Details:\n\n", ""),
+
+    // Versioned full list that presence deltas apply on top of ("[PRESENCE_SNAPSHOT <version> <members>]");
+    // the member count lets line-protocol clients, which read each line as its own message, gather it
+    PRESENCE_SNAPSHOT("[PRESENCE_SNAPSHOT ", "");
+
+    private final String header;
+    private final String linePrefix;
+
+    RosterFormat(String header, String linePrefix) {
+        this.header = header;
+        this.linePrefix = linePrefix;
+    }
+
+    String getHeader(long version, int members) {
+        return this == PRESENCE_SNAPSHOT ? header + version + " " + members + "]\n" : header;
+    }
+
+    String getLinePrefix() {
+        return linePrefix;
+    }
+}
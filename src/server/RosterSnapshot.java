@@ -0,0 +1,65 @@
+package server;
+
+// Immutable view of the membership at one roster version; each format is rendered and encoded at most once
+public final class RosterSnapshot {
+    private final long version;
+    private final int[] ids;
+    private final String[] entries;
+    private final int coordinatorId;
+
+    // Rendered messages by RosterFormat ordinal, filled on first use; a racing double render is harmless
+    private final OutboundMessage[] rendered = new OutboundMessage[RosterFormat.values().length];
+
+    RosterSnapshot(long version, int[] ids, String[] entries, int coordinatorId) {
+        this.version = version;
+        this.ids = ids;
+        this.entries = entries;
+        this.coordinatorId = coordinatorId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int getCoordinatorId() {
+        return coordinatorId;
+    }
+
+    // Shared with the next snapshot Roster builds; never modified once published
+    int[] ids() {
+        return ids;
+    }
+
+    String[] entries() {
+        return entries;
+    }
+
+    // Member list in the given format, shared by every client it is sent to until membership changes
+    public OutboundMessage message(RosterFormat format) {
+        OutboundMessage message = rendered[format.ordinal()];
+        if (message == null) {
+            message = new OutboundMessage(render(format));
+            rendered[format.ordinal()] = message;
+        }
+        return message;
+    }
+
+    public String render(RosterFormat format) {
+        OutboundMessage message = rendered[format.ordinal()];
+        if (message != null) {
+            return message.getText();
+        }
+
+        StringBuilder list = new StringBuilder(format.getHeader(version, ids.length));
+        for (int i = 0; i < ids.length; i++) {
+            list.append(format.getLinePrefix()).append("Client ").append(ids[i]);
+            if (ids[i] == coordinatorId) list.append(" (Coordinator)");
+            list.append(entries[i]).append('\n');
+        }
+        return list.toString();
+    }
+}
@@ -1,16 +1,29 @@
 package server;
 
+import protocol.DeliveryStatus;
+import protocol.Frame;
+import protocol.FrameCompressor;
+import protocol.LoopbackTransport;
+import protocol.SessionHandshake;
+import protocol.WriteMode;
+
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Server {
     // Main server socket to accept client connections
-    protected ServerSocket serverSocket;
+    protected volatile ServerSocket serverSocket;
 
     // Stores all active clients using their ID
     protected Map<Integer, ClientHandler> clients = new ConcurrentHashMap<>();
@@ -18,96 +31,596 @@ public class Server {
     // Fake IP mapping for each client
     protected Map<Integer, String> fakeIPs = new ConcurrentHashMap<>();
 
-    // Generates unique client IDs
+    // Versioned member list with pre-rendered snapshots
+    protected final Roster roster = new Roster();
+
+    // Channel name to subscribers; publishing only touches a channel's members
+    protected final ChannelIndex channels = new ChannelIndex();
+
+    // Generates unique client IDs; in a cluster each node steps over the IDs issued by the others
     protected AtomicInteger clientIdGenerator = new AtomicInteger(1);
+    private int clientIdStride = 1;
+
+    // Peer nodes sharing the ID space, or null when this server runs alone
+    private volatile Cluster cluster;
 
-    // ID of the current coordinator client
-    protected int coordinatorId = -1;
+    // Coordinator state, only ever changed by compare-and-set: the coordinator's client ID, VACANT while
+    // there is nobody to appoint, or FENCED while this server may not host a coordinator (a cluster
+    // node that is not the elected leader). Whoever wins a transition announces it, nobody else
+    private static final int VACANT = -1;
+    private static final int FENCED = -2;
+    private final AtomicInteger coordinator = new AtomicInteger(VACANT);
+
+    // Members in the order they joined; the oldest one takes over from a coordinator that leaves
+    private final JoinOrder joinOrder = new JoinOrder();
+
+    // Guards joins, sessions and offline inboxes; a lock rather than a monitor so virtual threads don't pin.
+    // Leaving and coordinator changes never take it
+    protected final ReentrantLock membershipLock = new ReentrantLock();
 
     // Used to generate random IP suffixes
     private final Random rand = new Random();
 
+    // Connection engine and the number of selector threads used in NIO mode
+    private EngineMode engineMode = EngineMode.THREAD_PER_CLIENT;
+    private int eventLoopThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private NioServerEngine nioEngine;
+
+    // Runs ClientHandler loops and coordinator tasks (platform or virtual threads); shut down by stop()
+    // only if the server created it
+    private ExecutorService handlerExecutor;
+    private boolean ownsHandlerExecutor = false;
+
+    // Per-connection outbound queue size and what happens when a client falls behind
+    private int outboundQueueCapacity = 4096;
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+    private final SlowConsumerStats slowConsumerStats = new SlowConsumerStats();
+
+    // Dispatch table for client commands; register custom commands before start()
+    private final CommandRegistry commandRegistry = CommandRegistry.withDefaults();
+
+    // Write coalescing: at most this many bytes per write, lingering up to the delay in throughput mode
+    private WriteMode writeMode = WriteMode.LATENCY;
+    private int writeCoalesceBytes = 64 * 1024;
+    private long writeCoalesceDelayMicros = 1000;
+
+    // Seconds between full presence snapshots sent to the coordinator; 0 sends only deltas
+    private int rosterResyncSeconds = 0;
+
+    // Durable history of broadcasts and private messages, or null when history is off
+    private volatile MessageLog messageLog;
+
+    // Private messages for clients that are offline, and the timer that expires old ones
+    private final OfflineInboxes offlineInboxes = new OfflineInboxes();
+    private TimerWheel.Timeout inboxExpiry;
+
+    // Resumable sessions by token; 0 grace disables them and clients are registered as soon as they connect
+    static final long ADMISSION_TIMEOUT_MILLIS = 500;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom tokenRandom = new SecureRandom();
+    private long sessionGraceMillis = 0;
+    private int sessionReplayCapacity = 1024;
+
+    // One timer thread for every periodic or delayed task, created on first use
+    private static final long TIMER_TICK_MILLIS = 100;
+    private static final int TIMER_WHEEL_SIZE = 512;
+    private TimerWheel timerWheel;
+
+    // Binary connections are pinged this often; connections silent for the idle timeout are closed (0 disables either)
+    private long heartbeatIntervalMillis = 30_000;
+    private long idleTimeoutMillis = 0;
+
+    // Counters, gauges and latency histograms; exposed over JMX while running and printed every few seconds if set
+    private final ServerMetrics metrics = new ServerMetrics(this);
+    private int metricsDumpSeconds = 0;
+
+    // Frame compression offered to binary clients that ask for it, and the shared compressor with its counters
+    private boolean compressionEnabled = true;
+    private FrameCompressor frameCompressor = new FrameCompressor();
+
+    public Server() {
+        roster.setPresenceListener(this::publishPresence);
+    }
+
+    public Server(EngineMode engineMode) {
+        this();
+        this.engineMode = engineMode;
+    }
+
     // Starts the server and listens for incoming client connections
     public void start(int port) {
+        if (cluster != null) {
+            cluster.start(this);
+        }
+        if (engineMode == EngineMode.NIO) {
+            startNio(port);
+            return;
+        }
+
         try {
             serverSocket = new ServerSocket(port);
             System.out.println("Server started on port " + port);
+            startMetrics();
 
             // Continuously accept new client connections
             while (!serverSocket.isClosed()) {
                 Socket clientSocket = serverSocket.accept();
-                int clientId = clientIdGenerator.getAndIncrement();
+                clientSocket.setKeepAlive(true); // Lets the OS notice dead peers on line connections too
+                int clientId = nextClientId();
 
                 // Create and store a new handler for the connected client
                 ClientHandler clientHandler = new ClientHandler(clientSocket, clientId, this);
-                addClient(clientHandler);
+                registerConnection(clientHandler);
 
-                // If no coordinator exists yet, assign this client as coordinator
-                if (coordinatorId == -1) {
-                    coordinatorId = clientId;
-                    clientHandler.setCoordinator(true);
-                    System.out.println("Client " + clientId + " is now the coordinator.");
-                }
-
-                // Start the thread for handling client communication
-                clientHandler.start();
+                // Start the task for handling client communication
+                getHandlerExecutor().execute(clientHandler);
             }
         } catch (IOException e) {
             System.out.println("Server socket closed.");
         }
     }
 
-    // Sends a message to all clients except the sender
-    public synchronized void broadcastMessage(String message, int senderId) {
+    // Connects a client living in this JVM without a socket and returns the client's end, for
+    // Client.connect(Transport). The connection is served like a thread-per-client one in either
+    // engine mode, and works whether or not the server is listening.
+    public LoopbackTransport connectLoopback() {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        ClientHandler clientHandler = new ClientHandler(ends[1], nextClientId(), this);
+        registerConnection(clientHandler);
+        getHandlerExecutor().execute(clientHandler);
+        return ends[0];
+    }
+
+    // Runs the selector-based engine; blocks until the server is stopped
+    private void startNio(int port) {
+        try {
+            nioEngine = new NioServerEngine(this, eventLoopThreads);
+            serverSocket = nioEngine.bind(port);
+            System.out.println("Server started on port " + port + " (NIO, " + eventLoopThreads + " event loops)");
+            startMetrics();
+            nioEngine.acceptLoop();
+        } catch (IOException e) {
+            System.out.println("Server socket closed.");
+        }
+    }
+
+    // Registers a newly connected client and makes it coordinator if none exists yet
+    protected void acceptClient(ClientHandler clientHandler) {
+        addClient(clientHandler);
+        appointIfVacant();
+    }
+
+    // Appoints the oldest member if the role is vacant; a lost race means another thread appointed someone
+    private void appointIfVacant() {
+        ClientHandler candidate;
+        while (coordinator.get() == VACANT && (candidate = joinOrder.oldest()) != null) {
+            int candidateId = candidate.getClientId();
+            if (coordinator.compareAndSet(VACANT, candidateId)) {
+                if (!joinOrder.contains(candidate)) {
+                    handOff(candidateId); // Left before it was appointed, possibly without noticing
+                    return;
+                }
+                candidate.setCoordinator(true);
+                roster.syncCoordinator(this::getCoordinatorId);
+                System.out.println("Client " + candidateId + " is now the coordinator.");
+                notifyPeers("[COORDINATOR_CHANGED] Client " + candidateId + " [IP Address: " + getFakeClientIP(candidateId) + "]");
+                return;
+            }
+        }
+    }
+
+    // Moves the role from a coordinator that left to the oldest remaining member, which is the first
+    // entry of the join order. Only the thread whose compare-and-set succeeds announces the successor;
+    // if the successor left in the meantime the role moves on again
+    private void handOff(int leavingId) {
+        int expected = leavingId;
+        while (true) {
+            ClientHandler successor = joinOrder.oldest();
+            int successorId = successor != null ? successor.getClientId() : VACANT;
+            if (!coordinator.compareAndSet(expected, successorId)) {
+                return; // Already handed off by someone else, or fenced by the election
+            }
+            if (successor == null) {
+                roster.syncCoordinator(this::getCoordinatorId);
+                appointIfVacant(); // Someone may have joined after the join order looked empty
+                return;
+            }
+            if (joinOrder.contains(successor)) {
+                successor.setCoordinator(true);
+                roster.syncCoordinator(this::getCoordinatorId);
+                System.out.println("Client " + successorId + " is now the coordinator.");
+
+                // Notify all clients about the new coordinator
+                String info = "Client " + successorId + " [IP Address: " + getFakeClientIP(successorId) + "]";
+                OutboundMessage notice = new OutboundMessage("[COORDINATOR_CHANGED] " + info);
+                for (ClientHandler ch : clients.values()) {
+                    ch.send(notice);
+                }
+                notifyPeers(notice.getText());
+                return;
+            }
+            expected = successorId;
+        }
+    }
+
+    // Sends a message to all clients except the sender, encoding it only once; in a cluster a client's
+    // broadcast is also forwarded once to every other node, while server notices stay on this node
+    public void broadcastMessage(String message, int senderId) {
+        broadcastMessage(message, senderId, System.nanoTime());
+    }
+
+    // Same, for a message whose request arrived at the given time; recipients' latency is measured from it
+    public void broadcastMessage(String message, int senderId, long arrivalNanos) {
+        deliverBroadcast(message, senderId, arrivalNanos);
+        Cluster peers = cluster;
+        if (peers != null && senderId != Frame.NO_CLIENT) {
+            peers.forwardBroadcast(senderId, message);
+        }
+    }
+
+    // Fans a broadcast out to this node's clients, including broadcasts forwarded by peer nodes
+    void deliverBroadcast(String message, int senderId, long arrivalNanos) {
+        OutboundMessage frame = new OutboundMessage(message, senderId, Frame.NO_CLIENT, arrivalNanos);
         for (ClientHandler client : clients.values()) {
             if (client.getClientId() != senderId) {
-                client.sendMessage(message);
+                client.send(frame);
             }
         }
+
+        logMessage(senderId, Frame.NO_CLIENT, message);
+    }
+
+    // Sends a message to every subscriber of the channel except the sender
+    public void publishToChannel(Channel channel, String message, int senderId) {
+        publishToChannel(channel, message, senderId, System.nanoTime());
     }
 
-    // Sends a private message to a specific client
-    public synchronized void sendPrivateMessage(int targetClientId, String message) {
+    public void publishToChannel(Channel channel, String message, int senderId, long arrivalNanos) {
+        channel.publish(new OutboundMessage(message, senderId, Frame.NO_CLIENT, arrivalNanos), senderId);
+    }
+
+    // Sends a private message to a specific client, keeping it in the session's inbox while the client
+    // is away and may still resume; a client without a session that left is gone for good
+    public DeliveryStatus sendPrivateMessage(int targetClientId, String message) {
+        return sendPrivateMessage(targetClientId, message, System.nanoTime());
+    }
+
+    // Same, for a message whose request arrived at the given time; a message kept in the inbox is timed
+    // from when it is finally queued
+    public DeliveryStatus sendPrivateMessage(int targetClientId, String message, long arrivalNanos) {
+        Cluster peers = cluster;
+        if (peers != null && !peers.isLocal(targetClientId)) {
+            return peers.forwardPrivate(targetClientId, message);
+        }
+
         ClientHandler targetClient = clients.get(targetClientId);
-        if (targetClient != null) {
-            targetClient.sendMessage(message);
+        if (targetClient == null) {
+            return DeliveryStatus.REJECTED; // Never issued, or left without a session to come back to
+        }
+        Session session = targetClient.getSession();
+        if (session == null || !session.isDetached()) {
+            deliverPrivateMessage(targetClient, message, arrivalNanos);
+            return DeliveryStatus.DELIVERED;
+        }
+
+        // Checked again under the lock so the message cannot slip past a resume draining the inbox
+        membershipLock.lock();
+        try {
+            targetClient = clients.get(targetClientId);
+            session = targetClient != null ? targetClient.getSession() : null;
+            if (targetClient == null) {
+                return DeliveryStatus.REJECTED;
+            }
+            if (session == null || !session.isDetached()) {
+                deliverPrivateMessage(targetClient, message, arrivalNanos);
+                return DeliveryStatus.DELIVERED;
+            }
+            if (!offlineInboxes.store(session.getToken(), message)) {
+                return DeliveryStatus.REJECTED; // The inbox is full
+            }
+            if (inboxExpiry == null) {
+                inboxExpiry = getTimerWheel().scheduleAtFixedRate(offlineInboxes::expire, 1, 1, TimeUnit.MINUTES);
+            }
+            logMessage(Frame.NO_CLIENT, targetClientId, message);
+            return DeliveryStatus.QUEUED;
+        } finally {
+            membershipLock.unlock();
         }
     }
 
-    // Removes a client and handles coordinator reassignment if needed
-    public synchronized void removeClient(int clientId) {
-        clients.remove(clientId);
+    private void deliverPrivateMessage(ClientHandler targetClient, String message, long arrivalNanos) {
+        int targetClientId = targetClient.getClientId();
+        targetClient.send(new OutboundMessage(message, Frame.NO_CLIENT, targetClientId, arrivalNanos));
+        logMessage(Frame.NO_CLIENT, targetClientId, message);
+    }
+
+    private void logMessage(int senderId, int targetClientId, String message) {
+        MessageLog log = messageLog;
+        if (log != null) {
+            log.append(senderId, targetClientId, message);
+        }
+    }
+
+    // Removes a client and hands the coordinator role on if it had it; takes no server-wide lock
+    public void removeClient(int clientId) {
+        ClientHandler removed = clients.remove(clientId);
         fakeIPs.remove(clientId);
+        roster.remove(clientId);
+        if (removed != null) {
+            joinOrder.remove(removed);
+        }
 
-        // If the removed client was coordinator, reassign a new one
-        if (clientId == coordinatorId) {
-            if (!clients.isEmpty()) {
-                int newCoordinatorId = clients.keySet().iterator().next();
-                coordinatorId = newCoordinatorId;
-                ClientHandler newCoordinator = clients.get(newCoordinatorId);
-
-                if (newCoordinator != null) {
-                    newCoordinator.setCoordinator(true);
-
-                    // Notify all clients about the new coordinator
-                    String info = "Client " + newCoordinatorId + " [IP Address: " + getFakeClientIP(newCoordinatorId) + "]";
-                    for (ClientHandler ch : clients.values()) {
-                        ch.sendMessage("[COORDINATOR_CHANGED] " + info);
-                    }
-                }
-            } else {
-                // No clients left, reset coordinator
-                coordinatorId = -1;
-            }
+        // Checked after leaving the join order, so a concurrent hand-off either skips this client or
+        // sees it gone and moves on
+        if (coordinator.get() == clientId) {
+            handOff(clientId);
         }
 
         updateClientList();
     }
 
+    // Called by the cluster election when this node wins or loses the lease. The winner appoints its
+    // oldest client; the loser demotes its coordinator before the election may pick another node
+    void setCoordinatorHost(boolean host) {
+        if (host) {
+            if (coordinator.compareAndSet(FENCED, VACANT)) {
+                appointIfVacant();
+            }
+            return;
+        }
+        int previousId = coordinator.getAndSet(FENCED);
+        if (previousId == FENCED) {
+            return;
+        }
+        roster.syncCoordinator(this::getCoordinatorId);
+        ClientHandler previous = previousId > 0 ? clients.get(previousId) : null;
+        if (previous != null) {
+            previous.setCoordinator(false);
+            previous.sendMessage("You are no longer the coordinator.");
+        }
+    }
+
+    public boolean isCoordinatorHost() {
+        return coordinator.get() != FENCED;
+    }
+
+    // Tells the clients of the other nodes about a coordinator change on this node
+    private void notifyPeers(String notice) {
+        Cluster peers = cluster;
+        if (peers != null) {
+            peers.forwardBroadcast(Frame.NO_CLIENT, notice);
+        }
+    }
+
     // Adds a new client to the server's list
-    public synchronized void addClient(ClientHandler clientHandler) {
-        clients.put(clientHandler.getClientId(), clientHandler);
-        updateClientList();
+    public void addClient(ClientHandler clientHandler) {
+        membershipLock.lock();
+        try {
+            int clientId = clientHandler.getClientId();
+            clients.put(clientId, clientHandler);
+            joinOrder.add(clientHandler);
+            roster.add(clientId, getFakeClientIP(clientId), clientHandler.getClientPort());
+            updateClientList();
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    // Next ID for a new connection, unique across the cluster
+    int nextClientId() {
+        return clientIdGenerator.getAndAdd(clientIdStride);
+    }
+
+    // Registers a new connection right away, or with sessions enabled once it starts or resumes one
+    void registerConnection(ClientHandler clientHandler) {
+        metrics.connectionOpened();
+        if (isSessionsEnabled()) {
+            clientHandler.deferAdmission();
+        } else {
+            acceptClient(clientHandler);
+        }
+    }
+
+    // Registers a deferred connection as a new client and greets it
+    void admit(ClientHandler clientHandler, boolean withSession) {
+        if (withSession) {
+            startSession(clientHandler);
+        }
+        acceptClient(clientHandler);
+        clientHandler.onConnect();
+    }
+
+    // Gives the client a resumable session and tells it the token
+    Session startSession(ClientHandler clientHandler) {
+        byte[] bytes = new byte[16];
+        tokenRandom.nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+
+        Session session = new Session(token, clientHandler.getClientId(), sessionReplayCapacity, clientHandler);
+        sessions.put(token, session);
+        clientHandler.setSession(session);
+        clientHandler.sendMessage(SessionHandshake.started(token));
+        return session;
+    }
+
+    // Moves a session onto a new connection: same ID, role and channels, no join/leave or coordinator
+    // change visible to anyone else; returns false if the token is unknown or expired
+    boolean resumeSession(ClientHandler clientHandler, String token, long lastSequence) {
+        membershipLock.lock();
+        try {
+            Session session = sessions.get(token);
+            if (session == null) {
+                return false;
+            }
+            ClientHandler previous = session.getHandler();
+            List<OutboundMessage> missed = session.missedSince(lastSequence);
+
+            clientHandler.takeOver(session, previous);
+            session.attach(clientHandler);
+            clients.put(session.getClientId(), clientHandler);
+            joinOrder.replace(previous, clientHandler);
+            channels.transfer(previous, clientHandler);
+
+            // The old connection may not have noticed it is dead yet; it sees it was superseded and just closes
+            previous.closeConnection();
+            clientHandler.resumed(missed);
+            return true;
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    // Called when a session's connection drops; returns true if the client stays registered,
+    // either waiting for it to resume or because another connection already took the session over
+    boolean detachSession(ClientHandler clientHandler) {
+        membershipLock.lock();
+        try {
+            Session session = clientHandler.getSession();
+            if (session.getHandler() != clientHandler) {
+                return true;
+            }
+            if (!sessions.containsKey(session.getToken()) || !isSessionsEnabled()) {
+                return false;
+            }
+            session.detach(getTimerWheel().schedule(() -> expireSession(session, clientHandler),
+                    sessionGraceMillis, TimeUnit.MILLISECONDS));
+            return true;
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    // The grace window passed without a resume: remove the client as if it had just disconnected
+    private void expireSession(Session session, ClientHandler clientHandler) {
+        membershipLock.lock();
+        try {
+            if (session.getHandler() == clientHandler && session.isDetached() && sessions.remove(session.getToken(), session)) {
+                offlineInboxes.drain(session.getToken()); // Nobody can come back for these any more
+                clientHandler.leaveServer();
+            }
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    // The client is leaving for good; its next disconnect is handled as usual
+    void endSession(ClientHandler clientHandler) {
+        Session session = clientHandler.getSession();
+        if (session != null) {
+            sessions.remove(session.getToken(), session);
+            offlineInboxes.drain(session.getToken());
+            clientHandler.setSession(null);
+        }
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    // Joins the cluster: client IDs are taken from this node's share of the ID space, client broadcasts
+    // and private messages for clients of other nodes are forwarded, and the coordinator is hosted by
+    // the elected leader only; must be called before start()
+    public void setCluster(Cluster cluster) {
+        this.cluster = cluster;
+        coordinator.set(FENCED); // Until this node is elected
+        this.clientIdStride = cluster.getNodeCount();
+        clientIdGenerator.set(cluster.getNodeId() + 1);
+    }
+
+    public boolean isSessionsEnabled() {
+        return sessionGraceMillis > 0;
+    }
+
+    public long getSessionGraceMillis() {
+        return sessionGraceMillis;
+    }
+
+    // How long a dropped client keeps its ID, role and channels waiting to resume; 0 disables sessions.
+    // Must be called before start()
+    public void setSessionGraceMillis(long sessionGraceMillis) {
+        this.sessionGraceMillis = sessionGraceMillis;
+    }
+
+    // Messages kept per session for replay on resume; must be called before start()
+    public void setSessionReplayCapacity(int sessionReplayCapacity) {
+        this.sessionReplayCapacity = sessionReplayCapacity;
+    }
+
+    // Number of sessions that are active or waiting to resume
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    // Forwards a roster delta to the coordinator, which tracks membership from the presence stream
+    protected void publishPresence(String delta) {
+        ClientHandler current = clients.get(getCoordinatorId());
+        if (current != null) {
+            current.send(new OutboundMessage(delta));
+        }
+    }
+
+    public int getRosterResyncSeconds() {
+        return rosterResyncSeconds;
+    }
+
+    // Optional periodic full snapshot on top of the delta stream (the old 20-second dump); 0 disables it
+    public void setRosterResyncSeconds(int rosterResyncSeconds) {
+        this.rosterResyncSeconds = rosterResyncSeconds;
+    }
+
+    // Shared scheduler for coordinator resyncs, heartbeats and idle checks, created on first use
+    public TimerWheel getTimerWheel() {
+        membershipLock.lock();
+        try {
+            if (timerWheel == null) {
+                timerWheel = new TimerWheel("server-timer", TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE);
+            }
+            return timerWheel;
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    public long getHeartbeatIntervalMillis() {
+        return heartbeatIntervalMillis;
+    }
+
+    // How often binary connections are pinged; line clients cannot answer pings and are not probed
+    public void setHeartbeatIntervalMillis(long heartbeatIntervalMillis) {
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    // Closes connections that send nothing (not even a pong) for this long; 0 keeps idle connections open
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    // Records routed messages so clients can replay them with !replay; the server closes it on stop()
+    public void setMessageLog(MessageLog messageLog) {
+        this.messageLog = messageLog;
+    }
+
+    // Private messages waiting for clients whose session is detached
+    public OfflineInboxes getOfflineInboxes() {
+        return offlineInboxes;
+    }
+
+    // Returns the channel index
+    public ChannelIndex getChannels() {
+        return channels;
+    }
+
+    // Returns the versioned member list
+    public Roster getRoster() {
+        return roster;
     }
 
     // Returns the full map of active clients
@@ -116,34 +629,205 @@ public class Server {
     }
 
     // Gracefully shuts down the server and disconnects all clients
-    public synchronized void stop() {
+    public void stop() {
+        // Leave the cluster first; the election takes its own lock before the membership lock
+        if (cluster != null) {
+            cluster.stop();
+        }
+        metrics.unregister();
+
+        membershipLock.lock();
         try {
             // Inform all clients before shutting down
+            OutboundMessage notice = new OutboundMessage("Server is shutting down.");
             for (ClientHandler client : clients.values()) {
-                client.sendMessage("Server is shutting down.");
+                client.send(notice);
             }
 
             // Clear internal mappings and close the server socket
             clients.clear();
             fakeIPs.clear();
+            joinOrder.clear();
+            roster.clear();
+            channels.clear();
+            offlineInboxes.clear();
+            sessions.clear();
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
+            if (nioEngine != null) {
+                nioEngine.shutdown();
+            }
+            if (timerWheel != null) {
+                timerWheel.stop();
+                timerWheel = null;
+                inboxExpiry = null;
+            }
+            if (messageLog != null) {
+                messageLog.close();
+            }
+            // Idle pool threads are not daemons and would keep the JVM alive; running handlers finish
+            // as their connections close
+            if (ownsHandlerExecutor) {
+                handlerExecutor.shutdown();
+                handlerExecutor = null;
+                ownsHandlerExecutor = false;
+            }
 
             System.out.println("Server stopped.");
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            membershipLock.unlock();
         }
     }
 
     // Hook for GUI to update client list display (overridden in subclasses)
-    public synchronized void updateClientList() {
+    public void updateClientList() {
         // GUI will override this method
     }
 
-    // Returns the ID of the current coordinator
+    // Returns the port the server is listening on, or -1 if not started
+    public int getLocalPort() {
+        ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+
+    public EngineMode getEngineMode() {
+        return engineMode;
+    }
+
+    // Must be called before start()
+    public void setEngineMode(EngineMode engineMode) {
+        this.engineMode = engineMode;
+    }
+
+    // Number of selector threads used by the NIO engine; must be called before start()
+    public void setEventLoopThreads(int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    // Executor running handler loops and coordinator tasks, created on first use
+    public ExecutorService getHandlerExecutor() {
+        membershipLock.lock();
+        try {
+            if (handlerExecutor == null) {
+                handlerExecutor = HandlerExecutors.platformThreads();
+                ownsHandlerExecutor = true;
+            }
+            return handlerExecutor;
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    // Use e.g. HandlerExecutors.virtualThreads() to run each connection on a virtual thread; call before start()
+    public void setHandlerExecutor(ExecutorService handlerExecutor) {
+        membershipLock.lock();
+        try {
+            this.handlerExecutor = handlerExecutor;
+            ownsHandlerExecutor = false;
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    // Creates the outbound queue for a new connection using the current settings
+    protected <T> OutboundQueue<T> createOutboundQueue() {
+        return new OutboundQueue<>(outboundQueueCapacity, slowConsumerPolicy, slowConsumerStats);
+    }
+
+    // Maximum number of messages queued per connection; must be called before start()
+    public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+        this.outboundQueueCapacity = outboundQueueCapacity;
+    }
+
+    // Applied when a connection's outbound queue is full; must be called before start()
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getMetricsDumpSeconds() {
+        return metricsDumpSeconds;
+    }
+
+    // Prints the metrics every given number of seconds while running (0 disables); must be called before start()
+    public void setMetricsDumpSeconds(int metricsDumpSeconds) {
+        this.metricsDumpSeconds = metricsDumpSeconds;
+    }
+
+    // Publishes the metrics under the port actually bound and starts the periodic dump
+    private void startMetrics() {
+        metrics.register(getLocalPort());
+        if (metricsDumpSeconds > 0) {
+            getTimerWheel().scheduleAtFixedRate(() -> System.out.println(metrics.dump()),
+                    metricsDumpSeconds, metricsDumpSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    // Whether binary clients may negotiate frame compression; must be called before start()
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public FrameCompressor getFrameCompressor() {
+        return frameCompressor;
+    }
+
+    // Smallest payload in bytes sent deflated to clients using compression; must be called before start()
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.frameCompressor = new FrameCompressor(compressionThreshold);
+    }
+
+    // How often each slow-consumer policy has fired
+    public SlowConsumerStats getSlowConsumerStats() {
+        return slowConsumerStats;
+    }
+
+    public CommandRegistry getCommandRegistry() {
+        return commandRegistry;
+    }
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    // LATENCY writes each turn's queued messages at once, THROUGHPUT waits for more; must be called before start()
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    public int getWriteCoalesceBytes() {
+        return writeCoalesceBytes;
+    }
+
+    // Upper bound on the bytes combined into a single write; must be called before start()
+    public void setWriteCoalesceBytes(int writeCoalesceBytes) {
+        this.writeCoalesceBytes = writeCoalesceBytes;
+    }
+
+    // How long a throughput-mode writer waits for more messages before writing, in nanoseconds
+    public long getWriteCoalesceDelayNanos() {
+        return writeMode == WriteMode.THROUGHPUT ? writeCoalesceDelayMicros * 1000 : 0;
+    }
+
+    // Latency budget for throughput mode; must be called before start()
+    public void setWriteCoalesceDelayMicros(long writeCoalesceDelayMicros) {
+        this.writeCoalesceDelayMicros = writeCoalesceDelayMicros;
+    }
+
+    // Returns the ID of the current coordinator, or -1 if there is none
     public int getCoordinatorId() {
-        return coordinatorId;
+        int current = coordinator.get();
+        return current > 0 ? current : -1;
     }
 
     // Generates and returns a fake IP address for the client
@@ -6,8 +6,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 public class ServerGUI {
 
@@ -37,7 +36,7 @@ public class ServerGUI {
     private int clientCount = 0;
     private String coordinatorName = null;
     private ClientGUI coordinatorGui = null;
-    private Timer coordinatorTimer = null;
+    private TimerWheel.Timeout coordinatorTimer = null;
 
     public static void main(String[] args) {
         EventQueue.invokeLater(() -> {
@@ -150,6 +149,7 @@ public class ServerGUI {
     private void addNewClient() {
         String clientName = "Client " + (++clientCount);
         ClientGUI clientGui = new ClientGUI();
+        clientGui.setConnector(server::connectLoopback); // Same process, so skip the network stack
         JPanel clientPanel = clientGui.createClientPanel(clientName, "");
 
         clientPanels.put(clientName, clientPanel);
@@ -255,23 +255,20 @@ public class ServerGUI {
     // Starts a repeating task that lets the coordinator print the client list
     private void startCoordinatorCheck() {
         stopCoordinatorCheck();
-        if (coordinatorGui == null) return;
-
-        coordinatorTimer = new Timer(true);
-        coordinatorTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                SwingUtilities.invokeLater(() -> {
-                    if (coordinatorGui != null) {
-                        StringBuilder builder = new StringBuilder("Active Clients:\n");
-                        for (int i = 0; i < clientListModel.size(); i++) {
-                            builder.append(" - ").append(clientListModel.getElementAt(i)).append("\n");
-                        }
-                        coordinatorGui.logToTextArea(builder.toString());
+        if (coordinatorGui == null || server == null) return;
+
+        // Runs on the server's shared timer instead of a dedicated Timer thread
+        coordinatorTimer = server.getTimerWheel().scheduleAtFixedRate(() -> {
+            SwingUtilities.invokeLater(() -> {
+                if (coordinatorGui != null) {
+                    StringBuilder builder = new StringBuilder("Active Clients:\n");
+                    for (int i = 0; i < clientListModel.size(); i++) {
+                        builder.append(" - ").append(clientListModel.getElementAt(i)).append("\n");
                     }
-                });
-            }
-        }, 0, 20000); // Every 20 seconds
+                    coordinatorGui.logToTextArea(builder.toString());
+                }
+            });
+        }, 0, 20, TimeUnit.SECONDS); // Every 20 seconds
     }
 
     // Stops the coordinator update timer
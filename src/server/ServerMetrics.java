@@ -0,0 +1,238 @@
+package server;
+
+import protocol.FrameCompressor;
+import protocol.FrameType;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Telemetry for one server. Counters are LongAdders and latencies go into LatencyHistograms, so the
+// I/O threads only ever increment; gauges such as queue depth are computed when someone reads them.
+public class ServerMetrics implements ServerMetricsMXBean {
+    private final Server server;
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LatencyHistogram messageLatency = new LatencyHistogram();
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+
+    // Name under which this server is registered with the platform MBean server, or null
+    private ObjectName objectName;
+
+    ServerMetrics(Server server) {
+        this.server = server;
+    }
+
+    void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    void bytesRead(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    void bytesWritten(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    // Called once the message's frame has been handed to the socket, with the start time its queue
+    // entry kept (see ClientHandler.send). Heartbeats are not timed.
+    void messageWritten(OutboundMessage message, long timedFromNanos, long nowNanos) {
+        FrameType type = message.getType();
+        if (type == FrameType.TEXT) {
+            messageLatency.record(nowNanos - timedFromNanos);
+        } else if (type == FrameType.ACK) {
+            ackLatency.record(nowNanos - timedFromNanos);
+        }
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return (int) (connectionsOpened.sum() - connectionsClosed.sum());
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    @Override
+    public long getConnectionsClosed() {
+        return connectionsClosed.sum();
+    }
+
+    @Override
+    public int getClientCount() {
+        return server.getClients().size();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public int getOutboundQueueDepth() {
+        int depth = 0;
+        for (ClientHandler client : server.getClients().values()) {
+            depth += client.getQueuedMessageCount();
+        }
+        return depth;
+    }
+
+    @Override
+    public int getMaxOutboundQueueDepth() {
+        int max = 0;
+        for (ClientHandler client : server.getClients().values()) {
+            max = Math.max(max, client.getQueuedMessageCount());
+        }
+        return max;
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        SlowConsumerStats stats = server.getSlowConsumerStats();
+        return stats.getDroppedOldest() + stats.getDroppedNewest();
+    }
+
+    @Override
+    public long getSlowConsumerDisconnects() {
+        return server.getSlowConsumerStats().getDisconnected();
+    }
+
+    @Override
+    public long getCompressedFrames() {
+        return server.getFrameCompressor().getDeflatedFrames();
+    }
+
+    @Override
+    public long getBytesBeforeCompression() {
+        return server.getFrameCompressor().getDeflateBytesIn();
+    }
+
+    @Override
+    public long getBytesAfterCompression() {
+        return server.getFrameCompressor().getDeflateBytesOut();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        return server.getFrameCompressor().getCompressionRatio();
+    }
+
+    @Override
+    public long getCompressionCpuMicros() {
+        return server.getFrameCompressor().getDeflateCpuNanos() / 1000;
+    }
+
+    @Override
+    public long getDecompressionCpuMicros() {
+        return server.getFrameCompressor().getInflateCpuNanos() / 1000;
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        return server.getCommandRegistry().getCommandCounts();
+    }
+
+    @Override
+    public Map<String, Long> getMessageLatency() {
+        return latencyMicros(messageLatency);
+    }
+
+    @Override
+    public Map<String, Long> getAckLatency() {
+        return latencyMicros(ackLatency);
+    }
+
+    public LatencyHistogram getMessageLatencyHistogram() {
+        return messageLatency;
+    }
+
+    public LatencyHistogram getAckLatencyHistogram() {
+        return ackLatency;
+    }
+
+    @Override
+    public void resetLatencies() {
+        messageLatency.reset();
+        ackLatency.reset();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder("[METRICS]");
+        text.append(" connections=").append(getConnectionCount())
+                .append(" opened=").append(getConnectionsOpened())
+                .append(" closed=").append(getConnectionsClosed())
+                .append(" clients=").append(getClientCount())
+                .append(" bytesIn=").append(getBytesIn())
+                .append(" bytesOut=").append(getBytesOut())
+                .append(" queued=").append(getOutboundQueueDepth())
+                .append(" maxQueued=").append(getMaxOutboundQueueDepth())
+                .append(" dropped=").append(getDroppedMessages())
+                .append(" slowDisconnects=").append(getSlowConsumerDisconnects());
+        FrameCompressor compressor = server.getFrameCompressor();
+        text.append("\n  compression: frames=").append(compressor.getDeflatedFrames())
+                .append(" ratio=").append(String.format("%.2f", compressor.getCompressionRatio()))
+                .append(" deflateCpu=").append(compressor.getDeflateCpuNanos() / 1000).append("us")
+                .append(" inflated=").append(compressor.getInflatedFrames())
+                .append(" inflateCpu=").append(compressor.getInflateCpuNanos() / 1000).append("us");
+        text.append("\n  commands:");
+        for (Map.Entry<String, Long> command : getCommandCounts().entrySet()) {
+            text.append(' ').append(command.getKey()).append('=').append(command.getValue());
+        }
+        text.append("\n  messageLatency: ").append(messageLatency.summary());
+        text.append("\n  ackLatency: ").append(ackLatency.summary());
+        return text.toString();
+    }
+
+    // Registers with the platform MBean server under the port the server listens on
+    void register(int port) {
+        try {
+            MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("server:type=ServerMetrics,port=" + port);
+            mbeans.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            System.out.println("Metrics not registered over JMX: " + e.getMessage());
+        }
+    }
+
+    void unregister() {
+        ObjectName name = objectName;
+        if (name == null) {
+            return;
+        }
+        objectName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ignored) {}
+    }
+
+    private static Map<String, Long> latencyMicros(LatencyHistogram histogram) {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getCount());
+        summary.put("p50", histogram.getValueAtPercentile(50) / 1000);
+        summary.put("p99", histogram.getValueAtPercentile(99) / 1000);
+        summary.put("p99.9", histogram.getValueAtPercentile(99.9) / 1000);
+        summary.put("max", histogram.getMax() / 1000);
+        return summary;
+    }
+}
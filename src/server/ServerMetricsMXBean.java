@@ -0,0 +1,59 @@
+package server;
+
+import java.util.Map;
+
+// Management view of ServerMetrics, registered with the platform MBean server as
+// "server:type=ServerMetrics,port=<port>" while the server runs (see jconsole or jcmd)
+public interface ServerMetricsMXBean {
+    // Open connections, whether or not they are registered clients yet
+    int getConnectionCount();
+
+    long getConnectionsOpened();
+
+    long getConnectionsClosed();
+
+    // Registered clients, including sessions waiting to resume
+    int getClientCount();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    // Messages waiting in all outbound queues, and in the fullest one
+    int getOutboundQueueDepth();
+
+    int getMaxOutboundQueueDepth();
+
+    long getDroppedMessages();
+
+    long getSlowConsumerDisconnects();
+
+    // Frames sent deflated to clients that negotiated compression, and their payload bytes before and after
+    long getCompressedFrames();
+
+    long getBytesBeforeCompression();
+
+    long getBytesAfterCompression();
+
+    // Bytes before divided by bytes after; 1 if nothing was compressed
+    double getCompressionRatio();
+
+    // CPU time spent deflating outgoing and inflating incoming frames, in microseconds
+    long getCompressionCpuMicros();
+
+    long getDecompressionCpuMicros();
+
+    // Lines handled per command, keyed by command name or prefix
+    Map<String, Long> getCommandCounts();
+
+    // Time from creating a text message to writing it to a socket: count, p50, p99, p99.9 and max in microseconds
+    Map<String, Long> getMessageLatency();
+
+    // The same for acknowledgements of pipelined requests
+    Map<String, Long> getAckLatency();
+
+    // Everything above as text, as printed by the periodic dump
+    String dump();
+
+    void resetLatencies();
+}
@@ -0,0 +1,132 @@
+package server;
+
+import protocol.FrameType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A resumable client session: the ID it keeps across reconnects and the last messages sent to it.
+// While the connection is down the session stays registered, so nobody sees the client leave,
+// and messages keep being recorded for replay when it comes back within the grace window.
+public final class Session {
+    private final String token;
+    private final int clientId;
+    private final int replayCapacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<OutboundMessage> recent = new ArrayDeque<>();  // Last chat messages, oldest first
+    private long recorded = 0;          // Messages recorded over the session's lifetime
+    private long detachedAt = -1;       // Value of recorded when the connection dropped, or -1 while attached
+
+    private volatile ClientHandler handler;
+    private TimerWheel.Timeout expiry;  // Guarded by the server's membership lock
+
+    Session(String token, int clientId, int replayCapacity, ClientHandler handler) {
+        this.token = token;
+        this.clientId = clientId;
+        this.replayCapacity = replayCapacity;
+        this.handler = handler;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public ClientHandler getHandler() {
+        return handler;
+    }
+
+    public boolean isDetached() {
+        lock.lock();
+        try {
+            return detachedAt >= 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Keeps a chat message for replay; control frames (acks, heartbeats) are not replayed
+    void record(OutboundMessage message) {
+        if (message.getType() != FrameType.TEXT) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (recent.size() == replayCapacity) {
+                recent.removeFirst();
+            }
+            recent.addLast(message);
+            recorded++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void detach(TimerWheel.Timeout expiry) {
+        lock.lock();
+        try {
+            detachedAt = recorded;
+        } finally {
+            lock.unlock();
+        }
+        this.expiry = expiry;
+    }
+
+    // Moves the session to a new connection and cancels its expiry
+    void attach(ClientHandler handler) {
+        lock.lock();
+        try {
+            detachedAt = -1;
+        } finally {
+            lock.unlock();
+        }
+        this.handler = handler;
+        if (expiry != null) {
+            expiry.cancel();
+            expiry = null;
+        }
+    }
+
+    // Messages the client has not seen: everything after the message with the given sequence, or,
+    // without a sequence (line clients), everything recorded since the connection dropped
+    List<OutboundMessage> missedSince(long lastSequence) {
+        lock.lock();
+        try {
+            int skip;
+            if (lastSequence >= 0) {
+                skip = 0;
+                int index = 0;
+                for (OutboundMessage message : recent) {
+                    index++;
+                    if (message.getSequence() == lastSequence) {
+                        skip = index;
+                    }
+                }
+            } else if (detachedAt >= 0) {
+                long oldest = recorded - recent.size();
+                skip = (int) Math.max(0, detachedAt - oldest);
+            } else {
+                skip = recent.size();
+            }
+
+            List<OutboundMessage> missed = new ArrayList<>(recent.size() - skip);
+            Iterator<OutboundMessage> it = recent.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                OutboundMessage message = it.next();
+                if (i >= skip) {
+                    missed.add(message);
+                }
+            }
+            return missed;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package server;
+
+// What to do when a client's outbound queue is full
+public enum SlowConsumerPolicy {
+    // Discard the oldest queued message to make room for the new one
+    DROP_OLDEST,
+
+    // Discard the new message and keep what is already queued
+    DROP_NEWEST,
+
+    // Close the slow client's connection
+    DISCONNECT
+}
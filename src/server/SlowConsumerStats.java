@@ -0,0 +1,36 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counts how often each slow-consumer policy fired across all connections
+public class SlowConsumerStats {
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong droppedNewest = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+
+    void record(SlowConsumerPolicy policy) {
+        switch (policy) {
+            case DROP_OLDEST -> droppedOldest.incrementAndGet();
+            case DROP_NEWEST -> droppedNewest.incrementAndGet();
+            case DISCONNECT -> disconnected.incrementAndGet();
+        }
+    }
+
+    public long getDroppedOldest() {
+        return droppedOldest.get();
+    }
+
+    public long getDroppedNewest() {
+        return droppedNewest.get();
+    }
+
+    public long getDisconnected() {
+        return disconnected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "droppedOldest=" + getDroppedOldest() + ", droppedNewest=" + getDroppedNewest()
+                + ", disconnected=" + getDisconnected();
+    }
+}
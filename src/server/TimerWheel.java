@@ -0,0 +1,249 @@
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hashed timing wheel shared by the whole server: coordinator resyncs, heartbeats and idle checks.
+// Scheduling and cancelling are O(1) from any thread; a single worker thread advances the wheel
+// one tick at a time and runs expired tasks, which must be short and must not block.
+public class TimerWheel {
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    // Handed to the worker thread, which is the only one touching the buckets
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick = 0;
+
+    public TimerWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickDuration);
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.startTime = System.nanoTime();
+
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // Runs the task once after the delay
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(this, task, elapsed() + unit.toNanos(delay), 0));
+    }
+
+    // Runs the task after the initial delay and then every period until cancelled
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        return add(new Timeout(this, task, elapsed() + unit.toNanos(initialDelay), unit.toNanos(period)));
+    }
+
+    // Number of scheduled timeouts that have not expired or been cancelled yet
+    public int pendingTimeouts() {
+        return active.get();
+    }
+
+    // Stops the worker; timeouts that have not fired yet are dropped
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private Timeout add(Timeout timeout) {
+        active.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private long elapsed() {
+        return System.nanoTime() - startTime;
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+            removeCancelled();
+            transferPending();
+            expire(wheel[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+    // Sleeps until the current tick ends; returns the elapsed time at that point, or -1 if stopped
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long sleepNanos = deadline - elapsed();
+            if (sleepNanos <= 0) {
+                return deadline;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    // Places newly scheduled (or rescheduled periodic) timeouts into their buckets
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.state.get() != Timeout.WAITING) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick); // Already overdue: fire in the current tick
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket, long deadline) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                bucket.remove(timeout);
+                if (timeout.deadline <= deadline) {
+                    timeout.fire();
+                } else {
+                    pending.add(timeout); // Not due yet, e.g. placed after its tick started
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    // Handle for a scheduled task
+    public static final class Timeout {
+        static final int WAITING = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        private final TimerWheel timer;
+        private final Runnable task;
+        private final long periodNanos;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private long deadline;
+        private long remainingRounds;
+
+        // Bucket links, owned by the worker thread
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimerWheel timer, Runnable task, long deadline, long periodNanos) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+            this.periodNanos = periodNanos;
+        }
+
+        // Prevents the task from running again; returns false if it already expired or was cancelled
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            timer.active.decrementAndGet();
+            timer.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void fire() {
+            if (state.get() != WAITING) {
+                return;
+            }
+            if (periodNanos == 0 && !state.compareAndSet(WAITING, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                System.out.println("Timer task failed: " + t);
+            }
+
+            if (periodNanos == 0) {
+                timer.active.decrementAndGet();
+            } else if (state.get() == WAITING) {
+                deadline += periodNanos;
+                timer.pending.add(this);
+            }
+        }
+    }
+
+    // Doubly linked list of the timeouts hashed to one slot
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import server.Channel;
+import server.ChannelIndex;
+import server.Server;
+
+class ChannelTest {
+
+    @Test
+    void testFirstSubscriberCoordinatesChannel() {
+        ChannelIndex index = new ChannelIndex();
+        DummyClientHandler first = new DummyClientHandler(1);
+        DummyClientHandler second = new DummyClientHandler(2);
+
+        Channel channel = index.join(first, "Room");
+        assertSame(channel, index.join(second, "room"));
+        assertEquals(2, channel.getSubscriberCount());
+        assertEquals(1, channel.getCoordinatorId());
+        assertTrue(first.getMessages().contains("You are now the coordinator of #room."));
+        assertFalse(second.getMessages().contains("You are now the coordinator of #room."));
+    }
+
+    @Test
+    void testPublishOnlyReachesSubscribers() {
+        Server server = new Server();
+        DummyClientHandler sender = new DummyClientHandler(1);
+        DummyClientHandler member = new DummyClientHandler(2);
+        DummyClientHandler outsider = new DummyClientHandler(3);
+        server.getChannels().join(sender, "room");
+        server.getChannels().join(member, "room");
+        server.getChannels().join(outsider, "other");
+
+        server.publishToChannel(server.getChannels().get("room"), "hi", 1);
+
+        assertTrue(member.getMessages().contains("hi"));
+        assertFalse(sender.getMessages().contains("hi"));
+        assertFalse(outsider.getMessages().contains("hi"));
+    }
+
+    @Test
+    void testCoordinatorFailoverToOldestSubscriber() {
+        ChannelIndex index = new ChannelIndex();
+        DummyClientHandler first = new DummyClientHandler(1);
+        DummyClientHandler second = new DummyClientHandler(2);
+        DummyClientHandler third = new DummyClientHandler(3);
+        Channel channel = index.join(first, "room");
+        index.join(second, "room");
+        index.join(third, "room");
+
+        assertTrue(index.leave(first, "room"));
+
+        assertEquals(2, channel.getCoordinatorId());
+        assertTrue(second.getMessages().contains("You are now the coordinator of #room."));
+        assertTrue(third.getMessages().contains("[#room] [COORDINATOR_CHANGED] Client 2"));
+        assertFalse(index.leave(first, "room"));
+    }
+
+    @Test
+    void testEmptyChannelIsDropped() {
+        ChannelIndex index = new ChannelIndex();
+        DummyClientHandler client = new DummyClientHandler(1);
+        index.join(client, "a");
+        index.join(client, "b");
+        assertEquals(2, index.size());
+
+        index.leaveAll(client);
+
+        assertEquals(0, index.size());
+        assertNull(index.get("a"));
+
+        // Joining again creates a fresh channel
+        assertEquals(1, index.join(client, "a").getSubscriberCount());
+    }
+
+    @Test
+    void testChannelNames() {
+        assertTrue(ChannelIndex.isValidName("news", 0, 4));
+        assertTrue(ChannelIndex.isValidName("dev_ops-2", 0, 9));
+        assertFalse(ChannelIndex.isValidName("", 0, 0));
+        assertFalse(ChannelIndex.isValidName("two words", 0, 9));
+        assertFalse(ChannelIndex.isValidName("x".repeat(33), 0, 33));
+    }
+}
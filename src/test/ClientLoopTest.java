@@ -0,0 +1,229 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import client.Client;
+import client.ClientLoop;
+import client.MessageListener;
+import server.EngineMode;
+import server.Server;
+
+class ClientLoopTest {
+
+    private ClientLoop loop;
+    private Server server;
+    private final List<Client> clients = new ArrayList<>();
+    private final List<BlockingQueue<String>> inboxes = new ArrayList<>();
+    private final AtomicInteger disconnects = new AtomicInteger();
+    private final CountDownLatch allDisconnected = new CountDownLatch(20);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        loop = new ClientLoop(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Client client : clients) {
+            client.abort();
+        }
+        if (server != null) {
+            server.stop();
+        }
+        loop.close();
+    }
+
+    @Test
+    void testLoopbackClientsShareTheLoop() throws Exception {
+        server = new Server();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(listeningClient().connect(server.connectLoopback()));
+        }
+        clients.get(0).sendMessage("hi all");
+
+        for (int i = 1; i < 100; i++) {
+            assertEquals("Client 1: hi all", poll(i, "Client 1:"));
+        }
+        assertEquals(2, loop.getThreadCount());
+    }
+
+    @Test
+    void testTcpClientsHearAboutServerShutdown() throws Exception {
+        startNioServer();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(listeningClient().connect("localhost", server.getLocalPort()));
+            assertNotNull(poll(i, "Welcome!"));
+        }
+        clients.get(19).sendMessage("last one in");
+        assertEquals("Client 20: last one in", poll(0, "Client 20:"));
+
+        server.stop();
+        assertTrue(allDisconnected.await(5, TimeUnit.SECONDS));
+        for (Client client : clients) {
+            assertFalse(client.isConnected());
+        }
+        Thread.sleep(100);
+        assertEquals(20, disconnects.get()); // Once per connection
+    }
+
+    @Test
+    void testIdleLoopSleeps() throws Exception {
+        startNioServer();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(listeningClient().connect("localhost", server.getLocalPort()));
+        }
+        assertNotNull(poll(9, "Welcome!"));
+        Thread.sleep(200); // Let the join announcements settle
+
+        long before = loop.getWakeups();
+        Thread.sleep(500);
+        assertTrue(loop.getWakeups() - before <= 2, "Loop woke " + (loop.getWakeups() - before) + " times while idle");
+    }
+
+    @Test
+    void testFloodedClientTakesTurnsWithTheOthers() throws Exception {
+        server = new Server();
+        AtomicInteger floodReceived = new AtomicInteger();
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> floodedWhenPinged = new CompletableFuture<>();
+        try (ClientLoop single = new ClientLoop(1)) {
+            Client flooded = new Client();
+            flooded.setMessageListener(single, new MessageListener() {
+                @Override
+                public void onMessage(Client source, String message) {
+                    if (message.startsWith("Private from 3:")) {
+                        floodReceived.incrementAndGet();
+                    }
+                }
+
+                @Override
+                public void onDisconnected(Client source) {
+                }
+            });
+            Client other = new Client();
+            other.setMessageListener(single, new MessageListener() {
+                @Override
+                public void onMessage(Client source, String message) {
+                    if (message.equals("Private from 3: hold")) {
+                        holding.countDown(); // Keeps the only loop thread busy while the flood piles up
+                        awaitQuietly(release);
+                    } else if (message.equals("Private from 3: ping")) {
+                        floodedWhenPinged.complete(floodReceived.get());
+                    }
+                }
+
+                @Override
+                public void onDisconnected(Client source) {
+                }
+            });
+            Client sender = new Client();
+            clients.add(flooded);
+            clients.add(other);
+            clients.add(sender);
+            assertTrue(flooded.connect(server.connectLoopback()));
+            assertTrue(other.connect(server.connectLoopback()));
+            assertTrue(sender.connect(server.connectLoopback()));
+
+            sender.sendMessage("@2 hold");
+            assertTrue(holding.await(5, TimeUnit.SECONDS));
+            String padding = "x".repeat(200);
+            for (int i = 0; i < 1000; i++) {
+                sender.sendMessage("@1 " + padding);
+            }
+            sender.sendMessage("@2 ping");
+            Thread.sleep(300); // The flooded client's 64 KB pipe fills up
+            release.countDown();
+
+            // Served after one capped turn of the flood (under 32 KB, about 150 messages), not after the
+            // whole pipe (over 300)
+            assertTrue(floodedWhenPinged.get(10, TimeUnit.SECONDS) < 250);
+        }
+    }
+
+    @Test
+    void testListenerReplacesReadMessage() {
+        server = new Server();
+        Client client = listeningClient();
+        assertTrue(client.connect(server.connectLoopback()));
+        assertThrows(IllegalStateException.class, client::readMessage);
+    }
+
+    @Test
+    void testReadMessageEndsWhenServerCloses() throws Exception {
+        startNioServer();
+        Client client = new Client();
+        clients.add(client);
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+        while (!client.readMessage().startsWith("Welcome!")) {
+            // Joined once the server has said hello
+        }
+
+        server.stop();
+        for (int i = 0; i < 100 && client.readMessage() != null; i++) {
+            // Drain whatever the server said before closing
+        }
+        assertNull(client.readMessage());
+        assertFalse(client.isConnected()); // So a "while connected, read" loop stops instead of spinning
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Client listeningClient() {
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        Client client = new Client();
+        client.setMessageListener(loop, new MessageListener() {
+            @Override
+            public void onMessage(Client source, String message) {
+                inbox.add(message);
+            }
+
+            @Override
+            public void onDisconnected(Client source) {
+                disconnects.incrementAndGet();
+                allDisconnected.countDown();
+            }
+        });
+        clients.add(client);
+        inboxes.add(inbox);
+        return client;
+    }
+
+    private void startNioServer() throws InterruptedException {
+        server = new Server(EngineMode.NIO);
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    // Takes messages from the client's inbox until one starts with the prefix
+    private String poll(int client, String prefix) throws InterruptedException {
+        String msg;
+        while ((msg = inboxes.get(client).poll(5, TimeUnit.SECONDS)) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import client.Client;
 import org.junit.jupiter.api.*;
+import protocol.WriteMode;
 
 import java.io.*;
 import java.net.*;
@@ -61,6 +62,31 @@ class ClientTest {
         assertEquals("Hello Test", received.toString());
     }
 
+    @Test
+    void testThroughputModeCoalescesAndFlushes() throws Exception {
+        int port = serverSocket.getLocalPort();
+        StringBuilder received = new StringBuilder();
+
+        Thread reader = new Thread(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                for (int i = 0; i < 3; i++) {
+                    received.append(in.readLine()).append(';');
+                }
+            } catch (IOException ignored) {}
+        });
+        reader.start();
+
+        client.setWriteMode(WriteMode.THROUGHPUT);
+        client.connect("localhost", port);
+        client.sendMessage("one");
+        client.sendMessage("two");
+        client.sendMessage("three");
+        reader.join(2000); // Delivered by the delayed flush, without an explicit flush()
+
+        assertEquals("one;two;three;", received.toString());
+    }
+
     @Test
     void testReadMessage() throws Exception {
         int port = serverSocket.getLocalPort();
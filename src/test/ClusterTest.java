@@ -0,0 +1,193 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import client.Client;
+import org.junit.jupiter.api.*;
+
+import protocol.DeliveryStatus;
+import server.Cluster;
+import server.EngineMode;
+import server.Server;
+
+class ClusterTest {
+
+    private static final int NODES = 3;
+
+    private final Server[] servers = new Server[NODES];
+    private final Cluster[] clusters = new Cluster[NODES];
+    private final Client[] clients = new Client[NODES];
+
+    @BeforeEach
+    void setUp() throws Exception {
+        int[] clusterPorts = new int[NODES];
+        for (int node = 0; node < NODES; node++) {
+            clusters[node] = new Cluster(node, NODES);
+            clusters[node].setElectionTimeoutMillis(600);
+            clusterPorts[node] = clusters[node].listen(0);
+        }
+        for (int node = 0; node < NODES; node++) {
+            for (int peer = 0; peer < NODES; peer++) {
+                if (peer != node) {
+                    clusters[node].addPeer(peer, "localhost", clusterPorts[peer]);
+                }
+            }
+            Server server = new Server(node == 1 ? EngineMode.THREAD_PER_CLIENT : EngineMode.NIO);
+            server.setCluster(clusters[node]);
+            servers[node] = server;
+            new Thread(() -> server.start(0)).start();
+        }
+
+        // Wait for every node to listen, every link to come up and a leader to be elected
+        for (int i = 0; i < 200 && !ready(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(ready());
+        for (int node = 0; node < NODES; node++) {
+            clients[node] = new Client();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (int node = 0; node < NODES; node++) {
+            clients[node].disconnect();
+            servers[node].stop();
+        }
+    }
+
+    @Test
+    void testClientIdsAreUniqueAcrossNodes() {
+        assertEquals(1, connect(0));
+        assertEquals(2, connect(1));
+        assertEquals(3, connect(2));
+
+        Client second = new Client();
+        assertTrue(second.connect("localhost", servers[0].getLocalPort()));
+        assertEquals("Welcome! Your ID is 4", skipUntil(second, "Welcome!"));
+        assertEquals(0, clusters[1].ownerOf(4));
+        second.disconnect();
+    }
+
+    @Test
+    void testBroadcastReachesClientsOnEveryNode() {
+        connect(0);
+        connect(1);
+        connect(2);
+
+        clients[0].sendMessage("hello cluster");
+        assertEquals("Client 1: hello cluster", skipUntil(clients[1], "Client 1:"));
+        assertEquals("Client 1: hello cluster", skipUntil(clients[2], "Client 1:"));
+    }
+
+    @Test
+    void testBroadcastIsForwardedOncePerNode() {
+        connect(0);
+        connect(1);
+        Client second = new Client();
+        assertTrue(second.connect("localhost", servers[1].getLocalPort()));
+        skipUntil(second, "Welcome!");
+
+        long before = clusters[0].getForwardedCount(1);
+        clients[0].sendMessage("one frame");
+        assertEquals("Client 1: one frame", skipUntil(clients[1], "Client 1:"));
+        assertEquals("Client 1: one frame", skipUntil(second, "Client 1:"));
+        assertEquals(before + 1, clusters[0].getForwardedCount(1));
+        second.disconnect();
+    }
+
+    @Test
+    void testPrivateMessageIsRoutedToOwningNode() {
+        connect(0);
+        connect(1);
+        connect(2);
+
+        // Only the link to the owner carries it
+        long toNodeOne = clusters[0].getForwardedCount(1);
+        clients[0].sendMessage("@3 across the cluster");
+        assertEquals("Private from 1: across the cluster", skipUntil(clients[2], "Private from"));
+        assertEquals(toNodeOne, clusters[0].getForwardedCount(1));
+
+        clients[2].sendMessage("@2 and back");
+        assertEquals("Private from 3: and back", skipUntil(clients[1], "Private from"));
+    }
+
+    @Test
+    void testPrivateMessageForOfflineRemoteClientWaitsInItsInbox() {
+        servers[1].setSessionGraceMillis(5000);
+        clients[1].setSessionResumption(true);
+        connect(0);
+        connect(1);
+
+        clients[0].sendMessage("@2 see you later");
+        assertEquals("Private from 1: see you later", skipUntil(clients[1], "Private from"));
+
+        // The owner keeps messages for its own clients while they are away
+        String token = clients[1].getSessionToken();
+        clients[1].abort();
+        for (int i = 0; i < 100 && !servers[1].getClients().get(2).getSession().isDetached(); i++) {
+            sleep(20);
+        }
+
+        clients[0].sendMessage("@2 while you were away");
+        for (int i = 0; i < 100 && servers[1].getOfflineInboxes().size(token) < 1; i++) {
+            sleep(20);
+        }
+
+        // Only the owner knows the message was queued; the forwarding node cannot claim delivery
+        assertEquals(DeliveryStatus.ROUTED, servers[0].sendPrivateMessage(2, "and this"));
+        for (int i = 0; i < 100 && servers[1].getOfflineInboxes().size(token) < 2; i++) {
+            sleep(20);
+        }
+        assertEquals(2, servers[1].getOfflineInboxes().size(token));
+
+        assertTrue(clients[1].connect("localhost", servers[1].getLocalPort()));
+        assertTrue(clients[1].isResumed());
+        assertEquals("Private from 1: while you were away", skipUntil(clients[1], "Private from"));
+        assertEquals("and this", clients[1].readMessage());
+    }
+
+    private boolean ready() {
+        int leaders = 0;
+        for (int node = 0; node < NODES; node++) {
+            if (servers[node].getLocalPort() <= 0 || clusters[node].getElection() == null) {
+                return false;
+            }
+            if (clusters[node].getElection().isLeader()) {
+                leaders++;
+            }
+            for (int peer = 0; peer < NODES; peer++) {
+                if (peer != node && !clusters[node].isConnected(peer)) {
+                    return false;
+                }
+            }
+        }
+        return leaders == 1;
+    }
+
+    // Connects the node's client and returns the ID it was given
+    private int connect(int node) {
+        assertTrue(clients[node].connect("localhost", servers[node].getLocalPort()));
+        String welcome = skipUntil(clients[node], "Welcome!");
+        return Integer.parseInt(welcome.substring(welcome.lastIndexOf(' ') + 1));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Reads messages until one starts with the expected prefix
+    private String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import protocol.DeliveryStatus;
+import server.CommandHandler;
+import server.CommandParser;
+import server.CommandRegistry;
+import server.ParsedCommand;
+
+class CommandParserTest {
+
+    @Test
+    void testParsePrivateMessage() {
+        ParsedCommand command = CommandParser.parse("  @12 hello there  ", new ParsedCommand());
+
+        assertEquals('@', command.getPrefix());
+        assertTrue(command.isTargetValid());
+        assertEquals(12, command.getTargetId());
+        assertTrue(command.hasArgument());
+        assertEquals("hello there", command.getLine().subSequence(command.getArgumentStart(), command.getEnd()).toString());
+    }
+
+    @Test
+    void testMalformedTargetDoesNotThrow() {
+        ParsedCommand command = CommandParser.parse("@abc hi", new ParsedCommand());
+        assertFalse(command.isTargetValid());
+
+        command = CommandParser.parse("@99999999999 hi", command);
+        assertFalse(command.isTargetValid());
+    }
+
+    @Test
+    void testNamedCommandsMatchWholeTokenIgnoringCase() {
+        ParsedCommand command = CommandParser.parse("!MEMBERS", new ParsedCommand());
+        assertTrue(command.nameEquals("!members"));
+        assertFalse(command.hasArgument());
+
+        command = CommandParser.parse("!membersx", command);
+        assertFalse(command.nameEquals("!members"));
+    }
+
+    @Test
+    void testArgumentAsInt() {
+        ParsedCommand command = CommandParser.parse("!protocol 1", new ParsedCommand());
+        assertEquals(1, command.argumentAsInt());
+
+        command = CommandParser.parse("!protocol x", command);
+        assertEquals(-1, command.argumentAsInt());
+    }
+
+    @Test
+    void testArgumentAsLong() {
+        ParsedCommand command = CommandParser.parse("!replay 3000000000", new ParsedCommand());
+        assertEquals(3_000_000_000L, command.argumentAsLong());
+        assertEquals(-1, command.argumentAsInt());
+
+        command = CommandParser.parse("!replay " + Long.MAX_VALUE, command);
+        assertEquals(Long.MAX_VALUE, command.argumentAsLong());
+
+        command = CommandParser.parse("!replay 9223372036854775808", command);
+        assertEquals(-1, command.argumentAsLong());
+    }
+
+    @Test
+    void testRegistryLookupOrder() {
+        CommandHandler named = (client, command) -> DeliveryStatus.ROUTED;
+        CommandHandler prefixed = (client, command) -> DeliveryStatus.ROUTED;
+        CommandHandler fallback = (client, command) -> DeliveryStatus.REJECTED;
+
+        CommandRegistry registry = new CommandRegistry();
+        registry.register("!ping", false, named);
+        registry.registerPrefix('#', prefixed);
+        registry.setFallback(fallback);
+
+        ParsedCommand command = new ParsedCommand();
+        assertSame(named, registry.lookup(CommandParser.parse("!Ping", command)));
+        assertSame(fallback, registry.lookup(CommandParser.parse("!ping now", command)));
+        assertSame(prefixed, registry.lookup(CommandParser.parse("#general hi", command)));
+        assertSame(fallback, registry.lookup(CommandParser.parse("just chatting", command)));
+        assertSame(fallback, registry.lookup(CommandParser.parse("", command)));
+    }
+}
@@ -0,0 +1,181 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import client.Client;
+import protocol.Frame;
+import protocol.FrameCompressor;
+import protocol.FrameType;
+import protocol.MessageDecoder;
+import protocol.WireFormat;
+import server.EngineMode;
+import server.Server;
+
+class CompressionTest {
+
+    private Server server;
+    private final List<Client> clients = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (Client client : clients) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testCompressedFrameRoundTrip() throws Exception {
+        String roster = roster(200);
+        FrameCompressor compressor = new FrameCompressor();
+        byte[] deflated = compressor.deflate(roster.getBytes(StandardCharsets.UTF_8));
+        assertNotNull(deflated);
+        ByteBuffer encoded = Frame.encodeCompressed(FrameType.TEXT, -1, 4, 9L, deflated);
+
+        MessageDecoder decoder = new MessageDecoder();
+        decoder.switchTo(WireFormat.BINARY);
+        decoder.setCompressor(compressor);
+        List<Frame> frames = new ArrayList<>();
+        while (encoded.hasRemaining()) {
+            decoder.feed(new byte[] {encoded.get()}, 0, 1, frames::add);
+        }
+
+        assertEquals(1, frames.size());
+        assertEquals(FrameType.TEXT, frames.get(0).getType());
+        assertEquals(4, frames.get(0).getTarget());
+        assertEquals(9L, frames.get(0).getSequence());
+        assertEquals(roster, frames.get(0).getPayload());
+        assertTrue(compressor.getCompressionRatio() > 4, "ratio " + compressor.getCompressionRatio());
+        assertEquals(1, compressor.getInflatedFrames());
+    }
+
+    @Test
+    void testShortOrIncompressiblePayloadIsNotDeflated() {
+        FrameCompressor compressor = new FrameCompressor(256);
+        assertNull(compressor.deflate("short chat line".getBytes(StandardCharsets.UTF_8)));
+
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+        assertNull(compressor.deflate(random));
+        assertEquals(0, compressor.getDeflatedFrames());
+    }
+
+    @Test
+    void testRejectsCompressedFrameWithoutNegotiation() {
+        byte[] deflated = new FrameCompressor().deflate(roster(50).getBytes(StandardCharsets.UTF_8));
+        ByteBuffer encoded = Frame.encodeCompressed(FrameType.TEXT, -1, -1, 1L, deflated);
+        MessageDecoder decoder = new MessageDecoder();
+        decoder.switchTo(WireFormat.BINARY);
+
+        assertThrows(ProtocolException.class, () -> decoder.feed(encoded, f -> {}));
+    }
+
+    @Test
+    void testCompressedClientsThreadPerClient() throws Exception {
+        assertLargeMessagesCompressed(EngineMode.THREAD_PER_CLIENT);
+    }
+
+    @Test
+    void testCompressedClientsNio() throws Exception {
+        assertLargeMessagesCompressed(EngineMode.NIO);
+    }
+
+    @Test
+    void testServerCanDeclineCompression() throws Exception {
+        server = new Server(EngineMode.NIO);
+        server.setCompressionEnabled(false);
+        startServer();
+
+        Client client = connect(true);
+        assertEquals(WireFormat.BINARY, client.getWireFormat());
+        assertFalse(client.isCompressing());
+        client.sendMessage("!members");
+        assertNotNull(skipUntil(client, "Active Clients:"));
+    }
+
+    // Large roster and chat text reach compressing, plain binary and line clients intact, and only
+    // the compressing connections carry deflated frames
+    private void assertLargeMessagesCompressed(EngineMode mode) throws Exception {
+        server = new Server(mode);
+        startServer();
+        Client coordinator = connect(true);
+        assertTrue(coordinator.isCompressing());
+        skipUntil(coordinator, "You are the coordinator.");
+        Client compressing = connect(true);
+        Client binary = connect(false);
+        Client line = new Client();
+        assertTrue(line.connect("localhost", server.getLocalPort()));
+        clients.add(line);
+        for (Client client : List.of(compressing, binary, line)) {
+            skipUntil(client, "Current Coordinator");
+        }
+
+        String blob = "pasted log line with some repetition, ".repeat(100).trim();
+        coordinator.sendMessage(blob);
+        for (Client client : List.of(compressing, binary, line)) {
+            assertEquals("Client 1: " + blob, skipUntil(client, "Client 1: "));
+        }
+
+        compressing.sendMessage(blob.toUpperCase());
+        assertEquals("Client 2: " + blob.toUpperCase(), skipUntil(binary, "Client 2: "));
+
+        coordinator.sendMessage("!members");
+        String roster = skipUntil(coordinator, "Active Clients:");
+        assertTrue(roster.contains("- Client 4 "), roster);
+
+        assertTrue(server.getMetrics().getCompressedFrames() >= 1);
+        assertTrue(server.getMetrics().getCompressionRatio() > 2, "ratio " + server.getMetrics().getCompressionRatio());
+        assertTrue(server.getFrameCompressor().getInflatedFrames() >= 1);
+        assertTrue(coordinator.getCompressor().getInflatedFrames() >= 2);
+        assertTrue(compressing.getCompressor().getDeflatedFrames() >= 1);
+        assertEquals(0, binary.getCompressor().getInflatedFrames());
+    }
+
+    private void startServer() throws InterruptedException {
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    private Client connect(boolean compression) {
+        Client client = new Client();
+        client.setPreferredWireFormat(WireFormat.BINARY);
+        client.setCompression(compression);
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+        clients.add(client);
+        return client;
+    }
+
+    private static String roster(int members) {
+        StringBuilder roster = new StringBuilder("Active Clients:\n");
+        for (int id = 1; id <= members; id++) {
+            roster.append("- Client ").append(id).append(" [ID: ").append(id)
+                    .append("] [IP Address: 192.168.1.").append(id % 100 + 1)
+                    .append("] [Port: ").append(50000 + id * 7).append("]\n");
+        }
+        return roster.toString();
+    }
+
+    private String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import client.Client;
+import org.junit.jupiter.api.*;
+
+import server.EngineMode;
+import server.Server;
+
+class CoordinatorHandoffTest {
+
+    private LockingServer server;
+    private final List<Client> clients = new ArrayList<>();
+
+    // Exposes the membership lock so a test can hold it while clients leave
+    static class LockingServer extends Server {
+        LockingServer() {
+            super(EngineMode.NIO);
+        }
+
+        void lockMembership() {
+            membershipLock.lock();
+        }
+
+        void unlockMembership() {
+            membershipLock.unlock();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new LockingServer();
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Client client : clients) {
+            client.disconnect();
+        }
+        server.stop();
+    }
+
+    @Test
+    void testOldestSurvivingMemberTakesOver() throws Exception {
+        Client first = connect();
+        Client second = connect();
+        Client third = connect();
+        Client fourth = connect();
+        assertEquals(1, server.getCoordinatorId());
+
+        // The second member leaves before the coordinator does, so the third is the oldest left
+        second.disconnect();
+        awaitGone(2);
+        first.disconnect();
+        assertEquals("You are now the coordinator.", skipUntil(third, "You are now"));
+        assertEquals("[COORDINATOR_CHANGED] Client 3", skipUntil(fourth, "[COORDINATOR_CHANGED]").split(" \\[IP")[0]);
+        assertEquals(3, server.getCoordinatorId());
+        assertEquals(3, server.getRoster().snapshot().getCoordinatorId());
+    }
+
+    @Test
+    void testConcurrentDisconnectsLeaveExactlyOneCoordinator() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            connect();
+        }
+        Client survivor = clients.get(19);
+
+        List<Thread> leavers = new ArrayList<>();
+        for (int i = 0; i < 19; i++) {
+            Client leaver = clients.get(i);
+            leavers.add(new Thread(leaver::abort));
+        }
+        leavers.forEach(Thread::start);
+        for (Thread leaver : leavers) {
+            leaver.join();
+        }
+        for (int i = 0; i < 100 && server.getClients().size() > 1; i++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, server.getClients().size());
+        assertEquals("You are now the coordinator.", skipUntil(survivor, "You are now"));
+        assertEquals(20, server.getCoordinatorId());
+        assertEquals(20, server.getRoster().snapshot().getCoordinatorId());
+    }
+
+    @Test
+    void testLeavingDoesNotWaitForMembershipLock() throws Exception {
+        Client coordinator = connect();
+        Client member = connect();
+        Client other = connect();
+
+        server.lockMembership();
+        try {
+            member.disconnect();
+            awaitGone(2);
+            assertFalse(server.getClients().containsKey(2));
+
+            // Not even a coordinator hand-off needs the lock
+            coordinator.disconnect();
+            awaitGone(1);
+            assertEquals(3, server.getCoordinatorId());
+        } finally {
+            server.unlockMembership();
+        }
+        assertEquals("You are now the coordinator.", skipUntil(other, "You are now"));
+    }
+
+    private Client connect() {
+        Client client = new Client();
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+        skipUntil(client, "Welcome!");
+        clients.add(client);
+        return client;
+    }
+
+    private void awaitGone(int clientId) throws InterruptedException {
+        for (int i = 0; i < 100 && server.getClients().containsKey(clientId); i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    // Reads messages until one starts with the expected prefix
+    private String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
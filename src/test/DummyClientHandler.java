@@ -0,0 +1,50 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import protocol.LoopbackTransport;
+import server.ClientHandler;
+import server.OutboundMessage;
+import server.Server;
+
+// Handler that records what it is sent instead of writing it, for unit tests of routing structures such
+// as ChannelIndex; its connection is an in-memory one that nothing reads
+class DummyClientHandler extends ClientHandler {
+    private final int id;
+    private final List<String> messages = new ArrayList<>();
+
+    public DummyClientHandler(int id) {
+        super(LoopbackTransport.pair()[1], id, new Server());
+        this.id = id;
+    }
+
+    @Override
+    public int getClientId() {
+        return id;
+    }
+
+    @Override
+    public void sendMessage(String message) {
+        messages.add(message);
+    }
+
+    @Override
+    public void send(OutboundMessage message) {
+        sendMessage(message.getText());
+    }
+
+    @Override
+    public void sendAll(List<OutboundMessage> messages) {
+        messages.forEach(this::send);
+    }
+
+    @Override
+    public void setCoordinator(boolean isCoordinator) {
+        // Do nothing
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+}
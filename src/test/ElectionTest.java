@@ -0,0 +1,208 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import client.Client;
+import org.junit.jupiter.api.*;
+
+import server.Cluster;
+import server.EngineMode;
+import server.Server;
+
+class ElectionTest {
+
+    private static final int NODES = 3;
+    private static final long ELECTION_TIMEOUT_MILLIS = 600;
+
+    private final Server[] servers = new Server[NODES];
+    private final Cluster[] clusters = new Cluster[NODES];
+    private final boolean[] stopped = new boolean[NODES];
+    private final Client[] clients = new Client[NODES];
+
+    @BeforeEach
+    void setUp() throws Exception {
+        int[] clusterPorts = new int[NODES];
+        for (int node = 0; node < NODES; node++) {
+            clusters[node] = new Cluster(node, NODES);
+            clusters[node].setElectionTimeoutMillis(ELECTION_TIMEOUT_MILLIS);
+            clusterPorts[node] = clusters[node].listen(0);
+        }
+        for (int node = 0; node < NODES; node++) {
+            for (int peer = 0; peer < NODES; peer++) {
+                if (peer != node) {
+                    clusters[node].addPeer(peer, "localhost", clusterPorts[peer]);
+                }
+            }
+            Server server = new Server(EngineMode.NIO);
+            server.setCluster(clusters[node]);
+            servers[node] = server;
+            new Thread(() -> server.start(0)).start();
+        }
+        for (int i = 0; i < 100 && !listening(); i++) {
+            Thread.sleep(20);
+        }
+
+        // One client per node, so whichever node wins has someone to appoint
+        for (int node = 0; node < NODES; node++) {
+            clients[node] = new Client();
+            assertTrue(clients[node].connect("localhost", servers[node].getLocalPort()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (int node = 0; node < NODES; node++) {
+            clients[node].disconnect();
+            if (!stopped[node]) {
+                servers[node].stop();
+            }
+        }
+    }
+
+    @Test
+    void testOneLeaderHostsTheOnlyCoordinator() throws Exception {
+        int leader = awaitCoordinator(-1);
+        assertTrue(clusters[leader].getElection().isLeader());
+        for (int i = 0; i < 100 && !followersKnow(leader); i++) {
+            Thread.sleep(20);
+        }
+        for (int node = 0; node < NODES; node++) {
+            assertEquals(leader, clusters[node].getElection().getLeaderId());
+            assertEquals(clusters[leader].getElection().getTerm(), clusters[node].getElection().getTerm());
+            if (node != leader) {
+                assertEquals(-1, servers[node].getCoordinatorId());
+            }
+        }
+        assertEquals(leader + 1, servers[leader].getCoordinatorId());
+
+        // Clients on the other nodes hear about it too
+        int other = (leader + 1) % NODES;
+        assertEquals("[COORDINATOR_CHANGED] Client " + (leader + 1), skipUntil(clients[other], "[COORDINATOR_CHANGED]").split(" \\[IP")[0]);
+    }
+
+    @Test
+    void testFailoverAfterLeaderIsKilled() throws Exception {
+        int leader = awaitCoordinator(-1);
+        long term = clusters[leader].getElection().getTerm();
+
+        // The survivors must have heard the leader before it dies, or there is no failover to time
+        for (int i = 0; i < 100 && !followersKnow(leader); i++) {
+            Thread.sleep(20);
+        }
+
+        long killedAt = System.nanoTime();
+        kill(leader);
+        int next = awaitCoordinator(leader);
+        long failoverMillis = (System.nanoTime() - killedAt) / 1_000_000;
+        System.out.println("Time to new coordinator: " + failoverMillis + " ms (election timeout "
+                + ELECTION_TIMEOUT_MILLIS + " ms)");
+
+        assertNotEquals(leader, next);
+        assertTrue(clusters[next].getElection().getTerm() > term);
+        assertTrue(clusters[next].getElection().getLastFailoverMillis() >= 0);
+        assertTrue(failoverMillis < 4 * ELECTION_TIMEOUT_MILLIS + 1000, "Failover took " + failoverMillis + " ms");
+        assertNotNull(skipUntil(clients[next], "You are now the coordinator."));
+    }
+
+    @Test
+    void testLeaderWithoutMajorityGivesUpCoordinator() throws Exception {
+        int leader = awaitCoordinator(-1);
+        for (int node = 0; node < NODES; node++) {
+            if (node != leader) {
+                kill(node);
+            }
+        }
+
+        // Within one lease the lone node demotes its coordinator, and it cannot win another election
+        for (int i = 0; i < 100 && servers[leader].getCoordinatorId() != -1; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(-1, servers[leader].getCoordinatorId());
+        assertFalse(clusters[leader].getElection().isLeader());
+        Thread.sleep(3 * ELECTION_TIMEOUT_MILLIS);
+        assertFalse(clusters[leader].getElection().isLeader());
+        assertEquals(-1, servers[leader].getCoordinatorId());
+        assertNotNull(skipUntil(clients[leader], "You are no longer the coordinator."));
+    }
+
+    @Test
+    void testSingleNodeKeepsItsLease() throws Exception {
+        Cluster single = new Cluster(0, 1);
+        single.setElectionTimeoutMillis(ELECTION_TIMEOUT_MILLIS);
+        single.listen(0);
+        Server server = new Server(EngineMode.NIO);
+        server.setCluster(single);
+        new Thread(() -> server.start(0)).start();
+        try {
+            for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+                Thread.sleep(20);
+            }
+            for (int i = 0; i < 200 && !single.getElection().isLeader(); i++) {
+                Thread.sleep(20);
+            }
+            assertTrue(single.getElection().isLeader());
+
+            // Several leases later it has neither stepped down nor been re-elected
+            Thread.sleep(3 * ELECTION_TIMEOUT_MILLIS);
+            assertTrue(single.getElection().isLeader());
+            assertEquals(1, single.getElection().getLeaderChanges());
+        } finally {
+            server.stop();
+        }
+    }
+
+    // Waits until a node other than the excluded one has a coordinator, checking that
+    // no two live nodes ever have one at the same time; returns that node
+    private int awaitCoordinator(int excluded) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            int found = -1;
+            for (int node = 0; node < NODES; node++) {
+                if (!stopped[node] && servers[node].getCoordinatorId() != -1) {
+                    assertEquals(-1, found, "Nodes " + found + " and " + node + " both have a coordinator");
+                    found = node;
+                }
+            }
+            if (found != -1 && found != excluded) {
+                return found;
+            }
+            Thread.sleep(5);
+        }
+        fail("No coordinator was elected");
+        return -1;
+    }
+
+    private boolean followersKnow(int leader) {
+        for (Cluster cluster : clusters) {
+            if (cluster.getElection().getLeaderId() != leader) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void kill(int node) {
+        stopped[node] = true;
+        servers[node].stop();
+    }
+
+    private boolean listening() {
+        for (Server server : servers) {
+            if (server.getLocalPort() <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reads messages until one starts with the expected prefix
+    private String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
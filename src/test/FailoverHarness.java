@@ -0,0 +1,163 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import client.Client;
+
+// Kills cluster nodes running as separate processes on localhost and reports how long the cluster
+// takes to appoint a new coordinator. Not a JUnit test; run it by hand with the test classpath:
+//   java -cp <classes> test.FailoverHarness [nodes] [rounds] [election timeout ms]
+public class FailoverHarness {
+
+    private record Event(int node, String message, long nanos) {}
+
+    private final int nodes;
+    private final long electionTimeoutMillis;
+    private final int[] clientPorts;
+    private final int[] clusterPorts;
+    private final Process[] processes;
+    private final Client[] clients;
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+    private long lastEventNanos;
+
+    FailoverHarness(int nodes, long electionTimeoutMillis) throws IOException {
+        this.nodes = nodes;
+        this.electionTimeoutMillis = electionTimeoutMillis;
+        this.clientPorts = new int[nodes];
+        this.clusterPorts = new int[nodes];
+        this.processes = new Process[nodes];
+        this.clients = new Client[nodes];
+        for (int node = 0; node < nodes; node++) {
+            clientPorts[node] = freePort();
+            clusterPorts[node] = freePort();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long electionTimeoutMillis = args.length > 2 ? Long.parseLong(args[2]) : 1500;
+
+        FailoverHarness harness = new FailoverHarness(nodes, electionTimeoutMillis);
+        try {
+            harness.run(rounds);
+        } finally {
+            harness.shutdown();
+        }
+    }
+
+    void run(int rounds) throws Exception {
+        for (int node = 0; node < nodes; node++) {
+            startNode(node);
+        }
+        for (int node = 0; node < nodes; node++) {
+            connectClient(node);
+        }
+
+        int leader = awaitNewCoordinator(-1, System.nanoTime());
+        System.out.println("Initial coordinator on node " + leader);
+
+        List<Long> failovers = new ArrayList<>();
+        for (int round = 1; round <= rounds; round++) {
+            long killedAt = System.nanoTime();
+            processes[leader].destroyForcibly().waitFor();
+            int next = awaitNewCoordinator(leader, killedAt);
+            long millis = TimeUnit.NANOSECONDS.toMillis(lastEventNanos - killedAt);
+            failovers.add(millis);
+            System.out.println("Round " + round + ": killed node " + leader + ", node " + next
+                    + " took over after " + millis + " ms");
+
+            // Bring the killed node back as a follower for the next round
+            startNode(leader);
+            connectClient(leader);
+            leader = next;
+        }
+
+        Collections.sort(failovers);
+        System.out.println("Time to new coordinator over " + rounds + " kills (election timeout "
+                + electionTimeoutMillis + " ms): min " + failovers.get(0)
+                + " ms, median " + failovers.get(failovers.size() / 2)
+                + " ms, max " + failovers.get(failovers.size() - 1) + " ms");
+    }
+
+    // Waits for a client on a node other than the excluded one to be appointed coordinator
+    private int awaitNewCoordinator(int excluded, long since) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20 * electionTimeoutMillis);
+        while (System.nanoTime() < deadline) {
+            Event event = events.poll(100, TimeUnit.MILLISECONDS);
+            if (event != null && event.node() != excluded && event.nanos() >= since
+                    && event.message().equals("You are now the coordinator.")) {
+                lastEventNanos = event.nanos();
+                return event.node();
+            }
+        }
+        throw new IllegalStateException("No new coordinator within " + 20 * electionTimeoutMillis + " ms");
+    }
+
+    private void startNode(int node) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dcluster.electionTimeoutMillis=" + electionTimeoutMillis);
+        command.add("server.Cluster");
+        command.add(Integer.toString(node));
+        command.add(Integer.toString(nodes));
+        command.add(Integer.toString(clientPorts[node]));
+        command.add(Integer.toString(clusterPorts[node]));
+        for (int peer = 0; peer < nodes; peer++) {
+            if (peer != node) {
+                command.add(peer + "=localhost:" + clusterPorts[peer]);
+            }
+        }
+        processes[node] = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(System.getProperty("java.io.tmpdir"), "cluster-node-" + node + ".log"))
+                .start();
+    }
+
+    // Connects a client to the node, retrying while the process starts, and records what it receives
+    private void connectClient(int node) throws InterruptedException {
+        Client client = new Client();
+        for (int attempt = 0; !client.connect("localhost", clientPorts[node]); attempt++) {
+            if (attempt == 100) {
+                throw new IllegalStateException("Node " + node + " did not accept clients");
+            }
+            Thread.sleep(100);
+        }
+        clients[node] = client;
+        Thread reader = new Thread(() -> {
+            String message;
+            while ((message = client.readMessage()) != null) {
+                events.add(new Event(node, message, System.nanoTime()));
+            }
+        }, "harness-client-" + node);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    void shutdown() {
+        for (int node = 0; node < nodes; node++) {
+            if (clients[node] != null) {
+                clients[node].abort();
+            }
+            if (processes[node] != null) {
+                processes[node].destroyForcibly();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import client.Client;
+import protocol.DeliveryStatus;
+import protocol.Frame;
+import protocol.FrameType;
+import protocol.MessageDecoder;
+import protocol.WireFormat;
+import server.EngineMode;
+import server.Server;
+
+class FramingTest {
+
+    private Server server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testFrameRoundTrip() throws Exception {
+        ByteBuffer encoded = new Frame(FrameType.TEXT, 3, 7, 42L, "line one\nline two").encode();
+        List<Frame> frames = new ArrayList<>();
+
+        MessageDecoder decoder = new MessageDecoder();
+        decoder.switchTo(WireFormat.BINARY);
+        // Feed one byte at a time to exercise partial frames
+        while (encoded.hasRemaining()) {
+            decoder.feed(new byte[] {encoded.get()}, 0, 1, frames::add);
+        }
+
+        assertEquals(1, frames.size());
+        Frame frame = frames.get(0);
+        assertEquals(FrameType.TEXT, frame.getType());
+        assertEquals(3, frame.getSender());
+        assertEquals(7, frame.getTarget());
+        assertEquals(42L, frame.getSequence());
+        assertEquals("line one\nline two", frame.getPayload());
+    }
+
+    @Test
+    void testSwitchFromLinesToFramesInsideOneRead() throws Exception {
+        ByteBuffer frame = Frame.text("after").encode();
+        byte[] line = "before\r\n".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer both = ByteBuffer.allocate(line.length + frame.remaining()).put(line).put(frame);
+        both.flip();
+
+        MessageDecoder decoder = new MessageDecoder();
+        List<String> payloads = new ArrayList<>();
+        decoder.feed(both, f -> {
+            payloads.add(f.getPayload());
+            decoder.switchTo(WireFormat.BINARY);
+        });
+
+        assertEquals(List.of("before", "after"), payloads);
+    }
+
+    @Test
+    void testRejectsOversizedFrame() {
+        MessageDecoder decoder = new MessageDecoder();
+        decoder.switchTo(WireFormat.BINARY);
+        byte[] header = ByteBuffer.allocate(4).putInt(Frame.MAX_FRAME_LENGTH + 1).array();
+
+        assertThrows(ProtocolException.class, () -> decoder.feed(header, 0, header.length, f -> {}));
+    }
+
+    @Test
+    void testBinaryClientThreadPerClient() throws Exception {
+        assertBinaryRosterArrivesWhole(EngineMode.THREAD_PER_CLIENT);
+    }
+
+    @Test
+    void testBinaryClientNio() throws Exception {
+        assertBinaryRosterArrivesWhole(EngineMode.NIO);
+    }
+
+    @Test
+    void testPipelinedSendsAreAcknowledged() throws Exception {
+        server = new Server(EngineMode.NIO);
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+
+        Client client = new Client();
+        client.setPreferredWireFormat(WireFormat.BINARY);
+        client.setMaxInFlight(16);
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+
+        // Acknowledgements are completed by the reading thread
+        Thread reader = new Thread(() -> {
+            while (client.readMessage() != null) {
+                // Discard ordinary messages
+            }
+        });
+        reader.start();
+
+        List<CompletableFuture<DeliveryStatus>> acks = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            acks.add(client.sendAsync("message " + i));
+        }
+        CompletableFuture<DeliveryStatus> rejected = client.sendAsync("@99 nobody home");
+
+        for (CompletableFuture<DeliveryStatus> ack : acks) {
+            assertEquals(DeliveryStatus.ROUTED, ack.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(DeliveryStatus.REJECTED, rejected.get(5, TimeUnit.SECONDS));
+        assertEquals(0, client.getInFlightCount());
+
+        client.disconnect();
+        reader.join(2000);
+    }
+
+    @Test
+    void testSendAsyncRequiresBinaryFraming() {
+        Client client = new Client();
+        assertTrue(client.sendAsync("hello").isCompletedExceptionally());
+    }
+
+    @Test
+    void testHeartbeatsKeepBinaryClientConnected() throws Exception {
+        server = new Server(EngineMode.NIO);
+        server.setHeartbeatIntervalMillis(100);
+        server.setIdleTimeoutMillis(400);
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+
+        Client client = new Client();
+        client.setPreferredWireFormat(WireFormat.BINARY);
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+
+        // The reading thread answers pings; they never show up as messages
+        List<String> messages = new CopyOnWriteArrayList<>();
+        Thread reader = new Thread(() -> {
+            String message;
+            while ((message = client.readMessage()) != null) {
+                messages.add(message);
+            }
+        });
+        reader.start();
+
+        Thread.sleep(1200); // Three idle timeouts without the client sending anything itself
+        assertEquals(1, server.getClients().size());
+        assertTrue(client.isConnected());
+
+        int received = messages.size();
+        Thread.sleep(500); // Several more pings
+        assertEquals(received, messages.size());
+
+        client.disconnect();
+        reader.join(2000);
+    }
+
+    @Test
+    void testSilentLineClientIsEvicted() throws Exception {
+        server = new Server();
+        server.setIdleTimeoutMillis(300);
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+
+        Client client = new Client();
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+        long start = System.nanoTime();
+
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(5), () -> {
+            while (client.readMessage() != null) {
+                // Drain until the server closes the connection
+            }
+        });
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+        for (int i = 0; i < 100 && !server.getClients().isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(server.getClients().isEmpty());
+        client.disconnect();
+    }
+
+    // A binary client gets the multi-line member list as one message, while a line client still works
+    private void assertBinaryRosterArrivesWhole(EngineMode mode) throws Exception {
+        server = new Server(mode);
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+
+        Client coordinator = new Client();
+        coordinator.setPreferredWireFormat(WireFormat.BINARY);
+        assertTrue(coordinator.connect("localhost", server.getLocalPort()));
+        assertEquals(WireFormat.BINARY, coordinator.getWireFormat());
+        skipUntil(coordinator, "You are the coordinator.");
+
+        Client member = new Client();
+        assertTrue(member.connect("localhost", server.getLocalPort()));
+        assertEquals(WireFormat.LINE, member.getWireFormat());
+        skipUntil(member, "Current Coordinator");
+
+        coordinator.sendMessage("!members");
+        String roster = skipUntil(coordinator, "Active Clients:");
+        assertTrue(roster.contains("- Client 1 (Coordinator)"));
+        assertTrue(roster.contains("- Client 2 "));
+
+        coordinator.sendMessage("hello line client");
+        assertEquals("Client 1: hello line client", member.readMessage());
+
+        member.disconnect();
+        coordinator.disconnect();
+    }
+
+    private String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,78 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import server.LatencyHistogram;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 20; value++) {
+            histogram.record(value);
+        }
+        assertEquals(20, histogram.getCount());
+        assertEquals(10, histogram.getValueAtPercentile(50));
+        assertEquals(20, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void testPercentilesStayWithinThreePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertWithin(5_000_000, histogram.getValueAtPercentile(50));
+        assertWithin(9_900_000, histogram.getValueAtPercentile(99));
+        assertWithin(9_990_000, histogram.getValueAtPercentile(99.9));
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void testOutliersAndNegativeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    void testConcurrentRecordingLosesNothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(1000 + i % 50);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400_000, histogram.getCount());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.03, "Expected about " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,62 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.*;
+
+import loadtest.LoadGenerator;
+
+class LoadGeneratorTest {
+
+    @Test
+    void testNioReport() throws Exception {
+        checkReport("NIO");
+    }
+
+    @Test
+    void testThreadPerClientReport() throws Exception {
+        checkReport("THREAD_PER_CLIENT");
+    }
+
+    private void checkReport(String engine) throws Exception {
+        String report = LoadGenerator.run("embedded=" + engine, "clients=20", "threads=2",
+                "warmup=0", "duration=1", "rate=50");
+
+        assertEquals(20, value(report, "connected"));
+        assertTrue(value(report, "sentBroadcast") > 0);
+        assertTrue(value(report, "sentPrivate") > 0);
+        assertTrue(value(report, "ackDelivered") > 0);
+        assertTrue(value(report, "delivered") > 0);
+        assertTrue(value(report, "deliveryLatencyP99Micros") >= value(report, "deliveryLatencyP50Micros"));
+        assertEquals(0, value(report, "connectionsLost"));
+        assertEquals(0, value(report, "protocolErrors"));
+    }
+
+    @Test
+    void testOnlyTheCoordinatorRequestsMembers() throws Exception {
+        String report = LoadGenerator.run("embedded=NIO", "clients=5", "threads=1",
+                "warmup=0", "duration=1", "rate=50", "broadcast=0", "private=0", "members=1");
+
+        // The others draw the same roster request and broadcast instead
+        assertTrue(value(report, "sentMembers") > 0);
+        assertTrue(value(report, "sentBroadcast") > 0);
+        assertEquals(0, value(report, "protocolErrors"));
+    }
+
+    @Test
+    void testRejectsNegativeSettings() {
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.run("private=-10"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.run("members=-1"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.run("rate=-2"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.run("size=-64"));
+    }
+
+    private long value(String report, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\": (-?\\d+)").matcher(report);
+        assertTrue(matcher.find(), name + " missing from report:\n" + report);
+        return Long.parseLong(matcher.group(1));
+    }
+}
@@ -0,0 +1,80 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import protocol.LoopbackTransport;
+
+class LoopbackTransportTest {
+
+    @Test
+    void testBytesArriveInOrderThroughSmallBuffer() throws Exception {
+        LoopbackTransport[] ends = LoopbackTransport.pair(100);
+        byte[] sent = new byte[100_000];
+        new Random(7).nextBytes(sent);
+
+        // The writer blocks whenever 100 bytes are waiting, so this only finishes if the reader keeps up
+        Thread writer = new Thread(() -> {
+            try {
+                OutputStream out = ends[0].getOutputStream();
+                for (int offset = 0; offset < sent.length; offset += 999) {
+                    out.write(sent, offset, Math.min(999, sent.length - offset));
+                }
+                ends[0].close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+
+        InputStream in = ends[1].getInputStream();
+        byte[] received = new byte[sent.length];
+        int total = 0;
+        int read;
+        while ((read = in.read(received, total, Math.min(4096, received.length - total))) > 0) {
+            total += read;
+        }
+        writer.join(2000);
+
+        assertEquals(sent.length, total);
+        assertArrayEquals(sent, received);
+        assertEquals(-1, in.read(new byte[1], 0, 1)); // Closed by the writer
+    }
+
+    @Test
+    void testReadTimeout() throws Exception {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        ends[1].setReadTimeout(50);
+        long start = System.nanoTime();
+        assertThrows(SocketTimeoutException.class, () -> ends[1].getInputStream().read(new byte[8], 0, 8));
+        assertTrue(System.nanoTime() - start >= 40_000_000L);
+
+        // A timeout does not break the connection
+        ends[0].getOutputStream().write(new byte[] {1, 2, 3}, 0, 3);
+        byte[] data = new byte[8];
+        assertEquals(3, ends[1].getInputStream().read(data, 0, 8));
+        assertArrayEquals(new byte[] {1, 2, 3}, Arrays.copyOf(data, 3));
+    }
+
+    @Test
+    void testClosingEitherEndIsSeenByTheOther() throws Exception {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        ends[0].getOutputStream().write(new byte[] {42}, 0, 1);
+        assertTrue(ends[0].isOpen());
+        assertTrue(ends[1].getRemotePort() >= 49152); // A made-up ephemeral port for the roster
+
+        ends[0].close();
+        assertFalse(ends[1].isOpen());
+        assertEquals(42, ends[1].getInputStream().read()); // What was sent before the close still arrives
+        assertEquals(-1, ends[1].getInputStream().read());
+        assertThrows(IOException.class, () -> ends[1].getOutputStream().write(new byte[] {1}, 0, 1));
+    }
+}
@@ -0,0 +1,155 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import client.Client;
+import protocol.Frame;
+import server.LogRecord;
+import server.MessageLog;
+import server.Server;
+
+class MessageLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAppendAndReadFromOffset() throws Exception {
+        MessageLog log = new MessageLog(directory);
+        for (int i = 0; i < 10; i++) {
+            log.append(1, i % 2 == 0 ? Frame.NO_CLIENT : 2, "message " + i);
+        }
+        awaitOffset(log, 10);
+
+        List<LogRecord> records = new ArrayList<>();
+        long next = log.read(4, 3, records::add);
+
+        assertEquals(7, next);
+        assertEquals(3, records.size());
+        assertEquals(4, records.get(0).offset());
+        assertEquals("message 4", records.get(0).text());
+        assertTrue(records.get(0).isBroadcast());
+        assertEquals(2, records.get(1).target());
+        log.close();
+    }
+
+    @Test
+    void testRollsSegmentsAndReopensWhereItLeftOff() throws Exception {
+        // Small segments so a few hundred records span several files and index entries
+        MessageLog log = new MessageLog(directory, 16 * 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        for (int i = 0; i < 1000; i++) {
+            log.append(1, Frame.NO_CLIENT, "message " + i);
+        }
+        log.close();
+        assertTrue(log.getSegmentCount() > 1);
+
+        MessageLog reopened = new MessageLog(directory, 16 * 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(1000, reopened.getNextOffset());
+        assertEquals(1000, reopened.getSessionStartOffset());
+
+        List<LogRecord> records = new ArrayList<>();
+        reopened.read(777, 2, records::add);
+        assertEquals("message 777", records.get(0).text());
+        assertEquals("message 778", records.get(1).text());
+
+        reopened.append(1, Frame.NO_CLIENT, "after restart");
+        awaitOffset(reopened, 1001);
+        records.clear();
+        reopened.read(1000, 10, records::add);
+        assertEquals(List.of("after restart"), records.stream().map(LogRecord::text).toList());
+        reopened.close();
+    }
+
+    @Test
+    void testRetentionDropsOldestSegments() throws Exception {
+        MessageLog log = new MessageLog(directory, 4096, 3 * 4096, Long.MAX_VALUE);
+        for (int i = 0; i < 1000; i++) {
+            log.append(1, Frame.NO_CLIENT, "message " + i);
+        }
+        log.close();
+
+        assertTrue(log.getSegmentCount() <= 3);
+        assertTrue(log.getStartOffset() > 0);
+        try (var files = Files.list(directory)) {
+            assertEquals(2 * log.getSegmentCount(), files.count());
+        }
+
+        // Reading below the retained range starts at the oldest record still kept
+        List<LogRecord> records = new ArrayList<>();
+        log.read(0, 1, records::add);
+        assertEquals(log.getStartOffset(), records.get(0).offset());
+    }
+
+    @Test
+    void testFirstRecordLargerThanASegment() throws Exception {
+        MessageLog log = new MessageLog(directory, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        String large = "x".repeat(4000);
+        log.append(1, Frame.NO_CLIENT, large);
+        log.append(1, Frame.NO_CLIENT, "small");
+        awaitOffset(log, 2);
+        log.close();
+
+        // The empty first segment gave way to one big enough, rather than being mapped again
+        MessageLog reopened = new MessageLog(directory, 1024, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(2, reopened.getNextOffset());
+        List<LogRecord> records = new ArrayList<>();
+        reopened.read(0, 10, records::add);
+        assertEquals(List.of(large, "small"), records.stream().map(LogRecord::text).toList());
+        reopened.close();
+    }
+
+    @Test
+    void testReplayCommand() throws Exception {
+        Server server = new Server();
+        server.setMessageLog(new MessageLog(directory));
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+
+        Client client = new Client();
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+        skipUntil(client, "You are the coordinator.");
+        client.sendMessage("first");
+        client.sendMessage("second");
+        awaitOffset(server.getMessageLog(), 3); // Coordinator notice plus both messages
+
+        client.sendMessage("!replay 1");
+        assertEquals("[LOG 1] Client 1: first", skipUntil(client, "[LOG"));
+        assertEquals("[LOG 2] Client 1: second", client.readMessage());
+        assertEquals("[LOG END 3]", client.readMessage());
+
+        // Offsets past the int range are still offsets
+        client.sendMessage("!replay 3000000000");
+        assertEquals("[LOG END 3000000000]", skipUntil(client, "[LOG"));
+
+        client.disconnect();
+        server.stop();
+    }
+
+    private void awaitOffset(MessageLog log, long offset) throws InterruptedException {
+        for (int i = 0; i < 200 && log.getNextOffset() < offset; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(offset, log.getNextOffset());
+    }
+
+    // Reads messages until one starts with the expected prefix
+    private String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
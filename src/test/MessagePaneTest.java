@@ -0,0 +1,84 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+import org.junit.jupiter.api.Test;
+
+import client.MessagePane;
+import client.MessageRing;
+
+class MessagePaneTest {
+
+    @Test
+    void testRingOverwritesOldest() {
+        MessageRing ring = new MessageRing(3);
+        assertTrue(ring.offer("a")); // Empty before, so the caller schedules a drain
+        assertFalse(ring.offer("b"));
+        assertFalse(ring.offer("c"));
+        assertFalse(ring.offer("d"));
+        assertFalse(ring.offer("e"));
+
+        List<String> drained = new ArrayList<>();
+        assertEquals(3, ring.drainTo(drained));
+        assertEquals(List.of("c", "d", "e"), drained);
+        assertEquals(2, ring.getDropped());
+        assertEquals(0, ring.size());
+        assertTrue(ring.offer("f"));
+    }
+
+    @Test
+    void testStormIsBatchedAndBounded() throws Exception {
+        JTextArea textArea = new JTextArea();
+        AtomicInteger rendered = new AtomicInteger();
+        MessagePane pane = new MessagePane(textArea, 100, message -> rendered.incrementAndGet());
+
+        int posted = 20_000;
+        for (int i = 1; i <= posted; i++) {
+            pane.post("message " + i);
+        }
+        String[] last = new String[1];
+        for (int i = 0; i < 100 && !"message 20000".equals(last[0]); i++) {
+            Thread.sleep(20);
+            SwingUtilities.invokeAndWait(() -> {
+                String[] lines = textArea.getText().split("\n");
+                last[0] = lines[lines.length - 1];
+            });
+        }
+
+        assertEquals("message 20000", last[0]);
+        int[] lineCount = new int[1];
+        SwingUtilities.invokeAndWait(() -> lineCount[0] = textArea.getLineCount() - 1);
+        assertTrue(lineCount[0] <= 100, lineCount[0] + " lines kept");
+
+        // Every message was either rendered or dropped before it could be
+        assertEquals(posted, rendered.get() + pane.getDroppedMessages());
+        assertTrue(pane.getDroppedMessages() > 0);
+        assertTrue(pane.getTrimmedLines() > 0 || rendered.get() <= 100);
+    }
+
+    @Test
+    void testQuietTrafficKeepsEveryLine() throws Exception {
+        JTextArea textArea = new JTextArea();
+        MessagePane pane = new MessagePane(textArea, 10, message -> {});
+        for (int i = 1; i <= 25; i++) {
+            pane.post("line " + i);
+            Thread.sleep(20);
+        }
+        Thread.sleep(100);
+        SwingUtilities.invokeAndWait(() -> {});
+
+        String[] lines = textArea.getText().split("\n");
+        assertEquals(10, lines.length);
+        assertEquals("line 16", lines[0]);
+        assertEquals("line 25", lines[9]);
+        assertEquals(0, pane.getDroppedMessages());
+        assertEquals(15, pane.getTrimmedLines());
+    }
+}
@@ -0,0 +1,125 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import client.Client;
+import org.junit.jupiter.api.*;
+
+import server.EngineMode;
+import server.Server;
+
+class NioServerTest {
+
+    private Server server;
+    private Client first;
+    private Client second;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new Server(EngineMode.NIO);
+        server.setEventLoopThreads(2);
+        new Thread(() -> server.start(0)).start();
+
+        // Wait for the listening channel to be bound
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+        first = new Client();
+        second = new Client();
+    }
+
+    @AfterEach
+    void tearDown() {
+        first.disconnect();
+        second.disconnect();
+        server.stop();
+    }
+
+    @Test
+    void testFirstClientBecomesCoordinator() {
+        assertTrue(first.connect("localhost", server.getLocalPort()));
+
+        assertEquals("You are now the coordinator.", first.readMessage());
+        assertEquals("Server: Client 1 is now the coordinator.", first.readMessage());
+        assertEquals("Welcome! Your ID is 1", skipUntil(first, "Welcome!"));
+        assertEquals("You are the coordinator.", skipUntil(first, "You are the coordinator."));
+        assertEquals(1, server.getCoordinatorId());
+    }
+
+    @Test
+    void testBroadcastAndPrivateMessage() {
+        assertTrue(first.connect("localhost", server.getLocalPort()));
+        skipUntil(first, "You are the coordinator.");
+        assertTrue(second.connect("localhost", server.getLocalPort()));
+        assertEquals("Welcome! Your ID is 2", second.readMessage());
+        assertEquals("Current Coordinator: Client 1 [IP Address: " + server.getFakeClientIP(1) + "]", second.readMessage());
+
+        second.sendMessage("hello from two");
+        assertEquals("Client 2: hello from two", skipUntil(first, "Client 2: hello from two"));
+
+        first.sendMessage("@2 secret");
+        assertEquals("Private from 1: secret", second.readMessage());
+    }
+
+    @Test
+    void testMalformedPrivateTargetKeepsConnection() {
+        assertTrue(first.connect("localhost", server.getLocalPort()));
+        skipUntil(first, "You are the coordinator.");
+
+        first.sendMessage("@abc hi");
+        assertEquals("Invalid private message target: @abc", skipUntil(first, "Invalid"));
+
+        first.sendMessage("!members");
+        assertNotNull(skipUntil(first, "Active Clients:"));
+    }
+
+    @Test
+    void testCoordinatorFailover() {
+        assertTrue(first.connect("localhost", server.getLocalPort()));
+        skipUntil(first, "You are the coordinator.");
+        assertTrue(second.connect("localhost", server.getLocalPort()));
+        skipUntil(second, "Current Coordinator");
+
+        first.disconnect();
+
+        assertEquals("You are now the coordinator.", skipUntil(second, "You are now the coordinator."));
+        assertEquals(2, server.getCoordinatorId());
+    }
+
+    @Test
+    void testChannelMessagesReachOnlySubscribers() {
+        assertTrue(first.connect("localhost", server.getLocalPort()));
+        skipUntil(first, "You are the coordinator.");
+        assertTrue(second.connect("localhost", server.getLocalPort()));
+        skipUntil(second, "Current Coordinator");
+
+        first.sendMessage("!join #news");
+        assertEquals("You are now the coordinator of #news.", skipUntil(first, "You are now the coordinator of"));
+        assertEquals("Joined #news (1 members).", skipUntil(first, "Joined"));
+
+        second.sendMessage("#news not a member yet");
+        assertEquals("You are not in #news.", skipUntil(second, "You are not in"));
+
+        second.sendMessage("!join news");
+        assertEquals("Joined #news (2 members).", skipUntil(second, "Joined"));
+        second.sendMessage("#news hello room");
+        assertEquals("[#news] Client 2: hello room", skipUntil(first, "[#news]"));
+        first.sendMessage("!who #news");
+        assertEquals("Members of #news:", skipUntil(first, "Members of"));
+
+        first.disconnect();
+        assertEquals("You are now the coordinator of #news.", skipUntil(second, "You are now the coordinator of"));
+        assertEquals(2, server.getChannels().get("news").getCoordinatorId());
+    }
+
+    // Reads messages until one starts with the expected prefix
+    private String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,121 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import client.Client;
+import protocol.DeliveryStatus;
+import server.OfflineInboxes;
+import server.Server;
+
+class OfflineInboxesTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSpillsToDiskAndDrainsInOrder() throws Exception {
+        OfflineInboxes inboxes = new OfflineInboxes();
+        inboxes.setDirectory(directory);
+        inboxes.setMemoryLimit(3);
+
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sent.add("message " + i);
+            assertTrue(inboxes.store("7", "message " + i));
+        }
+        assertEquals(10, inboxes.size("7"));
+        assertTrue(Files.exists(directory.resolve("7.inbox")));
+
+        assertEquals(sent, inboxes.drain("7"));
+        assertEquals(0, inboxes.size("7"));
+        assertFalse(Files.exists(directory.resolve("7.inbox")));
+        assertTrue(inboxes.drain("7").isEmpty());
+    }
+
+    @Test
+    void testFullInboxRejects() {
+        OfflineInboxes inboxes = new OfflineInboxes();
+        inboxes.setDirectory(directory);
+        inboxes.setMemoryLimit(1);
+        inboxes.setMaxMessages(2);
+
+        assertTrue(inboxes.store("a1", "a"));
+        assertTrue(inboxes.store("a1", "b"));
+        assertFalse(inboxes.store("a1", "c"));
+        assertEquals(List.of("a", "b"), inboxes.drain("a1"));
+    }
+
+    @Test
+    void testExpireDropsOldInboxes() {
+        OfflineInboxes inboxes = new OfflineInboxes();
+        inboxes.store("a1", "a");
+        inboxes.setTtlMillis(-1);
+
+        inboxes.expire();
+
+        assertEquals(0, inboxes.getInboxCount());
+    }
+
+    @Test
+    void testQueuedForDetachedSessionAndDeliveredOnResume() throws Exception {
+        Server server = new Server();
+        server.setSessionGraceMillis(5000);
+        server.getOfflineInboxes().setDirectory(directory);
+
+        Client away = new Client();
+        away.setSessionResumption(true);
+        assertTrue(away.connect(server.connectLoopback()));
+        assertEquals("Welcome! Your ID is 1", skipUntil(away, "Welcome!"));
+        Client sender = new Client();
+        assertTrue(sender.connect(server.connectLoopback()));
+        skipUntil(sender, "Welcome!");
+
+        // The connection drops; the session keeps ID 1 registered while it may still resume
+        away.abort();
+        for (int i = 0; i < 100 && !server.getClients().get(1).getSession().isDetached(); i++) {
+            Thread.sleep(20);
+        }
+        sender.sendMessage("@1 first");
+        assertEquals("Client 1 is offline; your message will be delivered when they reconnect.", skipUntil(sender, "Client 1 is"));
+        assertEquals(DeliveryStatus.QUEUED, server.sendPrivateMessage(1, "second"));
+        assertEquals(2, server.getOfflineInboxes().size(away.getSessionToken()));
+
+        assertTrue(away.connect(server.connectLoopback()));
+        assertTrue(away.isResumed());
+        assertEquals("Private from 2: first", skipUntil(away, "Private from"));
+        assertEquals("second", away.readMessage());
+        assertEquals(0, server.getOfflineInboxes().getInboxCount());
+        assertEquals(DeliveryStatus.DELIVERED, server.sendPrivateMessage(1, "third"));
+        assertEquals("third", skipUntil(away, "third")); // As coordinator it also gets a presence snapshot
+
+        // Without a session there is nobody to come back, so nothing is kept
+        sender.disconnect();
+        for (int i = 0; i < 100 && server.getClients().containsKey(2); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(DeliveryStatus.REJECTED, server.sendPrivateMessage(2, "gone"));
+        assertEquals(DeliveryStatus.REJECTED, server.sendPrivateMessage(42, "never issued"));
+
+        away.abort();
+        server.stop();
+    }
+
+    // Reads messages until one starts with the expected prefix
+    private String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,35 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import server.OutboundMessage;
+
+class OutboundMessageTest {
+
+    @Test
+    void testLineFrameIsEncodedUtf8WithNewline() {
+        OutboundMessage message = new OutboundMessage("héllo");
+        ByteBuffer frame = message.lineFrame();
+
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        assertEquals("héllo\n", new String(bytes, StandardCharsets.UTF_8));
+        assertTrue(frame.isReadOnly());
+    }
+
+    @Test
+    void testRecipientsGetIndependentViews() {
+        OutboundMessage message = new OutboundMessage("shared");
+        ByteBuffer first = message.lineFrame();
+        ByteBuffer second = message.lineFrame();
+
+        first.position(first.limit()); // Fully "written" by one recipient
+        assertEquals(7, second.remaining());
+        assertEquals(7, message.lineFrame().remaining());
+    }
+}
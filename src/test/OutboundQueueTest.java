@@ -0,0 +1,86 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import server.OutboundQueue;
+import server.SlowConsumerPolicy;
+import server.SlowConsumerStats;
+
+class OutboundQueueTest {
+
+    @Test
+    void testDropOldest() {
+        SlowConsumerStats stats = new SlowConsumerStats();
+        OutboundQueue<String> queue = new OutboundQueue<>(2, SlowConsumerPolicy.DROP_OLDEST, stats);
+
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertTrue(queue.offer("c"));
+
+        assertEquals("b", queue.poll());
+        assertEquals("c", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(1, stats.getDroppedOldest());
+    }
+
+    @Test
+    void testDropNewest() {
+        SlowConsumerStats stats = new SlowConsumerStats();
+        OutboundQueue<String> queue = new OutboundQueue<>(2, SlowConsumerPolicy.DROP_NEWEST, stats);
+
+        queue.offer("a");
+        queue.offer("b");
+        assertTrue(queue.offer("c"));
+
+        assertEquals("a", queue.poll());
+        assertEquals("b", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(1, stats.getDroppedNewest());
+    }
+
+    @Test
+    void testDisconnect() {
+        SlowConsumerStats stats = new SlowConsumerStats();
+        OutboundQueue<String> queue = new OutboundQueue<>(1, SlowConsumerPolicy.DISCONNECT, stats);
+
+        assertTrue(queue.offer("a"));
+        assertFalse(queue.offer("b"));
+        assertEquals(1, queue.size());
+        assertEquals(1, stats.getDisconnected());
+    }
+
+    @Test
+    void testKeepsOrderAndEnqueueTimesAcrossGrowthAndWrap() {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(100, SlowConsumerPolicy.DISCONNECT, new SlowConsumerStats());
+        long before = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, queue.poll());
+        }
+        long between = System.nanoTime();
+        for (int i = 10; i < 40; i++) {
+            queue.offer(i);
+        }
+
+        for (int i = 5; i < 40; i++) {
+            assertEquals(i, queue.poll());
+            long queued = queue.lastTimedFromNanos();
+            assertTrue(queued >= (i < 10 ? before : between) && queued <= System.nanoTime());
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void testTakeDrainsThenReturnsNullAfterClose() throws Exception {
+        OutboundQueue<String> queue = new OutboundQueue<>(4, SlowConsumerPolicy.DISCONNECT, new SlowConsumerStats());
+        queue.offer("last");
+        queue.close();
+
+        assertEquals("last", queue.take());
+        assertNull(queue.take());
+    }
+}
@@ -0,0 +1,86 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import client.PresenceTracker;
+import server.Roster;
+import server.RosterFormat;
+
+class PresenceTrackerTest {
+
+    @Test
+    void testAppliesDeltasOnTopOfSnapshot() {
+        Roster roster = new Roster();
+        AtomicInteger resyncs = new AtomicInteger();
+        PresenceTracker tracker = new PresenceTracker(resyncs::incrementAndGet);
+
+        roster.add(1, "192.168.1.5", 5001);
+        roster.setCoordinator(1);
+        assertTrue(tracker.accept(roster.snapshot().render(RosterFormat.PRESENCE_SNAPSHOT)));
+
+        // Deltas published from here on are fed to the tracker
+        roster.setPresenceListener(tracker::accept);
+        roster.add(2, "192.168.1.6", 5002);
+        roster.add(3, "192.168.1.7", 5003);
+        roster.remove(1);
+        roster.setCoordinator(2);
+
+        assertEquals(roster.getVersion(), tracker.getVersion());
+        assertEquals(2, tracker.getCoordinatorId());
+        assertEquals(2, tracker.getMembers().size());
+        assertTrue(tracker.getMembers().get(3).contains("[Port: 5003]"));
+        assertEquals(0, resyncs.get());
+    }
+
+    @Test
+    void testGapRequestsSnapshot() {
+        Roster roster = new Roster();
+        AtomicInteger resyncs = new AtomicInteger();
+        PresenceTracker tracker = new PresenceTracker(resyncs::incrementAndGet);
+
+        roster.add(1, "192.168.1.5", 5001);
+        tracker.accept(roster.snapshot().render(RosterFormat.PRESENCE_SNAPSHOT));
+
+        roster.add(2, "192.168.1.6", 5002); // Lost in transit
+        roster.setPresenceListener(tracker::accept);
+        roster.add(3, "192.168.1.7", 5003);
+
+        assertEquals(1, resyncs.get());
+        assertFalse(tracker.isSynced());
+
+        tracker.accept(roster.snapshot().render(RosterFormat.PRESENCE_SNAPSHOT));
+        assertTrue(tracker.isSynced());
+        assertEquals(3, tracker.getMembers().size());
+    }
+
+    @Test
+    void testGathersSnapshotSentLineByLine() {
+        Roster roster = new Roster();
+        PresenceTracker tracker = new PresenceTracker(() -> {});
+        roster.add(1, "192.168.1.5", 5001);
+        roster.add(2, "192.168.1.6", 5002);
+        roster.setCoordinator(2);
+
+        // The line protocol hands each line of the snapshot over as its own message
+        String[] lines = roster.snapshot().render(RosterFormat.PRESENCE_SNAPSHOT).split("\n");
+        assertEquals(3, lines.length);
+        for (String line : lines) {
+            assertFalse(tracker.isSynced());
+            assertTrue(tracker.accept(line));
+        }
+        assertTrue(tracker.isSynced());
+        assertEquals(2, tracker.getMembers().size());
+        assertEquals(2, tracker.getCoordinatorId());
+        assertFalse(tracker.accept("Client 1: hello")); // Chat after the snapshot is left alone
+    }
+
+    @Test
+    void testIgnoresOtherMessages() {
+        PresenceTracker tracker = new PresenceTracker(() -> {});
+        assertFalse(tracker.accept("Client 2: hello"));
+    }
+}
@@ -0,0 +1,90 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import server.Roster;
+import server.RosterFormat;
+import server.RosterSnapshot;
+
+class RosterTest {
+
+    @Test
+    void testSnapshotIsReusedUntilMembershipChanges() {
+        Roster roster = new Roster();
+        roster.add(1, "192.168.1.5", 5001);
+
+        RosterSnapshot first = roster.snapshot();
+        assertSame(first, roster.snapshot());
+        assertSame(first.message(RosterFormat.MEMBERS), roster.snapshot().message(RosterFormat.MEMBERS));
+
+        long version = roster.getVersion();
+        roster.add(2, "192.168.1.6", 5002);
+        assertTrue(roster.getVersion() > version);
+        assertNotSame(first, roster.snapshot());
+        assertEquals(2, roster.snapshot().size());
+    }
+
+    @Test
+    void testRenderFormats() {
+        Roster roster = new Roster();
+        roster.add(2, "192.168.1.6", 5002);
+        roster.add(1, "192.168.1.5", 5001);
+        roster.setCoordinator(1);
+
+        RosterSnapshot snapshot = roster.snapshot();
+        assertEquals("Active Clients:\n"
+                + "- Client 1 (Coordinator) [ID: 1] [IP Address: 192.168.1.5] [Port: 5001]\n"
+                + "- Client 2 [ID: 2] [IP Address: 192.168.1.6] [Port: 5002]\n",
+                snapshot.render(RosterFormat.MEMBERS));
+        assertEquals("Group Member Details:\n\n"
+                + "Client 1 (Coordinator) [ID: 1] [IP Address: 192.168.1.5] [Port: 5001]\n"
+                + "Client 2 [ID: 2] [IP Address: 192.168.1.6] [Port: 5002]\n",
+                snapshot.render(RosterFormat.GROUP_DETAILS));
+    }
+
+    @Test
+    void testRemoveUnknownClientKeepsVersion() {
+        Roster roster = new Roster();
+        roster.add(1, "192.168.1.5", 5001);
+        long version = roster.getVersion();
+
+        roster.remove(42);
+        assertEquals(version, roster.getVersion());
+
+        roster.remove(1);
+        assertEquals(0, roster.snapshot().size());
+    }
+
+    @Test
+    void testConcurrentChangesPublishEveryVersionInOrder() throws InterruptedException {
+        Roster roster = new Roster();
+        List<String> deltas = new ArrayList<>();
+        roster.setPresenceListener(deltas::add);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t * 1000;
+            threads[t] = new Thread(() -> {
+                for (int id = first; id < first + 500; id++) {
+                    roster.add(id, "192.168.1.5", 5001);
+                    roster.remove(id - 1);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(roster.getVersion(), deltas.size());
+        for (int i = 0; i < deltas.size(); i++) {
+            assertTrue(deltas.get(i).startsWith(Roster.PRESENCE_PREFIX + (i + 1) + "] "), deltas.get(i));
+        }
+        assertEquals(4, roster.snapshot().size());
+    }
+}
@@ -0,0 +1,279 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import client.Client;
+import org.junit.jupiter.api.Test;
+
+import protocol.DeliveryStatus;
+import protocol.WireFormat;
+import server.EngineMode;
+import server.Server;
+import server.ServerMetrics;
+
+class ServerMetricsTest {
+
+    @Test
+    void testTrafficIsCountedWithThreads() throws Exception {
+        assertTrafficIsCounted(EngineMode.THREAD_PER_CLIENT);
+    }
+
+    @Test
+    void testTrafficIsCountedWithNio() throws Exception {
+        assertTrafficIsCounted(EngineMode.NIO);
+    }
+
+    private void assertTrafficIsCounted(EngineMode mode) throws Exception {
+        Server server = start(mode);
+        Client sender = new Client();
+        Client receiver = new Client();
+        try {
+            assertTrue(sender.connect("localhost", server.getLocalPort()));
+            assertTrue(receiver.connect("localhost", server.getLocalPort()));
+            skipUntil(receiver, "Welcome!");
+            for (int i = 0; i < 100; i++) {
+                sender.sendMessage("hello " + i);
+            }
+            sender.sendMessage("!members");
+            assertEquals("Client 1: hello 99", skipUntil(receiver, "Client 1: hello 99"));
+
+            ServerMetrics metrics = server.getMetrics();
+            assertEquals(2, metrics.getConnectionCount());
+            assertEquals(2, metrics.getClientCount());
+            assertEquals(100L, metrics.getCommandCounts().get("(fallback)"));
+            for (int i = 0; i < 100 && metrics.getCommandCounts().get("!members") == 0; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(1L, metrics.getCommandCounts().get("!members"));
+            assertTrue(metrics.getBytesIn() >= 100 * "hello 0\n".length());
+
+            // Latency is recorded right after the write, which may be after the receiver saw the message
+            for (int i = 0; i < 100 && metrics.getMessageLatencyHistogram().getCount() < 100; i++) {
+                Thread.sleep(20);
+            }
+            assertTrue(metrics.getBytesOut() >= 100 * "Client 1: hello 0\n".length());
+            assertTrue(metrics.getMessageLatencyHistogram().getCount() >= 100);
+            assertTrue(metrics.getMessageLatencyHistogram().getValueAtPercentile(99) > 0);
+
+            receiver.disconnect();
+            for (int i = 0; i < 100 && metrics.getConnectionCount() > 1; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, metrics.getConnectionCount());
+            assertEquals(1, metrics.getConnectionsClosed());
+
+            String dump = metrics.dump();
+            assertTrue(dump.startsWith("[METRICS] connections=1"), dump);
+            assertTrue(dump.contains("!members=1"), dump);
+            assertTrue(dump.contains("messageLatency: count="), dump);
+        } finally {
+            sender.disconnect();
+            receiver.disconnect();
+            server.stop();
+        }
+    }
+
+    @Test
+    void testAcknowledgementsAreTimedWithThreads() throws Exception {
+        assertAcknowledgementsAreTimed(EngineMode.THREAD_PER_CLIENT);
+    }
+
+    @Test
+    void testAcknowledgementsAreTimedWithNio() throws Exception {
+        assertAcknowledgementsAreTimed(EngineMode.NIO);
+    }
+
+    private void assertAcknowledgementsAreTimed(EngineMode mode) throws Exception {
+        Server server = start(mode);
+        Client client = new Client();
+        client.setPreferredWireFormat(WireFormat.BINARY);
+        try {
+            assertTrue(client.connect("localhost", server.getLocalPort()));
+            Thread reader = new Thread(() -> {
+                while (client.readMessage() != null) {
+                    // Acknowledgements complete on this thread
+                }
+            });
+            reader.start();
+
+            List<CompletableFuture<DeliveryStatus>> acks = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                acks.add(client.sendAsync("request " + i));
+            }
+            for (CompletableFuture<DeliveryStatus> ack : acks) {
+                ack.get(5, TimeUnit.SECONDS);
+            }
+            for (int i = 0; i < 100 && server.getMetrics().getAckLatencyHistogram().getCount() < 50; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(50, server.getMetrics().getAckLatencyHistogram().getCount());
+        } finally {
+            client.disconnect();
+            server.stop();
+        }
+    }
+
+    @Test
+    void testCachedRosterIsTimedFromWhenItWasQueuedWithThreads() throws Exception {
+        assertCachedRosterIsTimedFromWhenItWasQueued(EngineMode.THREAD_PER_CLIENT);
+    }
+
+    @Test
+    void testCachedRosterIsTimedFromWhenItWasQueuedWithNio() throws Exception {
+        assertCachedRosterIsTimedFromWhenItWasQueued(EngineMode.NIO);
+    }
+
+    private void assertCachedRosterIsTimedFromWhenItWasQueued(EngineMode mode) throws Exception {
+        Server server = start(mode);
+        Client client = new Client();
+        try {
+            assertTrue(client.connect("localhost", server.getLocalPort()));
+            skipUntil(client, "Welcome!");
+            client.sendMessage("!members");
+            skipUntil(client, "Active Clients:");
+
+            // The second request reuses the roster message rendered for the first one
+            Thread.sleep(500);
+            ServerMetrics metrics = server.getMetrics();
+            metrics.resetLatencies();
+            client.sendMessage("!members");
+            skipUntil(client, "Active Clients:");
+            for (int i = 0; i < 100 && metrics.getMessageLatencyHistogram().getCount() == 0; i++) {
+                Thread.sleep(20);
+            }
+            assertTrue(metrics.getMessageLatencyHistogram().getCount() > 0);
+            assertTrue(metrics.getMessageLatencyHistogram().getMax() < TimeUnit.MILLISECONDS.toNanos(400));
+        } finally {
+            client.disconnect();
+            server.stop();
+        }
+    }
+
+    @Test
+    void testRoutedMessagesAreTimedFromTheirArrival() throws Exception {
+        Server server = start(EngineMode.NIO);
+        Client client = new Client();
+        try {
+            assertTrue(client.connect("localhost", server.getLocalPort()));
+            skipUntil(client, "Welcome!");
+            ServerMetrics metrics = server.getMetrics();
+            metrics.resetLatencies();
+
+            // Whatever delayed it before it reached this client's queue counts, fan-out included
+            server.broadcastMessage("Client 9: late", 9, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+            assertEquals("Client 9: late", skipUntil(client, "Client 9:"));
+            for (int i = 0; i < 100 && metrics.getMessageLatencyHistogram().getCount() == 0; i++) {
+                Thread.sleep(20);
+            }
+            assertTrue(metrics.getMessageLatencyHistogram().getMax() >= TimeUnit.SECONDS.toNanos(1));
+        } finally {
+            client.disconnect();
+            server.stop();
+        }
+    }
+
+    @Test
+    void testReplayedMessagesAreTimedFromTheResume() throws Exception {
+        Server server = start(EngineMode.NIO);
+        server.setSessionGraceMillis(5000);
+        Client away = new Client();
+        away.setSessionResumption(true);
+        Client sender = new Client();
+        try {
+            assertTrue(away.connect("localhost", server.getLocalPort()));
+            skipUntil(away, "Welcome!");
+            assertTrue(sender.connect("localhost", server.getLocalPort()));
+            skipUntil(sender, "Welcome!");
+            sender.sendMessage("hello");
+            assertEquals("Client 2: hello", skipUntil(away, "Client 2:"));
+
+            away.abort();
+            for (int i = 0; i < 100 && !server.getClients().get(1).getSession().isDetached(); i++) {
+                Thread.sleep(20);
+            }
+            sender.sendMessage("while you were away");
+            Thread.sleep(500);
+
+            ServerMetrics metrics = server.getMetrics();
+            metrics.resetLatencies();
+            assertTrue(away.connect("localhost", server.getLocalPort()));
+            assertTrue(away.isResumed());
+            assertEquals("Client 2: while you were away", skipUntil(away, "Client 2:"));
+            for (int i = 0; i < 100 && metrics.getMessageLatencyHistogram().getCount() == 0; i++) {
+                Thread.sleep(20);
+            }
+            assertTrue(metrics.getMessageLatencyHistogram().getCount() > 0);
+            assertTrue(metrics.getMessageLatencyHistogram().getMax() < TimeUnit.MILLISECONDS.toNanos(400));
+        } finally {
+            away.disconnect();
+            sender.disconnect();
+            server.stop();
+        }
+    }
+
+    @Test
+    void testMetricsAreRegisteredOverJmxWhileRunningWithThreads() throws Exception {
+        assertRegisteredOverJmxWhileRunning(EngineMode.THREAD_PER_CLIENT);
+    }
+
+    @Test
+    void testMetricsAreRegisteredOverJmxWhileRunningWithNio() throws Exception {
+        assertRegisteredOverJmxWhileRunning(EngineMode.NIO);
+    }
+
+    private void assertRegisteredOverJmxWhileRunning(EngineMode mode) throws Exception {
+        Server server = start(mode);
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("server:type=ServerMetrics,port=" + server.getLocalPort());
+        Client client = new Client();
+        try {
+            assertTrue(client.connect("localhost", server.getLocalPort()));
+            skipUntil(client, "Welcome!");
+            client.sendMessage("!members");
+            skipUntil(client, "Active Clients:");
+
+            assertTrue(mbeans.isRegistered(name));
+            assertEquals(1, mbeans.getAttribute(name, "ConnectionCount"));
+            TabularData commands = (TabularData) mbeans.getAttribute(name, "CommandCounts");
+            CompositeData members = commands.get(new Object[] {"!members"});
+            assertEquals(1L, members.get("value"));
+            assertTrue(((String) mbeans.invoke(name, "dump", null, null)).startsWith("[METRICS]"));
+        } finally {
+            client.disconnect();
+            server.stop();
+        }
+        assertFalse(mbeans.isRegistered(name));
+    }
+
+    private static Server start(EngineMode mode) throws InterruptedException {
+        Server server = new Server(mode);
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+        // The MBean is registered right after binding
+        Thread.sleep(50);
+        return server;
+    }
+
+    // Reads messages until one starts with the expected prefix
+    private static String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
@@ -2,30 +2,42 @@ package test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.List;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import client.Client;
+import protocol.LoopbackTransport;
 import server.Server;
-import server.ClientHandler;
+import server.HandlerExecutors;
 
+// Clients connect in memory through Server.connectLoopback(), so every test runs the real handlers and
+// routing without opening a socket or starting the server
 class ServerTest {
 
     private Server server;
+    private final List<Client> clients = new ArrayList<>();
 
     @BeforeEach
     void setUp() {
         server = new Server();
     }
 
+    @AfterEach
+    void tearDown() {
+        for (Client client : clients) {
+            client.abort();
+        }
+        server.stop();
+    }
+
     @Test
     void testAddClient() {
-        DummyClientHandler handler = new DummyClientHandler(1);
-        server.addClient(handler);
+        connect();
 
         assertEquals(1, server.getClients().size());
         assertTrue(server.getClients().containsKey(1));
@@ -33,8 +45,8 @@ class ServerTest {
 
     @Test
     void testRemoveClient() {
-        DummyClientHandler handler = new DummyClientHandler(2);
-        server.addClient(handler);
+        connect();
+        connect();
         server.removeClient(2);
 
         assertFalse(server.getClients().containsKey(2));
@@ -42,48 +54,66 @@ class ServerTest {
 
     @Test
     void testGetClients() {
-        DummyClientHandler handler1 = new DummyClientHandler(1);
-        DummyClientHandler handler2 = new DummyClientHandler(2);
-        server.addClient(handler1);
-        server.addClient(handler2);
+        connect();
+        connect();
 
         assertEquals(2, server.getClients().size());
     }
 
     @Test
     void testBroadcastMessage() {
-        DummyClientHandler sender = new DummyClientHandler(1);
-        DummyClientHandler receiver1 = new DummyClientHandler(2);
-        DummyClientHandler receiver2 = new DummyClientHandler(3);
+        Client sender = connect();
+        Client receiver1 = connect();
+        Client receiver2 = connect();
 
-        server.addClient(sender);
-        server.addClient(receiver1);
-        server.addClient(receiver2);
+        server.broadcastMessage("Hello everyone!", 1);
+        server.sendPrivateMessage(1, "marker");
 
-        server.broadcastMessage("Hello everyone!", sender.getClientId());
-
-        assertEquals(List.of("Hello everyone!"), receiver1.getMessages());
-        assertEquals(List.of("Hello everyone!"), receiver2.getMessages());
-        assertTrue(sender.getMessages().isEmpty());
+        assertEquals("Hello everyone!", skipUntil(receiver1, "Hello"));
+        assertEquals("Hello everyone!", skipUntil(receiver2, "Hello"));
+        assertEquals("marker", skipUntil(sender, "Hello", "marker")); // The sender does not hear itself
     }
 
     @Test
     void testSendPrivateMessage() {
-        DummyClientHandler handler = new DummyClientHandler(4);
-        server.addClient(handler);
+        Client client = connect();
+
+        server.sendPrivateMessage(1, "Private msg!");
+        assertEquals("Private msg!", skipUntil(client, "Private"));
+    }
+
+    @Test
+    void testClientsRouteThroughServer() {
+        Client first = connect();
+        Client second = connect();
 
-        server.sendPrivateMessage(4, "Private msg!");
-        assertEquals(List.of("Private msg!"), handler.getMessages());
+        first.sendMessage("@2 psst");
+        second.sendMessage("hi all");
+
+        assertEquals("Private from 1: psst", skipUntil(second, "Private from"));
+        assertEquals("Client 2: hi all", skipUntil(first, "Client 2:"));
+    }
+
+    @Test
+    void testLoopbackClientDisconnects() throws Exception {
+        Client client = connect();
+        connect();
+        client.disconnect();
+
+        for (int i = 0; i < 100 && server.getClients().containsKey(1); i++) {
+            Thread.sleep(20);
+        }
+        assertFalse(server.getClients().containsKey(1));
+        assertEquals(2, server.getCoordinatorId());
     }
 
     @Test
     void testStop() {
-        DummyClientHandler handler = new DummyClientHandler(5);
-        server.addClient(handler);
+        Client client = connect();
 
         server.stop();
         assertTrue(server.getClients().isEmpty());
-        assertEquals(List.of("Server is shutting down."), handler.getMessages());
+        assertEquals("Server is shutting down.", skipUntil(client, "Server is"));
     }
 
     @Test
@@ -98,6 +128,45 @@ class ServerTest {
         assertTrue(ip.startsWith("192.168.1."));
     }
 
+    @Test
+    void testVirtualThreadHandlerExecutor() throws Exception {
+        server.setHandlerExecutor(HandlerExecutors.virtualThreads());
+
+        // Virtual threads are unnamed; before JDK 21 the platform fallback names its threads
+        String name = server.getHandlerExecutor().submit(() -> Thread.currentThread().getName()).get();
+        if (HandlerExecutors.virtualThreadsSupported()) {
+            assertEquals("", name);
+        } else {
+            assertTrue(name.startsWith("client-handler-"), name);
+        }
+
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+
+        Client client = new Client();
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+        assertEquals("You are now the coordinator.", client.readMessage());
+
+        client.disconnect();
+        server.stop();
+    }
+
+    @Test
+    void testStopShutsDownOnlyItsOwnHandlerExecutor() {
+        ExecutorService created = server.getHandlerExecutor();
+        server.stop();
+        assertTrue(created.isShutdown());
+
+        Server other = new Server();
+        ExecutorService supplied = HandlerExecutors.platformThreads();
+        other.setHandlerExecutor(supplied);
+        other.stop();
+        assertFalse(supplied.isShutdown());
+        supplied.shutdown();
+    }
+
     // Optional: testing GUI override placeholder
     @Test
     void testUpdateClientList() {
@@ -106,53 +175,31 @@ class ServerTest {
         assertTrue(true);
     }
 
-    // Dummy ClientHandler subclass
-    static class DummyClientHandler extends ClientHandler {
-        private final int id;
-        private final List<String> messages = new ArrayList<>();
-
-        public DummyClientHandler(int id) {
-            super(createFakeSocket(), id, new Server());
-            this.id = id;
-        }
-
-        @Override
-        public int getClientId() {
-            return id;
-        }
-
-        @Override
-        public void sendMessage(String message) {
-            messages.add(message);
-        }
-
-        @Override
-        public void setCoordinator(boolean isCoordinator) {
-            // Do nothing
-        }
+    // Connects an in-memory client and waits for its greeting
+    private Client connect() {
+        LoopbackTransport transport = server.connectLoopback();
+        Client client = new Client();
+        assertTrue(client.connect(transport));
+        assertNotNull(skipUntil(client, "Welcome!"));
+        clients.add(client);
+        return client;
+    }
 
-        public List<String> getMessages() {
-            return messages;
-        }
+    // Reads messages until one starts with the expected prefix; fails on any forbidden prefix on the way
+    private String skipUntil(Client client, String prefix) {
+        return skipUntil(client, null, prefix);
+    }
 
-        private static Socket createFakeSocket() {
-            try {
-                ServerSocket serverSocket = new ServerSocket(0); // OS assigns a free port
-                int port = serverSocket.getLocalPort();
-
-                new Thread(() -> {
-                    try (Socket ignored = serverSocket.accept()) {
-                        // Accept and immediately discard the incoming connection
-                        serverSocket.close(); // ✅ Properly close the ServerSocket
-                    } catch (Exception ignored) {
-                    }
-                }).start();
-
-                return new Socket("localhost", port);
-            } catch (Exception e) {
-                return null;
+    private String skipUntil(Client client, String forbidden, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (forbidden != null && msg.startsWith(forbidden)) {
+                fail("Unexpected message: " + msg);
+            }
+            if (msg.startsWith(prefix)) {
+                return msg;
             }
         }
-
+        return null;
     }
 }
@@ -0,0 +1,169 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import client.Client;
+import protocol.WireFormat;
+import server.ClientHandler;
+import server.EngineMode;
+import server.Server;
+
+class SessionTest {
+
+    private Server server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testResumeKeepsIdAndRoleThreadPerClient() throws Exception {
+        assertResumeKeepsIdAndRole(EngineMode.THREAD_PER_CLIENT, WireFormat.LINE);
+    }
+
+    @Test
+    void testResumeKeepsIdAndRoleNioBinary() throws Exception {
+        assertResumeKeepsIdAndRole(EngineMode.NIO, WireFormat.BINARY);
+    }
+
+    @Test
+    void testExpiredSessionIsRemoved() throws Exception {
+        startServer(EngineMode.NIO, 300);
+
+        Client coordinator = new Client();
+        coordinator.setSessionResumption(true);
+        assertTrue(coordinator.connect("localhost", server.getLocalPort()));
+        String token = coordinator.getSessionToken();
+        assertNotNull(token);
+        skipUntil(coordinator, "You are the coordinator.");
+
+        Client member = new Client();
+        assertTrue(member.connect("localhost", server.getLocalPort()));
+        skipUntil(member, "Current Coordinator");
+
+        coordinator.abort();
+
+        // After the grace window the usual failover happens
+        assertNotNull(skipUntil(member, "[COORDINATOR_CHANGED]"));
+        assertEquals(2, server.getCoordinatorId());
+
+        // Too late to resume: a new ID and a new session
+        assertTrue(coordinator.connect("localhost", server.getLocalPort()));
+        assertFalse(coordinator.isResumed());
+        assertNotEquals(token, coordinator.getSessionToken());
+        assertEquals("Welcome! Your ID is 3", skipUntil(coordinator, "Welcome!"));
+
+        coordinator.disconnect();
+        member.disconnect();
+    }
+
+    @Test
+    void testPlainClientsStillConnectWithSessionsEnabled() throws Exception {
+        startServer(EngineMode.THREAD_PER_CLIENT, 5000);
+
+        Client client = new Client();
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+        assertEquals("You are now the coordinator.", client.readMessage());
+        assertEquals(0, server.getSessionCount());
+        client.disconnect();
+    }
+
+    @Test
+    void testResumeWithoutTokenIsRejected() throws Exception {
+        startServer(EngineMode.NIO, 5000);
+
+        // Sent before admission, where a bare command used to break the connection
+        Client client = new Client();
+        assertTrue(client.connect("localhost", server.getLocalPort()));
+        client.sendMessage("!resume");
+        assertEquals("Usage: !resume <token> [<last sequence>]", skipUntil(client, "Usage:"));
+        assertNotNull(skipUntil(client, "Welcome!"));
+        assertTrue(client.isConnected());
+        client.disconnect();
+    }
+
+    private void assertResumeKeepsIdAndRole(EngineMode mode, WireFormat format) throws Exception {
+        startServer(mode, 5000);
+
+        Client coordinator = new Client();
+        coordinator.setSessionResumption(true);
+        coordinator.setPreferredWireFormat(format);
+        assertTrue(coordinator.connect("localhost", server.getLocalPort()));
+        assertNotNull(coordinator.getSessionToken());
+        skipUntil(coordinator, "You are the coordinator.");
+
+        Client member = new Client();
+        assertTrue(member.connect("localhost", server.getLocalPort()));
+        skipUntil(member, "Current Coordinator");
+
+        // Network blip: the server notices the drop, but keeps the client registered
+        coordinator.abort();
+        for (int i = 0; i < 100 && server.getClients().get(1).isOpen(); i++) {
+            Thread.sleep(20);
+        }
+        assertFalse(server.getClients().get(1).isOpen());
+        member.sendMessage("while you were away");
+        Thread.sleep(200);
+
+        assertTrue(coordinator.connect("localhost", server.getLocalPort()));
+        assertTrue(coordinator.isResumed());
+        assertEquals("Client 2: while you were away", skipUntil(coordinator, "Client 2:"));
+
+        ClientHandler handler = server.getClients().get(1);
+        assertTrue(handler.isOpen());
+        assertTrue(handler.isCoordinator());
+        assertEquals(1, server.getCoordinatorId());
+        assertEquals(2, server.getClients().size());
+
+        // Nobody else noticed the reconnect
+        coordinator.sendMessage("@2 marker");
+        List<String> seen = readUntil(member, "Private from 1: marker");
+        assertTrue(seen.stream().noneMatch(message -> message.contains("COORDINATOR")), seen.toString());
+
+        coordinator.disconnect();
+        member.disconnect();
+    }
+
+    private void startServer(EngineMode mode, long graceMillis) throws InterruptedException {
+        server = new Server(mode);
+        server.setSessionGraceMillis(graceMillis);
+        new Thread(() -> server.start(0)).start();
+        for (int i = 0; i < 100 && server.getLocalPort() <= 0; i++) {
+            Thread.sleep(20);
+        }
+    }
+
+    // Reads messages up to and including the expected one
+    private List<String> readUntil(Client client, String expected) {
+        List<String> seen = new ArrayList<>();
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            seen.add(msg);
+            if (msg.equals(expected)) {
+                return seen;
+            }
+        }
+        fail("Never received " + expected + ", got " + seen);
+        return seen;
+    }
+
+    // Reads messages until one starts with the expected prefix
+    private String skipUntil(Client client, String prefix) {
+        String msg;
+        while ((msg = client.readMessage()) != null) {
+            if (msg.startsWith(prefix)) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Selector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import protocol.SocketTransport;
+
+class SocketTransportTest {
+
+    // Pinned well below the 8 MB written, so the kernel cannot grow its windows enough to take it all
+    private static final int SOCKET_BUFFER = 64 * 1024;
+
+    @Test
+    void testWritesWaitForTheSendBufferOnceReadsAreAsync() throws Exception {
+        byte[] data = new byte[8 * 1024 * 1024];
+        try (ServerSocket peer = new ServerSocket();
+                Selector selector = Selector.open()) {
+            peer.setReceiveBufferSize(SOCKET_BUFFER); // Before binding, so accepted sockets inherit it
+            peer.bind(new InetSocketAddress("localhost", 0));
+            SocketTransport transport = SocketTransport.connect("localhost", peer.getLocalPort());
+            transport.getSocket().setSendBufferSize(SOCKET_BUFFER);
+            Socket accepted = peer.accept();
+            transport.startAsyncReads(selector, () -> {});
+
+            // The writer waits until the peer reads
+            CompletableFuture<Void> written = CompletableFuture.runAsync(() -> write(transport, data));
+            Thread.sleep(200);
+            assertFalse(written.isDone());
+            InputStream in = accepted.getInputStream();
+            byte[] chunk = new byte[64 * 1024];
+            long total = 0;
+            while (total < data.length) {
+                int read = in.read(chunk);
+                assertTrue(read > 0);
+                total += read;
+            }
+            written.get(5, TimeUnit.SECONDS);
+
+            // A writer waiting on a full buffer wakes up when the transport is closed
+            CompletableFuture<Void> stuck = CompletableFuture.runAsync(() -> write(transport, data));
+            Thread.sleep(200);
+            assertFalse(stuck.isDone());
+            transport.close();
+            Exception failure = assertThrows(Exception.class, () -> stuck.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, failure.getCause().getCause());
+            accepted.close();
+        }
+    }
+
+    private static void write(SocketTransport transport, byte[] data) {
+        try {
+            transport.getOutputStream().write(data);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import server.TimerWheel;
+
+class TimerWheelTest {
+
+    private TimerWheel timer;
+
+    @BeforeEach
+    void setUp() {
+        // Small wheel so longer delays have to wrap around several times
+        timer = new TimerWheel("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    void testRunsOnceAfterDelay() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        timer.schedule(fired::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Thread.sleep(50);
+        assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    void testDelayLongerThanOneRevolution() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        timer.schedule(fired::countDown, 250, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    void testCancelledTaskNeverRuns() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout timeout = timer.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, timer.pendingTimeouts());
+
+        Thread.sleep(150);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void testFixedRateRepeatsUntilCancelled() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch threeRuns = new CountDownLatch(3);
+        TimerWheel.Timeout timeout = timer.scheduleAtFixedRate(() -> {
+            runs.incrementAndGet();
+            threeRuns.countDown();
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(threeRuns.await(2, TimeUnit.SECONDS));
+        timeout.cancel();
+        Thread.sleep(50); // Let a run already in progress finish
+        int afterCancel = runs.get();
+        Thread.sleep(100);
+        assertEquals(afterCancel, runs.get());
+    }
+
+    @Test
+    void testFailingTaskDoesNotStopTheTimer() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        timer.schedule(() -> { throw new IllegalStateException("boom"); }, 10, TimeUnit.MILLISECONDS);
+        timer.schedule(fired::countDown, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testRejectsWheelSizeThatIsNotAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TimerWheel("bad", 10, TimeUnit.MILLISECONDS, 6));
+    }
+}